@@ -12,6 +12,7 @@ plugins {
     id("com.google.cloud.tools.jib") version "3.5.2"
     id("checkstyle")
     id("com.diffplug.spotless") version "8.1.0"
+    id("me.champeau.jmh") version "0.7.3"
     java
 }
 
@@ -64,7 +65,9 @@ spotless {
         target(
             "src/main/java/**/*.java",
             "src/test/java/**/*.java",
-            "src/integrationTest/java/**/*.java"
+            "src/integrationTest/java/**/*.java",
+            "src/jmh/java/**/*.java",
+            "src/loadTest/java/**/*.java"
         )
         googleJavaFormat("1.17.0")
     }
@@ -145,6 +148,47 @@ tasks.test {
     maxParallelForks = 1
 }
 
+// ----------------------------
+// Microbenchmarks (./gradlew jmh, or -Pjmh.includes=<regex> for a subset)
+// ----------------------------
+jmh {
+    warmupIterations = 2
+    iterations = 5
+    fork = 1
+    profilers = listOf("gc")
+    providers.gradleProperty("jmh.includes").orNull?.let { includes = listOf(it) }
+    resultFormat = "JSON"
+}
+
+// ----------------------------
+// Load generator (./gradlew loadTest, -Ploadtest.<setting>=<value>; see loadtest.LoadTestSettings)
+// ----------------------------
+val loadTest: SourceSet by sourceSets.creating {
+    java.srcDir("src/loadTest/java")
+
+    compileClasspath += sourceSets["main"].output + sourceSets["main"].compileClasspath
+    runtimeClasspath += output + compileClasspath + sourceSets["main"].runtimeClasspath
+}
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Runs the websocket load generator, against an in-process server by default."
+    group = "verification"
+
+    classpath = loadTest.runtimeClasspath
+    mainClass = "loadtest.LoadGenerator"
+    maxHeapSize = "4g"
+    systemProperties(providers.gradlePropertiesPrefixedBy("loadtest.").get())
+}
+
+tasks.register<JavaExec>("storeThroughput") {
+    description = "Compares single-row and batched message inserts against -Ploadtest.jdbcUrl."
+    group = "verification"
+
+    classpath = loadTest.runtimeClasspath
+    mainClass = "loadtest.MessageStoreThroughput"
+    systemProperties(providers.gradlePropertiesPrefixedBy("loadtest.").get())
+}
+
 // ----------------------------
 // Dependencies
 // ----------------------------
@@ -169,8 +213,14 @@ dependencies {
     // Application
     // ----------------------------
     implementation("io.micronaut.serde:micronaut-serde-jackson")
+    implementation("com.fasterxml.jackson.core:jackson-core")
     implementation("io.micronaut:micronaut-http-server-netty")
     implementation("io.micronaut:micronaut-management")
+    implementation("io.micronaut.micrometer:micronaut-micrometer-core")
+    implementation("io.micronaut.micrometer:micronaut-micrometer-registry-prometheus")
+    implementation("io.micronaut.tracing:micronaut-tracing-opentelemetry")
+    runtimeOnly("io.opentelemetry:opentelemetry-exporter-otlp")
+    implementation("com.github.ben-manes.caffeine:caffeine:3.2.0")
     implementation("io.micronaut:micronaut-websocket")
     compileOnly("io.micronaut:micronaut-http-client")
     runtimeOnly("ch.qos.logback:logback-classic")
@@ -180,6 +230,7 @@ dependencies {
     // Unit tests
     // ----------------------------
     testImplementation("io.micronaut:micronaut-http-client")
+    testImplementation("io.opentelemetry:opentelemetry-sdk-testing")
     testImplementation("io.projectreactor:reactor-core")
     testImplementation("org.mockito:mockito-core:5.4.0")
     testImplementation("org.mockito:mockito-junit-jupiter:5.4.0")
@@ -206,6 +257,9 @@ dependencies {
     // Integration-test-only helpers
     add(integrationTest.implementationConfigurationName, "com.squareup.okhttp3:okhttp:4.12.0")
     add(integrationTest.implementationConfigurationName, "com.fasterxml.jackson.core:jackson-databind:2.17.2")
+
+    // Load generator
+    add(loadTest.implementationConfigurationName, "org.hdrhistogram:HdrHistogram:2.2.2")
 }
 
 // ----------------------------
@@ -43,20 +43,24 @@ class MessagingServerComponentTest {
   }
 
   @Test
-  void onSessionOpen_replacesPreexistingSession() throws Exception {
-    MicronautTestWebSocketClient firstClient =
+  void onSessionOpen_keepsSessionsFromMultipleDevices() throws Exception {
+    MicronautTestWebSocketClient phoneClient =
         connectAndAwaitAck(wsClient, chatUri(), Map.of(USER_HEADER, "alice"));
-    MicronautTestWebSocketClient secondClient =
+    MicronautTestWebSocketClient laptopClient =
         connectAndAwaitAck(wsClient, chatUri(), Map.of(USER_HEADER, "alice"));
-    try (firstClient;
-        secondClient) {
-      CloseReason cr = firstClient.getCloseReasonFuture().get(250, TimeUnit.MILLISECONDS);
-      assertNotNull(cr, "Expected first client to be closed");
-      assertEquals(CloseReason.NORMAL.getCode(), cr.getCode());
+    MicronautTestWebSocketClient bobClient =
+        connectAndAwaitAck(wsClient, chatUri(), Map.of(USER_HEADER, "bob"));
+    try (phoneClient;
+        laptopClient;
+        bobClient) {
       assertThrows(
           TimeoutException.class,
-          () -> secondClient.getCloseReasonFuture().get(250, TimeUnit.MILLISECONDS),
-          "Second client should remain open");
+          () -> phoneClient.getCloseReasonFuture().get(250, TimeUnit.MILLISECONDS),
+          "First device should remain open");
+
+      bobClient.send("Hi Alice");
+      assertNotNull(phoneClient.getReceivedMessages().poll(250, TimeUnit.MILLISECONDS));
+      assertNotNull(laptopClient.getReceivedMessages().poll(250, TimeUnit.MILLISECONDS));
     }
   }
 
@@ -118,4 +122,17 @@ class MessagingServerComponentTest {
       }
     }
   }
+
+  @Test
+  void onMessage_repliesWithErrorForMalformedEnvelope() throws Exception {
+    try (MicronautTestWebSocketClient aliceClient =
+        connectAndAwaitAck(wsClient, chatUri(), Map.of(USER_HEADER, "alice"))) {
+      aliceClient.send("{\"type\":\"message\",\"clientMsgId\":\"m-1\"");
+
+      String reply = aliceClient.getReceivedMessages().poll(250, TimeUnit.MILLISECONDS);
+      assertNotNull(reply);
+      assertTrue(reply.contains("\"type\":\"error\""), "Expected error, got: " + reply);
+      assertTrue(reply.contains("invalid_envelope"), "Expected reason, got: " + reply);
+    }
+  }
 }
@@ -0,0 +1,228 @@
+package messaging.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.micronaut.context.ApplicationContext;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.sql.DataSource;
+import messaging.history.JdbcMessageHistory;
+import messaging.history.MessageCursor;
+import messaging.receipts.JdbcReadCursorStore;
+import messaging.receipts.ReadCursor;
+import messaging.receipts.ReadState;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * Runs the message write path against a single-node Citus container with the real Flyway
+ * migrations. Insert throughput is measured by the {@code storeThroughput} task instead.
+ */
+class JdbcMessageStoreComponentTest {
+
+  private static final DockerImageName CITUS_IMAGE =
+      DockerImageName.parse("citusdata/citus:postgres_16").asCompatibleSubstituteFor("postgres");
+
+  private static PostgreSQLContainer citus;
+  private static ApplicationContext ctx;
+  private static JdbcMessageStore store;
+  private static DataSource dataSource;
+
+  private final UUID sender = UUID.randomUUID();
+  private final List<UUID> channels = List.of(UUID.randomUUID(), UUID.randomUUID());
+
+  @BeforeAll
+  static void startCitus() {
+    citus = new PostgreSQLContainer(CITUS_IMAGE);
+    citus.start();
+    Map<String, Object> props = new HashMap<>();
+    props.put("datasources.default.enabled", true);
+    props.put("datasources.default.url", citus.getJdbcUrl());
+    props.put("datasources.default.username", citus.getUsername());
+    props.put("datasources.default.password", citus.getPassword());
+    props.put("datasources.default.driver-class-name", "org.postgresql.Driver");
+    props.put("flyway.datasources.default.enabled", true);
+    props.put("flyway.datasources.default.locations", "classpath:db/migration");
+    // Keep the relay quiet so outbox counts below are deterministic
+    props.put("messaging.outbox.poll-interval", "1h");
+    ctx = ApplicationContext.run(props);
+    store = ctx.getBean(JdbcMessageStore.class);
+    dataSource = ctx.getBean(DataSource.class);
+  }
+
+  @AfterAll
+  static void stopCitus() {
+    if (ctx != null) ctx.close();
+    if (citus != null) citus.stop();
+  }
+
+  @BeforeEach
+  void seedUserAndChannels() throws Exception {
+    try (Connection conn = dataSource.getConnection();
+        Statement stmt = conn.createStatement()) {
+      stmt.execute("INSERT INTO users (user_id) VALUES ('" + sender + "')");
+      for (UUID channel : channels) {
+        stmt.execute(
+            "INSERT INTO channels (channel_id, channel_name) VALUES ('" + channel + "', 'it')");
+      }
+    }
+  }
+
+  @Test
+  void write_insertsMessageAndOutboxRowPerRecord() throws Exception {
+    List<MessageRecord> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      records.add(MessageRecord.newMessage(channels.get(i % 2), sender, "message " + i));
+    }
+    store.append(records).get();
+
+    for (UUID channel : channels) {
+      assertEquals(5, count("messages", channel));
+      assertEquals(5, count("message_outbox", channel));
+    }
+  }
+
+  @Test
+  void write_rollsBackWholeChannelBatchOnFailure() throws Exception {
+    MessageRecord record = MessageRecord.newMessage(channels.get(0), sender, "once");
+    store.write(List.of(record));
+
+    // Re-inserting an existing id fails the batch; the fresh message must not commit either
+    MessageRecord fresh = MessageRecord.newMessage(channels.get(0), sender, "fresh");
+    try {
+      store.write(List.of(fresh, record));
+    } catch (MessagePersistenceException expected) {
+      // expected
+    }
+    assertEquals(1, count("messages", channels.get(0)));
+    assertEquals(1, count("message_outbox", channels.get(0)));
+  }
+
+  @Test
+  void write_assignsGaplessSequencesPerChannelInWriteOrder() {
+    UUID channel = channels.get(0);
+    store.write(
+        List.of(
+            MessageRecord.newMessage(channel, sender, "s1"),
+            MessageRecord.newMessage(channel, sender, "s2"),
+            MessageRecord.newMessage(channels.get(1), sender, "other")));
+    store.write(List.of(MessageRecord.newMessage(channel, sender, "s3")));
+    JdbcMessageHistory history = ctx.getBean(JdbcMessageHistory.class);
+
+    List<MessageRecord> all = history.range(channel, 0, Long.MAX_VALUE, 10);
+    assertEquals(List.of(1L, 2L, 3L), all.stream().map(MessageRecord::seq).toList());
+    assertEquals(List.of("s1", "s2", "s3"), all.stream().map(MessageRecord::body).toList());
+    assertEquals(
+        List.of("s2", "s3"),
+        history.range(channel, 1, 3, 10).stream().map(MessageRecord::body).toList());
+    assertEquals(1L, history.range(channels.get(1), 0, Long.MAX_VALUE, 10).get(0).seq());
+    assertEquals(
+        Map.of(channel, 3L, channels.get(1), 1L),
+        history.heads(List.of(channel, channels.get(1), UUID.randomUUID())));
+  }
+
+  @Test
+  void relay_claimsRowsOrphanedByAnotherNodeButNotLiveClaims() throws Exception {
+    UUID orphaned = channels.get(0);
+    UUID leased = channels.get(1);
+    store.write(
+        List.of(
+            MessageRecord.newMessage(orphaned, sender, "from a crashed node"),
+            MessageRecord.newMessage(leased, sender, "claimed by a live node")));
+    try (Connection conn = dataSource.getConnection();
+        Statement stmt = conn.createStatement()) {
+      stmt.execute(
+          "UPDATE message_outbox SET node_id = 'gone', created_at = now() - interval '1 hour'");
+      stmt.execute(
+          "UPDATE message_outbox SET claimed_by = 'live', claimed_at = now()"
+              + " WHERE channel_id = '"
+              + leased
+              + "'");
+    }
+
+    ctx.getBean(OutboxRelay.class).relayPending();
+
+    assertEquals(0, count("message_outbox", orphaned));
+    assertEquals(1, count("message_outbox", leased));
+  }
+
+  @Test
+  void readCursors_unreadCountsFollowChannelHeadAndOnlyMoveForward() throws Exception {
+    try (Connection conn = dataSource.getConnection();
+        Statement stmt = conn.createStatement()) {
+      for (UUID channel : channels) {
+        stmt.execute(
+            "INSERT INTO channel_members (channel_id, user_id) VALUES ('"
+                + channel
+                + "', '"
+                + sender
+                + "')");
+      }
+    }
+    UUID read = channels.get(0);
+    UUID unread = channels.get(1);
+    for (int i = 0; i < 4; i++) {
+      store.write(List.of(MessageRecord.newMessage(read, sender, "r" + i)));
+    }
+    store.write(List.of(MessageRecord.newMessage(unread, sender, "u")));
+    JdbcReadCursorStore cursors = ctx.getBean(JdbcReadCursorStore.class);
+
+    cursors.save(List.of(new ReadCursor(read, sender, 3)));
+    // An older position saved later must not move the cursor back
+    cursors.save(List.of(new ReadCursor(read, sender, 1)));
+
+    Map<UUID, ReadState> states = new HashMap<>();
+    cursors.readStates(sender).forEach(state -> states.put(state.channelId(), state));
+    assertEquals(new ReadState(read, 4, 3), states.get(read));
+    assertEquals(1, states.get(read).unread());
+    assertEquals(new ReadState(unread, 1, 0), states.get(unread));
+  }
+
+  @Test
+  void history_pagesByKeysetInSeqOrder() {
+    UUID channel = channels.get(1);
+    List<MessageRecord> records = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      records.add(MessageRecord.newMessage(channel, sender, "history " + i));
+    }
+    store.write(records);
+    JdbcMessageHistory history = ctx.getBean(JdbcMessageHistory.class);
+
+    List<String> bodies = new ArrayList<>();
+    MessageCursor cursor = MessageCursor.START;
+    MessageCursor until = history.head(channel);
+    List<MessageRecord> page;
+    do {
+      page = history.page(channel, cursor, until, 10);
+      page.forEach(record -> bodies.add(record.body()));
+      if (!page.isEmpty()) cursor = MessageCursor.of(page.get(page.size() - 1));
+    } while (page.size() == 10);
+
+    // One write numbers its records in list order
+    assertEquals(records.stream().map(MessageRecord::body).toList(), bodies);
+    assertEquals(new MessageCursor(25), until);
+  }
+
+  private static long count(String table, UUID channel) throws Exception {
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt =
+            conn.prepareStatement("SELECT count(*) FROM " + table + " WHERE channel_id = ?")) {
+      stmt.setObject(1, channel);
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        return rs.getLong(1);
+      }
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import messaging.compression.CompressionConfiguration;
+import messaging.compression.SharedFrameCompressor;
+
+/** {@link ConnectionRegistry} instances for benchmarks, built outside the bean context. */
+final class BenchmarkRegistries {
+
+  private BenchmarkRegistries() {}
+
+  static ConnectionRegistry create() {
+    return create(new InboundRateLimitConfiguration(), new SimpleMeterRegistry());
+  }
+
+  static ConnectionRegistry create(
+      InboundRateLimitConfiguration rateLimitConfig, MeterRegistry meterRegistry) {
+    return new ConnectionRegistry(
+        new OutboundQueueConfiguration(),
+        new UserSessionConfiguration(),
+        rateLimitConfig,
+        new SharedFrameCompressor(new CompressionConfiguration(), meterRegistry),
+        meterRegistry);
+  }
+}
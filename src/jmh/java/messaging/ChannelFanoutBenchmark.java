@@ -0,0 +1,100 @@
+package messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import messaging.membership.ChannelMembershipCache;
+import messaging.membership.ChannelMembershipConfiguration;
+import messaging.membership.ChannelMembershipSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Latency of delivering one message to a channel's {@code members} local sessions, done as the
+ * fanout path does it: touch the cached member set, then send to the channel index. Warm has the
+ * set cached. Cold invalidates it before every message and waits for the reload, which parks for
+ * {@code sourceLatencyMicros} and reconciles the index, as a membership check on a miss does; the
+ * difference between the two is the cost of a miss.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ChannelFanoutBenchmark {
+
+  private static final String PAYLOAD = "{\"type\":\"message\",\"from\":\"u1\",\"text\":\"hello\"}";
+
+  @Param({"500"})
+  long sourceLatencyMicros;
+
+  @Param({"1000"})
+  int members;
+
+  ExecutorService executor;
+  ChannelMembershipCache cache;
+  ConnectionRegistry registry;
+
+  @Setup
+  public void setup() throws Exception {
+    registry = BenchmarkRegistries.create();
+    Set<String> memberIds = new HashSet<>();
+    for (int i = 0; i < members; i++) {
+      String userId = "user-" + i;
+      memberIds.add(userId);
+      registry.registerUserSession(userId, StubSessions.open(userId), Set.of("channel"));
+    }
+    Set<String> loaded = Set.copyOf(memberIds);
+    ChannelMembershipSource slowSource =
+        new ChannelMembershipSource() {
+          @Override
+          public Set<String> loadMembers(String channelId) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(sourceLatencyMicros));
+            return loaded;
+          }
+
+          @Override
+          public Set<String> loadChannels(String userId) {
+            return Set.of();
+          }
+        };
+    executor = Executors.newVirtualThreadPerTaskExecutor();
+    ChannelMembershipConfiguration config = new ChannelMembershipConfiguration();
+    config.setTtl(Duration.ofHours(1));
+    cache = new ChannelMembershipCache(slowSource, config, executor, new SimpleMeterRegistry());
+    cache.setLoadListener(registry::reconcileChannel);
+    cache.members("channel").get();
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  public void warm() {
+    fanout();
+  }
+
+  @Benchmark
+  public void cold() {
+    cache.invalidate("channel");
+    cache.members("channel").join();
+    fanout();
+  }
+
+  private void fanout() {
+    cache.members("channel");
+    registry.broadcastToChannel("channel", PAYLOAD, null);
+  }
+}
@@ -0,0 +1,166 @@
+package messaging;
+
+import io.micronaut.websocket.WebSocketSession;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/** Registration churn and fanout targeting in {@link ConnectionRegistry}. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConnectionRegistryBenchmark {
+
+  private static final String PAYLOAD = "{\"type\":\"message\",\"from\":\"u1\",\"text\":\"hello\"}";
+
+  /** Registry shared by all benchmark threads, with a pool of users they register and remove. */
+  @State(Scope.Benchmark)
+  public static class ChurnState {
+    @Param({"1024"})
+    int users;
+
+    ConnectionRegistry registry;
+    String[] userIds;
+    Set<String> channels = Set.of("general", "random");
+
+    @Setup
+    public void setup() {
+      registry = BenchmarkRegistries.create();
+      userIds = new String[users];
+      for (int i = 0; i < users; i++) {
+        userIds[i] = "user-" + i;
+      }
+    }
+  }
+
+  /** Sessions are per thread, so removal only ever matches the thread's own registration. */
+  @State(Scope.Thread)
+  public static class ThreadSessions {
+    WebSocketSession session;
+
+    @Setup
+    public void setup() {
+      session = StubSessions.open("session-" + Thread.currentThread().getId());
+    }
+  }
+
+  /** N connected users; one channel whose local members are a small slice of them. */
+  @State(Scope.Benchmark)
+  public static class FanoutState {
+    @Param({"10000", "100000"})
+    int sessions;
+
+    @Param({"10", "1000"})
+    int channelMembers;
+
+    ConnectionRegistry registry;
+    Set<String> memberIds;
+
+    @Setup
+    public void setup() {
+      registry = BenchmarkRegistries.create();
+      memberIds = new HashSet<>();
+      for (int i = 0; i < sessions; i++) {
+        String userId = "user-" + i;
+        boolean member = i % (sessions / channelMembers) == 0 && memberIds.size() < channelMembers;
+        if (member) memberIds.add(userId);
+        registry.registerUserSession(
+            userId, StubSessions.open(userId), member ? Set.of("target") : Set.of("other-" + i));
+      }
+    }
+  }
+
+  /** 10k connected users with varying target and exclusion sets for broadcastPayload. */
+  @State(Scope.Benchmark)
+  public static class BroadcastState {
+    @Param({"0", "10", "1000"})
+    int targets;
+
+    @Param({"0", "1", "100"})
+    int exclusions;
+
+    ConnectionRegistry registry;
+    Optional<Set<String>> targetSet;
+    Optional<Set<String>> excludedSet;
+
+    @Setup
+    public void setup() {
+      registry = BenchmarkRegistries.create();
+      for (int i = 0; i < 10_000; i++) {
+        registry.registerUserSession("user-" + i, StubSessions.open("user-" + i));
+      }
+      targetSet = targets == 0 ? Optional.empty() : Optional.of(userRange(0, targets));
+      excludedSet = exclusions == 0 ? Optional.empty() : Optional.of(userRange(0, exclusions));
+    }
+
+    private static Set<String> userRange(int from, int count) {
+      Set<String> ids = new HashSet<>();
+      for (int i = from; i < from + count; i++) {
+        ids.add("user-" + i);
+      }
+      return ids;
+    }
+  }
+
+  /** 1000 local members of one channel, for per-recipient encoding cost. */
+  @State(Scope.Benchmark)
+  public static class LargeChannelState {
+    ConnectionRegistry registry;
+    Set<String> memberIds = new HashSet<>();
+
+    @Setup
+    public void setup() {
+      registry = BenchmarkRegistries.create();
+      for (int i = 0; i < 1_000; i++) {
+        String userId = "user-" + i;
+        memberIds.add(userId);
+        registry.registerUserSession(userId, StubSessions.open(userId), Set.of("large"));
+      }
+    }
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void registerThenRemove(ChurnState state, ThreadSessions thread) {
+    String userId = state.userIds[ThreadLocalRandom.current().nextInt(state.users)];
+    state.registry.registerUserSession(userId, thread.session, state.channels);
+    state.registry.removeUserSession(userId, thread.session);
+  }
+
+  @Benchmark
+  public void channelFanoutByFullScan(FanoutState state) {
+    state.registry.broadcastPayloadToTargets(PAYLOAD, state.memberIds);
+  }
+
+  @Benchmark
+  public void channelFanoutByIndex(FanoutState state) {
+    state.registry.broadcastToChannel("target", PAYLOAD, null);
+  }
+
+  @Benchmark
+  public void broadcastPayload(BroadcastState state) {
+    state.registry.broadcastPayload(PAYLOAD, state.targetSet, state.excludedSet);
+  }
+
+  /** Per-recipient String sends: each stub encodes its own frame. Run with -prof gc. */
+  @Benchmark
+  public void largeChannelStringPerRecipient(LargeChannelState state) {
+    state.registry.broadcastPayloadToTargets(PAYLOAD, state.memberIds);
+  }
+
+  /** Encode once, retainedDuplicate() per recipient. Run with -prof gc. */
+  @Benchmark
+  public void largeChannelSharedFrame(LargeChannelState state) {
+    state.registry.broadcastFrameToChannel("large", PAYLOAD, null);
+  }
+}
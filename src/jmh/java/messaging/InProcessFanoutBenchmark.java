@@ -0,0 +1,73 @@
+package messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import messaging.fanout.FanoutMessage;
+import messaging.fanout.InProcessFanoutBus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Publish-to-delivery latency of the in-process bus: each operation publishes one channel message
+ * and waits until every node has handed it to its local member's session. SampleTime reports the
+ * percentiles.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class InProcessFanoutBenchmark {
+
+  private static final String PAYLOAD = "{\"type\":\"message\",\"from\":\"u1\",\"text\":\"hello\"}";
+
+  @Param({"2", "3", "4"})
+  int nodes;
+
+  InProcessFanoutBus bus;
+  List<AutoCloseable> subscriptions = new ArrayList<>();
+  volatile CountDownLatch delivered;
+
+  @Setup
+  public void setup() {
+    bus = new InProcessFanoutBus();
+    for (int node = 0; node < nodes; node++) {
+      ConnectionRegistry registry = BenchmarkRegistries.create();
+      String userId = "user-" + node;
+      registry.registerUserSession(userId, StubSessions.open(userId), Set.of("general"));
+      subscriptions.add(
+          bus.subscribe(
+              "node-" + node,
+              message -> {
+                registry.broadcastToChannel(
+                    message.channelId(), message.payload(), message.originSessionId());
+                delivered.countDown();
+              }));
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    for (AutoCloseable subscription : subscriptions) {
+      subscription.close();
+    }
+  }
+
+  @Benchmark
+  public void publishToEveryNode() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(nodes);
+    delivered = latch;
+    bus.publish(
+        new FanoutMessage(
+            FanoutMessage.Kind.MESSAGE, "sender", null, "general", PAYLOAD, null, 0, 0));
+    latch.await();
+  }
+}
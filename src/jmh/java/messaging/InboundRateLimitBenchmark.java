@@ -0,0 +1,80 @@
+package messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import messaging.ratelimit.TokenBucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Per-frame cost of the inbound rate limit in {@link ConnectionRegistry}. {@code sessionLookup} is
+ * the map read the limit check rides on, so the difference to it is the bucket itself. {@code
+ * sameUser} has every thread hammer one bucket, the worst case for its compare-and-set.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InboundRateLimitBenchmark {
+
+  /** 10k connected users whose buckets either never run dry or are always empty. */
+  @State(Scope.Benchmark)
+  public static class LimitState {
+    @Param({"admitted", "limited"})
+    String outcome;
+
+    ConnectionRegistry registry;
+    String[] userIds = new String[10_000];
+
+    @Setup
+    public void setup() {
+      InboundRateLimitConfiguration config = new InboundRateLimitConfiguration();
+      config.setMessagesPerSecond(outcome.equals("admitted") ? 1e12 : 0.001);
+      config.setBurst(1);
+      registry = BenchmarkRegistries.create(config, new SimpleMeterRegistry());
+      for (int i = 0; i < userIds.length; i++) {
+        userIds[i] = "user-" + i;
+        registry.registerUserSession(userIds[i], StubSessions.open(userIds[i]));
+        registry.tryAcquireInbound(userIds[i]);
+      }
+    }
+
+    String randomUser() {
+      return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+  }
+
+  /** One bucket shared by every benchmark thread. */
+  @State(Scope.Benchmark)
+  public static class BucketState {
+    TokenBucket bucket = new TokenBucket(1e12, 1, System.nanoTime());
+  }
+
+  @Benchmark
+  public int sessionLookup(LimitState state) {
+    return state.registry.sessionCount(state.randomUser());
+  }
+
+  @Benchmark
+  public boolean tryAcquireInbound(LimitState state) {
+    return state.registry.tryAcquireInbound(state.randomUser());
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean tryAcquireInboundContended(LimitState state) {
+    return state.registry.tryAcquireInbound(state.randomUser());
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long sameUser(BucketState state) {
+    return state.bucket.tryAcquire(System.nanoTime());
+  }
+}
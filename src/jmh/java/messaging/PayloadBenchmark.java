@@ -0,0 +1,68 @@
+package messaging;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.concurrent.TimeUnit;
+import messaging.protocol.JsonEnvelopeWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Outbound payload construction. {@code concatenation} is the original string-building version of
+ * {@link MessagingServer#buildPayload}, kept as the baseline; compare gc.alloc.rate.norm (bytes
+ * per op) from -prof gc against the envelope writer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class PayloadBenchmark {
+
+  private static final String USER_ID = "8d3c1a52-4b1e-4c59-9a77-2f0c4a1b9e10";
+
+  @Param({"plain", "escaped"})
+  String kind;
+
+  String message;
+
+  @Setup
+  public void setup() {
+    message =
+        kind.equals("plain")
+            ? "See you at the standup in five minutes, bring the release notes please"
+            : "He said \"ship it\" \\ then\tleft\nfor the day \"again\" \\o/";
+  }
+
+  @Benchmark
+  public String concatenation() {
+    return "{\"type\":\"message\",\"from\":\""
+        + USER_ID
+        + "\",\"text\":\""
+        + message.replace("\\", "\\\\").replace("\"", "\\\"")
+        + "\"}";
+  }
+
+  @Benchmark
+  public String buildPayload() {
+    return MessagingServer.buildPayload(USER_ID, message);
+  }
+
+  /** Envelope written straight into a pooled buffer, as the shared-frame fanout path needs. */
+  @Benchmark
+  public int writeToByteBuf() {
+    ByteBuf out = ByteBufAllocator.DEFAULT.buffer();
+    try {
+      return JsonEnvelopeWriter.begin("message")
+          .field("from", USER_ID)
+          .field("text", message)
+          .writeTo(out);
+    } finally {
+      out.release();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package messaging;
+
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Offline {@link WebSocketSession} stand-ins for benchmarks. A stub is always open and completes
+ * every send immediately. It encodes String messages into a text frame the way Micronaut's
+ * message encoder does, then releases the frame as Netty would after writing it, so per-recipient
+ * encoding cost shows up in the numbers without a real socket.
+ */
+final class StubSessions {
+
+  private static final CompletableFuture<Object> SENT = CompletableFuture.completedFuture(null);
+
+  private StubSessions() {}
+
+  static WebSocketSession open(String id) {
+    return (WebSocketSession)
+        Proxy.newProxyInstance(
+            WebSocketSession.class.getClassLoader(),
+            new Class<?>[] {WebSocketSession.class},
+            (proxy, method, args) ->
+                switch (method.getName()) {
+                  case "isOpen" -> true;
+                  case "getId" -> id;
+                  case "sendAsync" -> {
+                    write(args[0]);
+                    yield SENT;
+                  }
+                  case "hashCode" -> System.identityHashCode(proxy);
+                  case "equals" -> proxy == args[0];
+                  case "toString" -> "StubSession[" + id + "]";
+                  default -> method.getReturnType() == boolean.class ? false : null;
+                });
+  }
+
+  private static void write(Object message) {
+    Object frame =
+        message instanceof String text
+            ? new TextWebSocketFrame(ByteBufUtil.writeUtf8(ByteBufAllocator.DEFAULT, text))
+            : message;
+    ReferenceCountUtil.release(frame);
+  }
+}
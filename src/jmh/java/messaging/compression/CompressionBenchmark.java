@@ -0,0 +1,144 @@
+package messaging.compression;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * CPU versus bytes on the wire for one channel message fanned out to {@code recipients} sessions.
+ * {@code uncompressed} is the baseline, {@code perSession} has every session's Netty deflater
+ * compress the payload, and {@code shared} compresses it once with {@link SharedFrameCompressor}.
+ * Each trial prints the frame size before and after compression at its level; multiply by {@code
+ * recipients} for the bytes one message puts on the wire.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+  private static final String SENDER = "8d3c1a52-4b1e-4c59-9a77-2f0c4a1b9e10";
+
+  /** small is below the default threshold and would go out uncompressed. */
+  @Param({"small", "medium", "large"})
+  String size;
+
+  @Param({"1", "6", "9"})
+  int level;
+
+  @Param({"100"})
+  int recipients;
+
+  String payload;
+  SharedFrameCompressor compressor;
+  EmbeddedChannel[] sessions;
+  EmbeddedChannel[] plainSessions;
+
+  @Setup
+  public void setup() {
+    String text =
+        switch (size) {
+          case "small" -> "See you at the standup";
+          case "medium" -> "See you at the standup, bring the release notes please. ".repeat(8);
+          default -> "See you at the standup, bring the release notes please. ".repeat(64);
+        };
+    payload =
+        "{\"type\":\"message\",\"from\":\""
+            + SENDER
+            + "\",\"channelId\":\"5b0e6a8c-1f0b-4d7e-9c44-0a3f5e2d7b61\",\"seq\":1042,\"text\":\""
+            + text
+            + "\"}";
+    CompressionConfiguration config = new CompressionConfiguration();
+    config.setLevel(level);
+    config.setThreshold(0);
+    compressor = new SharedFrameCompressor(config, new SimpleMeterRegistry());
+    PerMessageDeflateServerExtensionHandshaker handshaker =
+        new PerMessageDeflateServerExtensionHandshaker(level, false, 15, true, false);
+    WebSocketExtensionData offer =
+        new WebSocketExtensionData(
+            "permessage-deflate", Map.of(DeflateNegotiator.SERVER_NO_CONTEXT, ""));
+    sessions = new EmbeddedChannel[recipients];
+    plainSessions = new EmbeddedChannel[recipients];
+    for (int i = 0; i < recipients; i++) {
+      sessions[i] =
+          new EmbeddedChannel(handshaker.handshakeExtension(offer).newExtensionEncoder());
+      plainSessions[i] = new EmbeddedChannel();
+    }
+    TextWebSocketFrame plain = frame();
+    TextWebSocketFrame deflated = compressor.compress(plain);
+    System.out.printf(
+        "%n%s payload at level %d: %d bytes, %d compressed%n",
+        size, level, plain.content().readableBytes(), deflated.content().readableBytes());
+    plain.release();
+    deflated.release();
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (int i = 0; i < recipients; i++) {
+      sessions[i].finishAndReleaseAll();
+      plainSessions[i].finishAndReleaseAll();
+    }
+  }
+
+  private TextWebSocketFrame frame() {
+    return new TextWebSocketFrame(ByteBufUtil.writeUtf8(ByteBufAllocator.DEFAULT, payload));
+  }
+
+  @Benchmark
+  public int uncompressed() {
+    return writeToAll(plainSessions);
+  }
+
+  /** Plain frames through each session's encoder, which compresses them one by one. */
+  @Benchmark
+  public int perSession() {
+    return writeToAll(sessions);
+  }
+
+  @Benchmark
+  public int shared() {
+    TextWebSocketFrame plain = frame();
+    TextWebSocketFrame deflated = compressor.compress(plain);
+    plain.release();
+    int bytes = 0;
+    for (EmbeddedChannel session : sessions) {
+      bytes += write(session, deflated.retainedDuplicate());
+    }
+    deflated.release();
+    return bytes;
+  }
+
+  private int writeToAll(EmbeddedChannel[] channels) {
+    TextWebSocketFrame frame = frame();
+    int bytes = 0;
+    for (EmbeddedChannel session : channels) {
+      bytes += write(session, frame.retainedDuplicate());
+    }
+    frame.release();
+    return bytes;
+  }
+
+  private static int write(EmbeddedChannel session, WebSocketFrame frame) {
+    session.writeOutbound(frame);
+    WebSocketFrame written = session.readOutbound();
+    int bytes = written.content().readableBytes();
+    written.release();
+    return bytes;
+  }
+}
@@ -0,0 +1,123 @@
+package messaging.execution;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.DefaultEventLoop;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import messaging.membership.ChannelMembershipCache;
+import messaging.membership.ChannelMembershipConfiguration;
+import messaging.membership.ChannelMembershipSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Event-loop lag while handlers queue up behind a slow database. A feeder keeps {@code backlog}
+ * frames outstanding: each is dispatched from the event loop to its connection's lane and waits on
+ * a membership load that takes {@code databaseMillis} on one of {@code databaseConnections} slots.
+ * Each operation submits a probe task to the event loop and waits for it to run, so SampleTime
+ * reports how long the loop takes to get to new work, which should stay in microseconds however
+ * deep the database backlog is.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ConnectionLanesBenchmark {
+
+  @Param({"20"})
+  long databaseMillis;
+
+  @Param({"8"})
+  int databaseConnections;
+
+  @Param({"300"})
+  int backlog;
+
+  @Param({"100"})
+  int clientConnections;
+
+  ConnectionLanes lanes;
+  BoundedVirtualExecutor database;
+  ChannelMembershipCache cache;
+  DefaultEventLoop eventLoop;
+  Thread feeder;
+
+  @Setup
+  public void setup() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ChannelMembershipSource slowDatabase =
+        new ChannelMembershipSource() {
+          @Override
+          public Set<String> loadMembers(String channelId) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(databaseMillis));
+            return Set.of("user");
+          }
+
+          @Override
+          public Set<String> loadChannels(String userId) {
+            return Set.of();
+          }
+        };
+    BlockingExecutionConfiguration lanesConfig = new BlockingExecutionConfiguration();
+    // The feeder never has more than the backlog outstanding, so no frame is refused
+    lanesConfig.setMaxQueuedPerConnection(backlog);
+    lanes = new ConnectionLanes(lanesConfig, meterRegistry);
+    database = new BoundedVirtualExecutor("bench-db-", databaseConnections);
+    cache =
+        new ChannelMembershipCache(
+            slowDatabase, new ChannelMembershipConfiguration(), database, meterRegistry);
+    eventLoop = new DefaultEventLoop();
+    feeder = Thread.ofPlatform().daemon().name("lane-feeder").start(this::feed);
+  }
+
+  /** Dispatches frames for channels that are never cached, keeping {@code backlog} in flight. */
+  private void feed() {
+    Semaphore outstanding = new Semaphore(backlog);
+    long frame = 0;
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        outstanding.acquire();
+      } catch (InterruptedException e) {
+        return;
+      }
+      String connection = "conn-" + frame % clientConnections;
+      String channelId = "ch-" + frame++;
+      eventLoop.execute(
+          () ->
+              lanes.submit(
+                  connection,
+                  () -> {
+                    try {
+                      cache.isMember(channelId, "user").join();
+                    } finally {
+                      outstanding.release();
+                    }
+                  }));
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    feeder.interrupt();
+    feeder.join();
+    eventLoop.shutdownGracefully().sync();
+    lanes.close();
+    database.close();
+  }
+
+  @Benchmark
+  public void eventLoopProbe() {
+    CompletableFuture<Void> ran = new CompletableFuture<>();
+    eventLoop.execute(() -> ran.complete(null));
+    ran.join();
+  }
+}
@@ -0,0 +1,81 @@
+package messaging.history;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import messaging.MessagingServer;
+import messaging.persistence.MessageRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Resume lookups during a mass reconnect: {@code channels} full buffers, and clients whose last
+ * seen message is spread over each channel's last {@code sent} messages, so some reach back past
+ * what the buffer holds and fall back. Tear-down prints the heap per channel and the share of
+ * resumes that needed no history query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class RecentMessageBufferBenchmark {
+
+  @Param({"200"})
+  int channels;
+
+  @Param({"256"})
+  int capacity;
+
+  @Param({"300"})
+  int sent;
+
+  SimpleMeterRegistry meterRegistry;
+  RecentMessageBuffer buffer;
+  MessageCursor until;
+
+  @Setup
+  public void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    RecentMessageBufferConfiguration config = new RecentMessageBufferConfiguration();
+    config.setCapacity(capacity);
+    buffer = new RecentMessageBuffer(config, meterRegistry);
+    Instant start = Instant.now();
+    UUID sender = UUID.randomUUID();
+    for (int c = 0; c < channels; c++) {
+      UUID channelId = UUID.randomUUID();
+      for (int seq = 1; seq <= sent; seq++) {
+        MessageRecord record =
+            new MessageRecord(
+                channelId, UUID.randomUUID(), sender, start, "message body " + seq, seq, null);
+        buffer.record("ch-" + c, MessageCursor.of(record), MessagingServer.buildPayload(record));
+      }
+    }
+    until = new MessageCursor(sent);
+  }
+
+  @TearDown
+  public void tearDown() {
+    double hits = meterRegistry.counter("messaging.history.buffer.hits").count();
+    double misses = meterRegistry.counter("messaging.history.buffer.misses").count();
+    System.out.printf(
+        "%n~%d bytes per channel (%d messages), %.1f%% of resumes served from memory%n",
+        buffer.estimatedBytes() / channels, capacity, 100 * hits / (hits + misses));
+  }
+
+  @Benchmark
+  public Optional<List<RecentMessageBuffer.Entry>> resume() {
+    int channel = ThreadLocalRandom.current().nextInt(channels);
+    MessageCursor lastSeen = new MessageCursor(ThreadLocalRandom.current().nextInt(sent));
+    return buffer.page("ch-" + channel, lastSeen, until, 100);
+  }
+}
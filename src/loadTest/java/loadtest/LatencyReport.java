@@ -0,0 +1,113 @@
+package loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency recorders and counters for one run. Values are recorded in microseconds from any
+ * thread. Delivery latency is recorded twice: from the time a message was scheduled to be sent
+ * (corrected for coordinated omission, so a stalled sender shows up as latency rather than as
+ * missing samples) and from the time it was actually written.
+ */
+final class LatencyReport {
+
+  private static final double MICROS_PER_MILLI = 1000.0;
+
+  final Recorder connect = new Recorder(3);
+  final Recorder delivery = new Recorder(3);
+  final Recorder deliveryUncorrected = new Recorder(3);
+  final LongAdder connected = new LongAdder();
+  final LongAdder connectFailures = new LongAdder();
+  final LongAdder closed = new LongAdder();
+  final LongAdder sent = new LongAdder();
+  final LongAdder received = new LongAdder();
+  final LongAdder errors = new LongAdder();
+
+  private final Histogram connectTotal = new Histogram(3);
+  private final Histogram deliveryTotal = new Histogram(3);
+  private final Histogram deliveryUncorrectedTotal = new Histogram(3);
+  private final HistogramLogWriter deliveryLog;
+  private final long startNanos = System.nanoTime();
+  private Histogram interval;
+
+  LatencyReport(Path reportDir) throws IOException {
+    Files.createDirectories(reportDir);
+    deliveryLog =
+        new HistogramLogWriter(new PrintStream(reportDir.resolve("delivery.hlog").toFile()));
+    deliveryLog.outputLogFormatVersion();
+    deliveryLog.outputLegend();
+  }
+
+  static void record(Recorder recorder, long fromNanos, long toNanos) {
+    recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(toNanos - fromNanos)));
+  }
+
+  /** Folds the interval's samples into the totals and prints one progress line. */
+  synchronized void printInterval(String phase) {
+    connectTotal.add(connect.getIntervalHistogram());
+    deliveryUncorrectedTotal.add(deliveryUncorrected.getIntervalHistogram());
+    interval = delivery.getIntervalHistogram(interval);
+    deliveryTotal.add(interval);
+    deliveryLog.outputIntervalHistogram(interval);
+    System.out.printf(
+        "[%5ds %s] sessions=%d failed=%d closed=%d sent=%d received=%d errors=%d"
+            + " | delivery p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms%n",
+        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos),
+        phase,
+        connected.sum(),
+        connectFailures.sum(),
+        closed.sum(),
+        sent.sum(),
+        received.sum(),
+        errors.sum(),
+        millis(interval, 50),
+        millis(interval, 99),
+        millis(interval, 99.9),
+        interval.getMaxValue() / MICROS_PER_MILLI);
+  }
+
+  /** Writes the full percentile distributions (in ms) and prints a summary. */
+  synchronized void writeFinal(Path reportDir) throws IOException {
+    printInterval("final");
+    deliveryLog.close();
+    write(reportDir.resolve("connect.hgrm"), connectTotal);
+    write(reportDir.resolve("delivery.hgrm"), deliveryTotal);
+    write(reportDir.resolve("delivery-uncorrected.hgrm"), deliveryUncorrectedTotal);
+    System.out.printf(
+        "%nConnect (ms): p50=%.2f p99=%.2f max=%.2f%n",
+        millis(connectTotal, 50),
+        millis(connectTotal, 99),
+        connectTotal.getMaxValue() / MICROS_PER_MILLI);
+    System.out.printf(
+        "Delivery, corrected (ms): p50=%.2f p99=%.2f p99.9=%.2f p99.99=%.2f max=%.2f%n",
+        millis(deliveryTotal, 50),
+        millis(deliveryTotal, 99),
+        millis(deliveryTotal, 99.9),
+        millis(deliveryTotal, 99.99),
+        deliveryTotal.getMaxValue() / MICROS_PER_MILLI);
+    System.out.printf(
+        "Delivery, uncorrected (ms): p50=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+        millis(deliveryUncorrectedTotal, 50),
+        millis(deliveryUncorrectedTotal, 99),
+        millis(deliveryUncorrectedTotal, 99.9),
+        deliveryUncorrectedTotal.getMaxValue() / MICROS_PER_MILLI);
+    System.out.printf("Reports written to %s%n", reportDir.toAbsolutePath());
+  }
+
+  private static double millis(Histogram histogram, double percentile) {
+    return histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+  }
+
+  private static void write(Path file, Histogram histogram) throws IOException {
+    try (PrintStream out = new PrintStream(file.toFile())) {
+      histogram.outputPercentileDistribution(out, MICROS_PER_MILLI);
+    }
+  }
+}
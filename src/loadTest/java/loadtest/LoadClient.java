@@ -0,0 +1,101 @@
+package loadtest;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * One simulated user: a Netty websocket connection that counts as connected once the server's
+ * {@code ack} frame arrives, and records the latency of every channel message it receives from
+ * the timestamps the sender put in its body.
+ */
+final class LoadClient extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+  /** Bodies are {@code lt:<scheduled nanos>:<written nanos>}; both are this JVM's nanoTime. */
+  static final String BODY_PREFIX = "lt:";
+
+  private static final String TEXT_FIELD = "\"text\":\"" + BODY_PREFIX;
+
+  final String channelId;
+  private final LatencyReport report;
+  private final long scheduledNanos;
+  private volatile Channel channel;
+  private volatile boolean ready;
+
+  LoadClient(String channelId, LatencyReport report, long scheduledNanos) {
+    this.channelId = channelId;
+    this.report = report;
+    this.scheduledNanos = scheduledNanos;
+  }
+
+  boolean isReady() {
+    return ready && channel.isActive();
+  }
+
+  /** Sends a channel message stamped with when it was scheduled and when it is written. */
+  void sendMessage(long scheduledNanos, long sequence) {
+    String body = BODY_PREFIX + scheduledNanos + ":" + System.nanoTime();
+    channel.writeAndFlush(
+        new TextWebSocketFrame(
+            "{\"type\":\"message\",\"channelId\":\""
+                + channelId
+                + "\",\"clientMsgId\":\""
+                + sequence
+                + "\",\"body\":\""
+                + body
+                + "\"}"));
+  }
+
+  void close() {
+    if (channel != null) channel.close();
+  }
+
+  @Override
+  public void channelActive(ChannelHandlerContext ctx) throws Exception {
+    channel = ctx.channel();
+    super.channelActive(ctx);
+  }
+
+  @Override
+  protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+    if (!(frame instanceof TextWebSocketFrame textFrame)) return;
+    long now = System.nanoTime();
+    String text = textFrame.text();
+    int at = text.indexOf(TEXT_FIELD);
+    if (at >= 0) {
+      int start = at + TEXT_FIELD.length();
+      int split = text.indexOf(':', start);
+      int end = text.indexOf('"', split);
+      LatencyReport.record(report.delivery, Long.parseLong(text.substring(start, split)), now);
+      LatencyReport.record(
+          report.deliveryUncorrected, Long.parseLong(text.substring(split + 1, end)), now);
+      report.received.increment();
+    } else if (!ready && text.contains("\"type\":\"ack\"")) {
+      // Only the ack, not the handshake, means the server has registered the session
+      ready = true;
+      report.connected.increment();
+      LatencyReport.record(report.connect, scheduledNanos, now);
+    } else if (text.contains("\"type\":\"error\"")) {
+      report.errors.increment();
+    }
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    if (ready) {
+      report.closed.increment();
+    } else {
+      // Refused during the handshake or closed before registering, e.g. over a session limit
+      report.connectFailures.increment();
+    }
+    ready = false;
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    ctx.close();
+  }
+}
@@ -0,0 +1,232 @@
+package loadtest;
+
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.runtime.server.EmbeddedServer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import messaging.membership.InMemoryChannelMembershipSource;
+
+/**
+ * Headless websocket load generator for {@code /chat}. Opens {@code connections} sessions at
+ * {@code connectRate} per second, each identified by the {@code X-User-Id} header, then sends
+ * channel messages from random sessions at {@code messageRate} per second for {@code duration}.
+ * Both schedules are open-model: work starts at its scheduled time even if the server is behind,
+ * and latency is measured from that scheduled time, so queueing in the server or in the generator
+ * itself is reported instead of hidden (coordinated omission).
+ *
+ * <p>With no {@code target} a {@link messaging.MessagingServer} is started in-process without a
+ * datasource, and channel membership is filled in its in-memory source, so nothing else needs to
+ * run. Against a remote target the users must already be members of their channels and the server
+ * must accept the header, i.e. be reached without the auth proxy.
+ *
+ * <p>Results: a progress line every five seconds, HdrHistogram percentile files ({@code *.hgrm},
+ * in ms) for connect and delivery latency and an interval log ({@code delivery.hlog}) in {@code
+ * reportDir}. 50k sessions in-process need about 100k file descriptors ({@code ulimit -n}).
+ */
+public final class LoadGenerator {
+
+  private static final long REPORT_INTERVAL_SECONDS = 5;
+  private static final long CONNECT_GRACE_SECONDS = 30;
+  private static final long DRAIN_SECONDS = 3;
+  private static final int MAX_FRAME_BYTES = 64 * 1024;
+
+  private final LoadTestSettings settings;
+  private final LatencyReport report;
+  private final LoadClient[] clients;
+  private final EventLoopGroup group = new NioEventLoopGroup();
+  private volatile String phase = "connect";
+
+  private LoadGenerator(LoadTestSettings settings) throws Exception {
+    this.settings = settings;
+    this.report = new LatencyReport(settings.reportDir());
+    this.clients = new LoadClient[settings.connections()];
+  }
+
+  public static void main(String[] args) throws Exception {
+    LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+    ApplicationContext server = settings.target() == null ? startServer(settings) : null;
+    URI target =
+        server == null
+            ? settings.target()
+            : URI.create(
+                "ws://127.0.0.1:" + server.getBean(EmbeddedServer.class).getPort() + "/chat");
+    try {
+      new LoadGenerator(settings).run(target);
+    } finally {
+      if (server != null) server.close();
+    }
+  }
+
+  /**
+   * An in-process server with every load user already a member of their channel. Admission control
+   * is off: the generator opens connections far faster than its default rate and is the one
+   * pacing them.
+   */
+  private static ApplicationContext startServer(LoadTestSettings settings) {
+    EmbeddedServer server =
+        ApplicationContext.run(
+            EmbeddedServer.class,
+            Map.of(
+                "micronaut.server.port", -1,
+                "datasources.default.enabled", false,
+                "flyway.datasources.default.enabled", false,
+                "messaging.admission.enabled", false,
+                "logger.levels.messaging", "WARN"));
+    InMemoryChannelMembershipSource membership =
+        server.getApplicationContext().getBean(InMemoryChannelMembershipSource.class);
+    for (int i = 0; i < settings.connections(); i++) {
+      membership.addMember(settings.channelId(i), LoadTestSettings.userId(i));
+    }
+    return server.getApplicationContext();
+  }
+
+  private void run(URI target) throws Exception {
+    System.out.printf("Load test against %s: %s%n", target, settings);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    reporter.scheduleAtFixedRate(
+        () -> report.printInterval(phase),
+        REPORT_INTERVAL_SECONDS,
+        REPORT_INTERVAL_SECONDS,
+        TimeUnit.SECONDS);
+    try {
+      Bootstrap bootstrap =
+          new Bootstrap()
+              .group(group)
+              .channel(NioSocketChannel.class)
+              .option(ChannelOption.TCP_NODELAY, true)
+              .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10_000);
+      int[] next = {0};
+      paced(
+          settings.connectRate(),
+          Long.MAX_VALUE,
+          settings.connections(),
+          scheduled -> connect(bootstrap, target, next[0]++, scheduled));
+      awaitConnections();
+
+      phase = "messages";
+      long[] sequence = {0};
+      long end = System.nanoTime() + settings.duration().toNanos();
+      paced(
+          settings.messageRate(),
+          end,
+          Long.MAX_VALUE,
+          scheduled -> sendFromRandomClient(scheduled, sequence[0]++));
+      phase = "drain";
+      TimeUnit.SECONDS.sleep(DRAIN_SECONDS);
+    } finally {
+      reporter.shutdownNow();
+      for (LoadClient client : clients) {
+        if (client != null) client.close();
+      }
+      group.shutdownGracefully().syncUninterruptibly();
+    }
+    report.writeFinal(settings.reportDir());
+  }
+
+  private void connect(Bootstrap bootstrap, URI target, int index, long scheduledNanos) {
+    String userId = LoadTestSettings.userId(index);
+    LoadClient client = new LoadClient(settings.channelId(index), report, scheduledNanos);
+    clients[index] = client;
+    Bootstrap connection =
+        bootstrap
+            .clone()
+            .handler(
+                new ChannelInitializer<SocketChannel>() {
+                  @Override
+                  protected void initChannel(SocketChannel ch) {
+                    ch.pipeline()
+                        .addLast(
+                            new HttpClientCodec(),
+                            new HttpObjectAggregator(MAX_FRAME_BYTES),
+                            new WebSocketClientProtocolHandler(
+                                WebSocketClientHandshakerFactory.newHandshaker(
+                                    target,
+                                    WebSocketVersion.V13,
+                                    null,
+                                    false,
+                                    new DefaultHttpHeaders().add("X-User-Id", userId),
+                                    MAX_FRAME_BYTES)),
+                            client);
+                  }
+                });
+    InetSocketAddress remote = new InetSocketAddress(target.getHost(), target.getPort());
+    ChannelFuture future =
+        remote.getAddress().isLoopbackAddress() && settings.localAddresses() > 1
+            ? connection.connect(remote, localAddress(index))
+            : connection.connect(remote);
+    future.addListener(
+        f -> {
+          if (!f.isSuccess()) report.connectFailures.increment();
+        });
+  }
+
+  /** Spreads loopback connections over 127.0.0.1..n so they are not capped by ephemeral ports. */
+  private InetSocketAddress localAddress(int index) {
+    byte last = (byte) (1 + index % settings.localAddresses());
+    try {
+      return new InetSocketAddress(InetAddress.getByAddress(new byte[] {127, 0, 0, last}), 0);
+    } catch (UnknownHostException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void awaitConnections() throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CONNECT_GRACE_SECONDS);
+    while (report.connected.sum() + report.connectFailures.sum() < settings.connections()
+        && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+  }
+
+  private void sendFromRandomClient(long scheduledNanos, long sequence) {
+    // A few tries so a handful of failed sessions do not turn into skipped sends
+    for (int attempt = 0; attempt < 8; attempt++) {
+      LoadClient client = clients[ThreadLocalRandom.current().nextInt(clients.length)];
+      if (client != null && client.isReady()) {
+        client.sendMessage(scheduledNanos, sequence);
+        report.sent.increment();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Runs {@code action} at a fixed rate until {@code endNanos} or {@code count} runs, passing each
+   * run its scheduled time. A run that is late still gets its scheduled time, and the runs behind
+   * it fire back to back until the schedule is caught up.
+   */
+  private static void paced(double perSecond, long endNanos, long count, LongConsumer action) {
+    long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+    long start = System.nanoTime();
+    for (long i = 0; i < count; i++) {
+      long scheduled = start + i * intervalNanos;
+      if (scheduled >= endNanos) return;
+      long wait = scheduled - System.nanoTime();
+      if (wait > 0) LockSupport.parkNanos(wait);
+      action.accept(scheduled);
+    }
+  }
+}
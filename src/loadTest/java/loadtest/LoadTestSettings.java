@@ -0,0 +1,52 @@
+package loadtest;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Load test parameters, read from {@code loadtest.*} system properties (the Gradle task passes
+ * {@code -Ploadtest.<name>=<value>} through). Rates are open-model: connections and messages are
+ * started on a fixed schedule whether or not earlier ones have completed.
+ *
+ * @param target {@code ws://} URI of a running server, or null to start one in-process
+ * @param connections sessions to open, one user each
+ * @param connectRate new connections started per second
+ * @param channels channels the users are spread over round-robin
+ * @param messageRate channel messages sent per second across all sessions
+ * @param duration how long messages are sent for once every connection is up
+ * @param localAddresses loopback source addresses to spread connections over; one address only
+ *     has about 28k ephemeral ports towards a given server port
+ * @param reportDir where histogram reports are written
+ */
+record LoadTestSettings(
+    URI target,
+    int connections,
+    double connectRate,
+    int channels,
+    double messageRate,
+    Duration duration,
+    int localAddresses,
+    Path reportDir) {
+
+  static LoadTestSettings fromSystemProperties() {
+    String target = System.getProperty("loadtest.target", "");
+    return new LoadTestSettings(
+        target.isBlank() ? null : URI.create(target),
+        Integer.getInteger("loadtest.connections", 50_000),
+        Double.parseDouble(System.getProperty("loadtest.connectRate", "5000")),
+        Integer.getInteger("loadtest.channels", 1_000),
+        Double.parseDouble(System.getProperty("loadtest.messageRate", "2000")),
+        Duration.parse(System.getProperty("loadtest.duration", "PT60S")),
+        Integer.getInteger("loadtest.localAddresses", 4),
+        Path.of(System.getProperty("loadtest.reportDir", "build/reports/loadtest")));
+  }
+
+  static String userId(int index) {
+    return "load-user-" + index;
+  }
+
+  String channelId(int userIndex) {
+    return "load-channel-" + (userIndex % channels);
+  }
+}
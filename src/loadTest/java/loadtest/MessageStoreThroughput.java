@@ -0,0 +1,95 @@
+package loadtest;
+
+import io.micronaut.context.ApplicationContext;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.sql.DataSource;
+import messaging.persistence.JdbcMessageStore;
+import messaging.persistence.MessageRecord;
+
+/**
+ * Insert throughput of {@link JdbcMessageStore}, one message per transaction versus {@code
+ * batchSize} per transaction, against a real database. Migrations are applied on start. The
+ * database is given as {@code loadtest.jdbcUrl}, {@code loadtest.jdbcUser} and {@code
+ * loadtest.jdbcPassword}; a single-node Citus container is enough, e.g. {@code docker run -p
+ * 5432:5432 -e POSTGRES_PASSWORD=pw citusdata/citus:postgres_16}. The outbox relay is kept idle so
+ * it does not compete for the database.
+ */
+public final class MessageStoreThroughput {
+
+  private MessageStoreThroughput() {}
+
+  public static void main(String[] args) throws Exception {
+    int messages = Integer.getInteger("loadtest.messages", 20_000);
+    int batchSize = Integer.getInteger("loadtest.batchSize", 100);
+    int channelCount = Integer.getInteger("loadtest.channels", 16);
+    try (ApplicationContext ctx =
+        ApplicationContext.run(
+            Map.of(
+                "datasources.default.url",
+                System.getProperty("loadtest.jdbcUrl", "jdbc:postgresql://localhost:5432/postgres"),
+                "datasources.default.username",
+                System.getProperty("loadtest.jdbcUser", "postgres"),
+                "datasources.default.password",
+                System.getProperty("loadtest.jdbcPassword", "pw"),
+                "datasources.default.driver-class-name",
+                "org.postgresql.Driver",
+                "flyway.datasources.default.enabled",
+                true,
+                "flyway.datasources.default.locations",
+                "classpath:db/migration",
+                "messaging.outbox.poll-interval",
+                "1h"))) {
+      JdbcMessageStore store = ctx.getBean(JdbcMessageStore.class);
+      UUID sender = UUID.randomUUID();
+      List<UUID> channels = new ArrayList<>();
+      for (int i = 0; i < channelCount; i++) {
+        channels.add(UUID.randomUUID());
+      }
+      seed(ctx.getBean(DataSource.class), sender, channels);
+
+      long singleStart = System.nanoTime();
+      for (int i = 0; i < messages; i++) {
+        store.write(
+            List.of(MessageRecord.newMessage(channels.get(i % channelCount), sender, "s" + i)));
+      }
+      double singlePerSec = messages / ((System.nanoTime() - singleStart) / 1e9);
+
+      long batchStart = System.nanoTime();
+      for (int i = 0; i < messages; i += batchSize) {
+        List<MessageRecord> batch = new ArrayList<>(batchSize);
+        for (int j = 0; j < batchSize; j++) {
+          batch.add(MessageRecord.newMessage(channels.get(j % channelCount), sender, "b" + i));
+        }
+        store.write(batch);
+      }
+      double batchedPerSec = messages / ((System.nanoTime() - batchStart) / 1e9);
+
+      System.out.printf(
+          "Message inserts over %d channels: single-row %.0f msg/s, batched (%d per batch)"
+              + " %.0f msg/s%n",
+          channelCount, singlePerSec, batchSize, batchedPerSec);
+    }
+  }
+
+  private static void seed(DataSource dataSource, UUID sender, List<UUID> channels)
+      throws Exception {
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement user = conn.prepareStatement("INSERT INTO users (user_id) VALUES (?)");
+        PreparedStatement channel =
+            conn.prepareStatement(
+                "INSERT INTO channels (channel_id, channel_name) VALUES (?, 'throughput')")) {
+      user.setObject(1, sender);
+      user.executeUpdate();
+      for (UUID channelId : channels) {
+        channel.setObject(1, channelId);
+        channel.addBatch();
+      }
+      channel.executeBatch();
+    }
+  }
+}
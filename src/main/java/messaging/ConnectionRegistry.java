@@ -1,54 +1,332 @@
 package messaging;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.websocket.CloseReason;
 import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import messaging.UserSessionConfiguration.EvictionPolicy;
+import messaging.compression.DeflateMode;
+import messaging.compression.SharedFrameCompressor;
+import messaging.ratelimit.TokenBucket;
+import messaging.tracing.DeliveryTrace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Singleton
 public class ConnectionRegistry {
 
-  private final ConcurrentHashMap<String, WebSocketSession> userSessionMap =
+  /** Channels with at least this many local members are fanned out with one shared frame. */
+  static final int SHARED_FRAME_MIN_RECIPIENTS = 16;
+
+  private static final OutboundQueue[] NO_SESSIONS = new OutboundQueue[0];
+
+  /**
+   * Told when a user enters or leaves a channel's local index, i.e. comes online or goes offline in
+   * it on this node. Called from inside the registry's updates, so it must be quick and must not
+   * call back into the registry.
+   */
+  @FunctionalInterface
+  public interface PresenceListener {
+    void onPresenceChanged(String channelId, String userId, boolean online);
+  }
+
+  /**
+   * userId -> the user's sessions on this node, one per device, oldest first. Arrays are never
+   * mutated; every change swaps in a copy inside compute(), so fanout reads a consistent snapshot
+   * without locking and the usual one to three devices cost one small array per user.
+   */
+  private final ConcurrentHashMap<String, OutboundQueue[]> userSessionMap =
       new ConcurrentHashMap<>();
+
+  /**
+   * Channel index: channelId -> users in that channel that currently hold a session on this node.
+   * Only users registered here ever appear, so fanout to a channel costs O(local channel members)
+   * rather than O(all local sessions).
+   */
+  private final ConcurrentHashMap<String, Set<String>> channelUserMap = new ConcurrentHashMap<>();
+
+  /** Reverse of the channel index so removal does not have to scan every channel. */
+  private final ConcurrentHashMap<String, Set<String>> userChannelMap = new ConcurrentHashMap<>();
+
+  private final OutboundQueueConfiguration outboundConfig;
+  private final UserSessionConfiguration sessionConfig;
+  private final InboundRateLimitConfiguration rateLimitConfig;
+
+  /**
+   * Inbound buckets of users whose last session here closed, kept until they would have refilled,
+   * so disconnecting and reconnecting does not buy a fresh burst.
+   */
+  private final Cache<String, TokenBucket> releasedInboundLimits =
+      Caffeine.newBuilder()
+          .expireAfter(
+              Expiry.creating(
+                  (String userId, TokenBucket bucket) ->
+                      Duration.ofNanos(bucket.nanosUntilFull(System.nanoTime()))))
+          .build();
+  private final OutboundQueue.Metrics outboundMetrics;
+  private final SharedFrameCompressor frameCompressor;
+  private final AtomicInteger activeSessions = new AtomicInteger();
+  private volatile PresenceListener presenceListener = (channelId, userId, online) -> {};
+  private final Counter sessionsOpened;
+  private final Counter sessionsClosed;
+  private final Counter sessionsEvicted;
+  private final Counter sessionsRejected;
+  private final Counter inboundRateLimited;
+  private final DistributionSummary fanoutRecipients;
   private static final Logger LOG = LoggerFactory.getLogger(ConnectionRegistry.class);
 
-  public void registerUserSession(String userId, WebSocketSession session) {
-    Optional<WebSocketSession> prevSession =
-        Optional.ofNullable(userSessionMap.put(userId, session));
-    LOG.debug("Registered session for userId {}: {}", userId, session.getId());
-    prevSession.ifPresent(
-        prev -> {
-          if (prev != session && prev.isOpen()) {
-            prev.close(
-                new CloseReason(CloseReason.NORMAL.getCode(), "Replaced by a new connection"));
-            LOG.debug("Closed previous session for userId {}: {}", userId, prev.getId());
+  public ConnectionRegistry(
+      OutboundQueueConfiguration outboundConfig,
+      UserSessionConfiguration sessionConfig,
+      InboundRateLimitConfiguration rateLimitConfig,
+      SharedFrameCompressor frameCompressor,
+      MeterRegistry meterRegistry) {
+    // Checked here so a bad rate fails startup rather than every session open
+    if (rateLimitConfig.isEnabled()
+        && !(rateLimitConfig.getMessagesPerSecond() > 0 && rateLimitConfig.getBurst() >= 1)) {
+      throw new IllegalArgumentException(
+          "messaging.inbound.rate-limit needs a positive messages-per-second and burst, got "
+              + rateLimitConfig.getMessagesPerSecond()
+              + " and "
+              + rateLimitConfig.getBurst());
+    }
+    this.outboundConfig = outboundConfig;
+    this.sessionConfig = sessionConfig;
+    this.rateLimitConfig = rateLimitConfig;
+    this.frameCompressor = frameCompressor;
+    this.outboundMetrics = OutboundQueue.Metrics.register(meterRegistry);
+    Gauge.builder("messaging.sessions.active", activeSessions, AtomicInteger::get)
+        .description("Sessions currently registered on this node")
+        .register(meterRegistry);
+    Gauge.builder("messaging.sessions.users", userSessionMap, ConcurrentHashMap::size)
+        .description("Users holding at least one session on this node")
+        .register(meterRegistry);
+    this.sessionsOpened =
+        Counter.builder("messaging.sessions.opened")
+            .description("Sessions registered")
+            .register(meterRegistry);
+    this.sessionsClosed =
+        Counter.builder("messaging.sessions.closed")
+            .description("Sessions removed, including those evicted at the per-user limit")
+            .register(meterRegistry);
+    this.sessionsEvicted =
+        Counter.builder("messaging.sessions.evicted")
+            .description("Sessions closed to make room for the same user's new device")
+            .register(meterRegistry);
+    this.sessionsRejected =
+        Counter.builder("messaging.sessions.rejected")
+            .description("New sessions refused at the per-user limit")
+            .register(meterRegistry);
+    this.inboundRateLimited =
+        Counter.builder("messaging.inbound.rate-limited")
+            .description("Frames received over the sender's inbound rate limit")
+            .register(meterRegistry);
+    this.fanoutRecipients =
+        DistributionSummary.builder("messaging.fanout.recipients")
+            .description("Local sessions a channel message was handed to")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+  }
+
+  public boolean registerUserSession(String userId, WebSocketSession session) {
+    return registerUserSession(userId, session, Set.of());
+  }
+
+  /**
+   * Adds a session alongside any the user already holds. At {@code max-per-user} the eviction
+   * policy either closes the user's oldest session or rejects (and closes) this one; returns false
+   * if it was rejected.
+   */
+  public boolean registerUserSession(
+      String userId, WebSocketSession session, Set<String> channelIds) {
+    return registerUserSession(userId, session, channelIds, DeflateMode.OFF);
+  }
+
+  /**
+   * As {@link #registerUserSession(String, WebSocketSession, Set)}, for a session that negotiated
+   * {@code deflateMode} in its handshake.
+   */
+  public boolean registerUserSession(
+      String userId, WebSocketSession session, Set<String> channelIds, DeflateMode deflateMode) {
+    // Per-user updates run inside compute() so the session set swap and the index update are
+    // atomic with respect to a concurrent removeUserSession for the same user
+    OutboundQueue[] evictedHolder = new OutboundQueue[1];
+    boolean[] rejected = new boolean[1];
+    boolean[] added = new boolean[1];
+    userSessionMap.compute(
+        userId,
+        (uid, current) -> {
+          OutboundQueue[] sessions = current != null ? current : NO_SESSIONS;
+          if (indexOf(sessions, session) < 0 && sessions.length >= sessionConfig.getMaxPerUser()) {
+            if (sessionConfig.getEvictionPolicy() == EvictionPolicy.REJECT_NEW) {
+              rejected[0] = true;
+              return current;
+            }
+            int evict = evictionCandidate(sessions);
+            evictedHolder[0] = sessions[evict];
+            sessions = without(sessions, evict);
           }
+          channelIds.forEach(channelId -> indexChannelMember(channelId, uid));
+          if (indexOf(sessions, session) >= 0) return sessions;
+          added[0] = true;
+          // A new device joins the user's existing bucket rather than bringing a fresh burst
+          TokenBucket inboundLimit =
+              current != null ? current[0].inboundLimit() : newInboundLimit(uid);
+          return with(
+              sessions,
+              new OutboundQueue(
+                  uid, session, outboundConfig, outboundMetrics, deflateMode, inboundLimit));
         });
+    if (rejected[0]) {
+      sessionsRejected.increment();
+      LOG.debug("Rejected session for userId {} at the session limit: {}", userId, session.getId());
+      session.close(
+          new CloseReason(CloseReason.POLICY_VIOLATION.getCode(), "Too many sessions for user"));
+      return false;
+    }
+    LOG.debug("Registered session for userId {}: {}", userId, session.getId());
+    if (added[0]) {
+      sessionsOpened.increment();
+      activeSessions.incrementAndGet();
+    }
+    Optional.ofNullable(evictedHolder[0])
+        .ifPresent(
+            evictedQueue -> {
+              sessionsEvicted.increment();
+              onSessionRemoved();
+              evictedQueue.discard();
+              WebSocketSession evicted = evictedQueue.session();
+              if (evicted.isOpen()) {
+                evicted.close(
+                    new CloseReason(CloseReason.NORMAL.getCode(), "Replaced by a new connection"));
+                LOG.debug("Closed oldest session for userId {}: {}", userId, evicted.getId());
+              }
+            });
+    return true;
   }
 
   public void removeUserSession(String userId, WebSocketSession session) {
     LOG.debug("Removing session for userId {}: {}", userId, session.getId());
-    userSessionMap.remove(userId, session);
+    userSessionMap.computeIfPresent(
+        userId,
+        (uid, sessions) -> {
+          int index = indexOf(sessions, session);
+          if (index < 0) return sessions;
+          sessions[index].discard();
+          onSessionRemoved();
+          if (sessions.length > 1) return without(sessions, index);
+          // Last device gone: the user no longer belongs in any channel's local index
+          TokenBucket inboundLimit = sessions[index].inboundLimit();
+          if (inboundLimit != null && inboundLimit.nanosUntilFull(System.nanoTime()) > 0) {
+            releasedInboundLimits.put(uid, inboundLimit);
+          }
+          Set<String> channelIds = userChannelMap.remove(uid);
+          if (channelIds != null) {
+            channelIds.forEach(channelId -> unindexChannelMember(channelId, uid));
+          }
+          return null;
+        });
+  }
+
+  /** The user's bucket from a session that closed recently, or a full one. */
+  @Nullable
+  private TokenBucket newInboundLimit(String userId) {
+    if (!rateLimitConfig.isEnabled()) return null;
+    TokenBucket released = releasedInboundLimits.asMap().remove(userId);
+    if (released != null) return released;
+    return new TokenBucket(
+        rateLimitConfig.getMessagesPerSecond(), rateLimitConfig.getBurst(), System.nanoTime());
+  }
+
+  /**
+   * Takes one frame from the user's inbound rate limit, shared by all of their sessions here.
+   * Returns false if they are over it. Lock-free: one map read and one compare-and-set.
+   */
+  public boolean tryAcquireInbound(String userId) {
+    OutboundQueue[] sessions = userId != null ? userSessionMap.get(userId) : null;
+    // Not registered (e.g. refused or already removed) or not limited
+    if (sessions == null || sessions[0].inboundLimit() == null) return true;
+    if (sessions[0].inboundLimit().tryAcquire(System.nanoTime()) == 0) return true;
+    inboundRateLimited.increment();
+    return false;
+  }
+
+  private void onSessionRemoved() {
+    sessionsClosed.increment();
+    activeSessions.decrementAndGet();
+  }
+
+  /** Adds a locally connected user to a channel's index, e.g. after joining a channel. */
+  public void joinChannel(String userId, String channelId) {
+    userSessionMap.computeIfPresent(
+        userId,
+        (uid, current) -> {
+          indexChannelMember(channelId, uid);
+          return current;
+        });
+  }
+
+  /** Removes a locally connected user from a channel's index, e.g. after leaving a channel. */
+  public void leaveChannel(String userId, String channelId) {
+    userSessionMap.computeIfPresent(
+        userId,
+        (uid, current) -> {
+          Set<String> channelIds = userChannelMap.get(uid);
+          if (channelIds != null && channelIds.remove(channelId)) {
+            unindexChannelMember(channelId, uid);
+          }
+          return current;
+        });
+  }
+
+  /**
+   * Brings a channel's local index in line with its current member set: indexed users who are no
+   * longer members leave it, and members connected here who are missing from it join it.
+   */
+  public void reconcileChannel(String channelId, Set<String> members) {
+    Set<String> indexed = channelUserMap.get(channelId);
+    if (indexed != null) {
+      for (String uid : Set.copyOf(indexed)) {
+        if (!members.contains(uid)) leaveChannel(uid, channelId);
+      }
+    }
+    if (members.size() <= userSessionMap.size()) {
+      for (String uid : members) {
+        if (!isInChannel(channelId, uid)) joinChannel(uid, channelId);
+      }
+    } else {
+      for (String uid : userSessionMap.keySet()) {
+        if (members.contains(uid) && !isInChannel(channelId, uid)) joinChannel(uid, channelId);
+      }
+    }
   }
 
   public void broadcastPayload(
       String payload, Optional<Set<String>> targetUserSet, Optional<Set<String>> excludedUserSet) {
     userSessionMap.forEach(
-        (uid, registeredSession) -> {
+        (uid, sessions) -> {
           if (targetUserSet.map(set -> !set.contains(uid)).orElse(false)) return;
           if (excludedUserSet.map(set -> set.contains(uid)).orElse(false)) return;
-          if (!registeredSession.isOpen()) return;
-          registeredSession
-              .sendAsync(payload)
-              .exceptionally(
-                  ex -> {
-                    LOG.error("Failed to send payload to userId {}", uid, ex);
-                    return null;
-                  });
+          for (OutboundQueue outbound : sessions) {
+            sendPayload(outbound, payload);
+          }
         });
   }
 
@@ -59,4 +337,232 @@ public class ConnectionRegistry {
   public void broadcastPayloadToTargets(String payload, Set<String> targetUserSet) {
     broadcastPayload(payload, Optional.of(targetUserSet), Optional.empty());
   }
+
+  /**
+   * Sends the payload to every session of the channel's users connected to this node, visiting
+   * only those users. {@code excludeSessionId} is the session the message came from, which already
+   * has it; the sender's other sessions still receive it. It may be null.
+   */
+  public void broadcastToChannel(String channelId, String payload, String excludeSessionId) {
+    broadcastToChannel(channelId, payload, excludeSessionId, null);
+  }
+
+  /**
+   * As {@link #broadcastToChannel(String, String, String)}, settling {@code trace} (if not null)
+   * once every recipient's write has completed or been dropped.
+   */
+  public void broadcastToChannel(
+      String channelId, String payload, String excludeSessionId, DeliveryTrace trace) {
+    Set<String> channelUsers = channelUserMap.get(channelId);
+    if (channelUsers == null) {
+      if (trace != null) trace.dispatched();
+      return;
+    }
+    if (channelUsers.size() >= SHARED_FRAME_MIN_RECIPIENTS) {
+      broadcastFrameToChannel(channelId, payload, excludeSessionId, trace);
+      return;
+    }
+    Runnable onSettled = trace != null ? trace::recipientSettled : null;
+    int recipients = 0;
+    for (String uid : channelUsers) {
+      OutboundQueue[] sessions = userSessionMap.get(uid);
+      if (sessions == null) continue;
+      for (OutboundQueue outbound : sessions) {
+        if (isExcluded(outbound, excludeSessionId) || !outbound.session().isOpen()) continue;
+        if (trace != null) trace.addRecipient();
+        outbound.send(payload, onSettled);
+        recipients++;
+      }
+    }
+    fanoutRecipients.record(recipients);
+    if (trace != null) trace.dispatched();
+  }
+
+  /**
+   * Encode-once variant of {@link #broadcastToChannel(String, String, String)}. The payload is
+   * UTF-8 encoded into a single pooled buffer wrapped in one text frame, and every recipient is
+   * handed a {@code retainedDuplicate()} of it, so Netty neither re-encodes the text nor allocates
+   * a frame per session. Netty releases each duplicate once it is written (or the write fails),
+   * and the session's outbound queue releases any it drops.
+   *
+   * <p>Recipients that negotiated {@link DeflateMode#SHARED} compression are likewise handed one
+   * frame compressed once for all of them, instead of each session's deflater compressing the same
+   * payload again. The compressed frame is only built if such a recipient is found.
+   */
+  public void broadcastFrameToChannel(String channelId, String payload, String excludeSessionId) {
+    broadcastFrameToChannel(channelId, payload, excludeSessionId, null);
+  }
+
+  private void broadcastFrameToChannel(
+      String channelId, String payload, String excludeSessionId, DeliveryTrace trace) {
+    Set<String> channelUsers = channelUserMap.get(channelId);
+    if (channelUsers == null) {
+      if (trace != null) trace.dispatched();
+      return;
+    }
+    Runnable onSettled = trace != null ? trace::recipientSettled : null;
+    TextWebSocketFrame frame = encodeFrame(payload);
+    TextWebSocketFrame deflated = null;
+    boolean compressible = frameCompressor.accepts(frame);
+    int recipients = 0;
+    try {
+      for (String uid : channelUsers) {
+        OutboundQueue[] sessions = userSessionMap.get(uid);
+        if (sessions == null) continue;
+        for (OutboundQueue outbound : sessions) {
+          if (isExcluded(outbound, excludeSessionId) || !outbound.session().isOpen()) continue;
+          if (trace != null) trace.addRecipient();
+          TextWebSocketFrame shared = frame;
+          if (compressible && outbound.deflateMode() == DeflateMode.SHARED) {
+            if (deflated == null) deflated = frameCompressor.compress(frame);
+            shared = deflated;
+          }
+          outbound.send(shared.retainedDuplicate(), onSettled);
+          recipients++;
+        }
+      }
+    } finally {
+      frame.release();
+      if (deflated != null) deflated.release();
+      if (trace != null) trace.dispatched();
+    }
+    fanoutRecipients.record(recipients);
+  }
+
+  private static boolean isExcluded(OutboundQueue outbound, String excludeSessionId) {
+    return excludeSessionId != null && excludeSessionId.equals(outbound.session().getId());
+  }
+
+  static TextWebSocketFrame encodeFrame(String payload) {
+    return new TextWebSocketFrame(ByteBufUtil.writeUtf8(ByteBufAllocator.DEFAULT, payload));
+  }
+
+  /**
+   * Queues the payload for the user only while {@code session} is still their current, open
+   * session. Returns false once it has been closed or replaced, so per-session work can stop.
+   */
+  public boolean sendToSession(String userId, WebSocketSession session, String payload) {
+    OutboundQueue outbound = find(userId, session);
+    if (outbound == null || !session.isOpen()) return false;
+    outbound.send(payload);
+    return true;
+  }
+
+  /**
+   * Closes the session with {@code reason} once what is already queued for it has been written;
+   * messages sent to it in the meantime are dropped. Closes it at once if it is not registered.
+   */
+  public void closeAfterFlush(String userId, WebSocketSession session, CloseReason reason) {
+    OutboundQueue outbound = find(userId, session);
+    if (outbound != null) {
+      outbound.closeAfterFlush(reason);
+    } else if (session.isOpen()) {
+      session.close(reason);
+    }
+  }
+
+  /** Replaces the listener told about channel presence changes; there is one at a time. */
+  public void setPresenceListener(PresenceListener presenceListener) {
+    this.presenceListener = presenceListener;
+  }
+
+  /** Whether the user holds a session here and is in the channel's local index. */
+  public boolean isInChannel(String channelId, String userId) {
+    Set<String> channelUsers = channelUserMap.get(channelId);
+    return channelUsers != null && channelUsers.contains(userId);
+  }
+
+  /** Calls {@code action} with every session registered here and its user. */
+  public void forEachSession(BiConsumer<String, WebSocketSession> action) {
+    userSessionMap.forEach(
+        (uid, sessions) -> {
+          for (OutboundQueue outbound : sessions) {
+            action.accept(uid, outbound.session());
+          }
+        });
+  }
+
+  /** Largest outbound backlog across the user's sessions, or 0 if not connected here. */
+  public int outboundQueueDepth(String userId) {
+    int depth = 0;
+    for (OutboundQueue outbound : userSessionMap.getOrDefault(userId, NO_SESSIONS)) {
+      depth = Math.max(depth, outbound.depth());
+    }
+    return depth;
+  }
+
+  /** Outbound backlog of one session, or 0 if it is no longer registered. */
+  public int outboundQueueDepth(String userId, WebSocketSession session) {
+    OutboundQueue outbound = find(userId, session);
+    return outbound != null ? outbound.depth() : 0;
+  }
+
+  /** Number of sessions the user holds on this node. */
+  public int sessionCount(String userId) {
+    return userSessionMap.getOrDefault(userId, NO_SESSIONS).length;
+  }
+
+  private OutboundQueue find(String userId, WebSocketSession session) {
+    OutboundQueue[] sessions = userSessionMap.getOrDefault(userId, NO_SESSIONS);
+    int index = indexOf(sessions, session);
+    return index >= 0 ? sessions[index] : null;
+  }
+
+  private static int indexOf(OutboundQueue[] sessions, WebSocketSession session) {
+    for (int i = 0; i < sessions.length; i++) {
+      if (sessions[i].session() == session) return i;
+    }
+    return -1;
+  }
+
+  /** Oldest already-closed session if there is one (its close event may still be in flight). */
+  private static int evictionCandidate(OutboundQueue[] sessions) {
+    for (int i = 0; i < sessions.length; i++) {
+      if (!sessions[i].session().isOpen()) return i;
+    }
+    return 0;
+  }
+
+  private static OutboundQueue[] with(OutboundQueue[] sessions, OutboundQueue added) {
+    OutboundQueue[] copy = Arrays.copyOf(sessions, sessions.length + 1);
+    copy[sessions.length] = added;
+    return copy;
+  }
+
+  private static OutboundQueue[] without(OutboundQueue[] sessions, int index) {
+    OutboundQueue[] copy = new OutboundQueue[sessions.length - 1];
+    System.arraycopy(sessions, 0, copy, 0, index);
+    System.arraycopy(sessions, index + 1, copy, index, sessions.length - index - 1);
+    return copy;
+  }
+
+  private void sendPayload(OutboundQueue outbound, String payload) {
+    if (!outbound.session().isOpen()) return;
+    outbound.send(payload);
+  }
+
+  private void indexChannelMember(String channelId, String userId) {
+    userChannelMap.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(channelId);
+    boolean[] added = new boolean[1];
+    channelUserMap.compute(
+        channelId,
+        (cid, users) -> {
+          Set<String> channelUsers = users != null ? users : ConcurrentHashMap.newKeySet();
+          added[0] = channelUsers.add(userId);
+          return channelUsers;
+        });
+    if (added[0]) presenceListener.onPresenceChanged(channelId, userId, true);
+  }
+
+  private void unindexChannelMember(String channelId, String userId) {
+    boolean[] removed = new boolean[1];
+    // Drop empty channel entries so the index only tracks channels with local members
+    channelUserMap.computeIfPresent(
+        channelId,
+        (cid, users) -> {
+          removed[0] = users.remove(userId);
+          return users.isEmpty() ? null : users;
+        });
+    if (removed[0]) presenceListener.onPresenceChanged(channelId, userId, false);
+  }
 }
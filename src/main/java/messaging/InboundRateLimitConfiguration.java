@@ -0,0 +1,60 @@
+package messaging;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+/**
+ * Limits on how fast one user may send frames to a node, across all of their sessions. A user's
+ * allowance outlives their last session until it would have refilled, so reconnecting does not
+ * reset it. When enabled, the rate and burst must be positive; the node refuses to start
+ * otherwise.
+ */
+@ConfigurationProperties("messaging.inbound.rate-limit")
+public class InboundRateLimitConfiguration {
+
+  /** What to do with a frame sent over the limit. */
+  public enum ViolationPolicy {
+    /** Drop the frame; the sender gets a {@code rate_limited} error at most once per token. */
+    DROP,
+    /** Close the session that sent it. */
+    CLOSE
+  }
+
+  private boolean enabled = true;
+  private double messagesPerSecond = 20;
+  private int burst = 50;
+  private ViolationPolicy violationPolicy = ViolationPolicy.DROP;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Sustained frames per second one user may send. */
+  public double getMessagesPerSecond() {
+    return messagesPerSecond;
+  }
+
+  public void setMessagesPerSecond(double messagesPerSecond) {
+    this.messagesPerSecond = messagesPerSecond;
+  }
+
+  /** Frames a user may send back to back after a quiet period before the sustained rate applies. */
+  public int getBurst() {
+    return burst;
+  }
+
+  public void setBurst(int burst) {
+    this.burst = burst;
+  }
+
+  public ViolationPolicy getViolationPolicy() {
+    return violationPolicy;
+  }
+
+  public void setViolationPolicy(ViolationPolicy violationPolicy) {
+    this.violationPolicy = violationPolicy;
+  }
+}
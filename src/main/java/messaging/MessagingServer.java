@@ -1,11 +1,50 @@
 package messaging;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.http.HttpRequest;
 import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketPongMessage;
 import io.micronaut.websocket.WebSocketSession;
 import io.micronaut.websocket.annotation.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Named;
+import java.time.Instant;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import messaging.InboundRateLimitConfiguration.ViolationPolicy;
+import messaging.admission.AdmissionController;
+import messaging.compression.DeflateNegotiator;
+import messaging.drain.DrainController;
+import messaging.execution.ConnectionLanes;
+import messaging.execution.ExecutionFactory;
+import messaging.fanout.FanoutBus;
+import messaging.fanout.FanoutMessage;
+import messaging.history.HistoryReplayer;
+import messaging.history.MessageCursor;
+import messaging.history.RecentMessageBuffer;
+import messaging.membership.ChannelMembershipCache;
+import messaging.membership.ChannelMembershipSource;
+import messaging.ordering.ChannelSequencer;
+import messaging.persistence.MessageRecord;
+import messaging.persistence.MessageStore;
+import messaging.presence.LivenessMonitor;
+import messaging.protocol.InboundEnvelope;
+import messaging.protocol.InboundEnvelopeParser;
+import messaging.protocol.InvalidEnvelopeException;
+import messaging.protocol.JsonEnvelopeWriter;
+import messaging.receipts.ReadCursorTracker;
+import messaging.tracing.DeliveryTrace;
+import messaging.tracing.MessageLatencyTracker;
+import messaging.tracing.MessageLatencyTracker.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import util.HeaderUserIdExtractor;
@@ -14,14 +53,121 @@ import util.HeaderUserIdExtractor;
 public class MessagingServer {
 
   private static final String ATTR_USER_ID = "userId";
+  private static final String ATTR_RATE_LIMIT_NOTICE = "rateLimitNotice";
+  private static final String PERSIST_FAILED_REASON = "message_not_persisted";
+  private static final String UNSUPPORTED_TYPE_REASON = "unsupported_type";
+  private static final String NOT_A_MEMBER_REASON = "not_a_member";
+  private static final String MEMBERSHIP_UNAVAILABLE_REASON = "membership_unavailable";
+  private static final String INVALID_CURSOR_REASON = "invalid_cursor";
+  private static final String INVALID_ACK_REASON = "invalid_ack";
+  private static final String RATE_LIMITED_REASON = "rate_limited";
+
+  /** Larger frames are rejected by the websocket decoder before they are aggregated. */
+  static final int MAX_INBOUND_FRAME_BYTES = 16 * 1024;
+
   private final ConnectionRegistry userConnRegistry;
   private final HeaderUserIdExtractor headerUserIdExtractor;
+  // Absent when no datasource is configured (e.g. tests), in which case messages skip persistence
+  @Nullable private final MessageStore messageStore;
+  private final FanoutBus fanoutBus;
+  private final InboundEnvelopeParser envelopeParser;
+  private final ChannelMembershipCache membershipCache;
+  private final ChannelMembershipSource membershipSource;
+  private final Executor databaseExecutor;
+  private final HistoryReplayer historyReplayer;
+  private final RecentMessageBuffer recentMessages;
+  private final MessageLatencyTracker latencyTracker;
+  private final ConnectionLanes connectionLanes;
+  private final ChannelSequencer channelSequencer;
+  private final ReadCursorTracker readCursors;
+  private final DeflateNegotiator deflateNegotiator;
+  private final AdmissionController admission;
+  private final DrainController drain;
+  private final LivenessMonitor liveness;
+  private final ViolationPolicy rateLimitViolationPolicy;
+  private final long rateLimitNoticeIntervalNanos;
+  private final Counter inboundMessages;
+  private final Counter inboundRejected;
+  private final String nodeId;
+  private AutoCloseable fanoutSubscription;
   private static final Logger LOG = LoggerFactory.getLogger(MessagingServer.class);
 
   public MessagingServer(
-      ConnectionRegistry userConnRegistry, HeaderUserIdExtractor headerUserIdExtractor) {
+      ConnectionRegistry userConnRegistry,
+      HeaderUserIdExtractor headerUserIdExtractor,
+      @Nullable MessageStore messageStore,
+      FanoutBus fanoutBus,
+      InboundEnvelopeParser envelopeParser,
+      ChannelMembershipCache membershipCache,
+      ChannelMembershipSource membershipSource,
+      @Named(ExecutionFactory.DATABASE) Executor databaseExecutor,
+      HistoryReplayer historyReplayer,
+      RecentMessageBuffer recentMessages,
+      MessageLatencyTracker latencyTracker,
+      ConnectionLanes connectionLanes,
+      ChannelSequencer channelSequencer,
+      ReadCursorTracker readCursors,
+      DeflateNegotiator deflateNegotiator,
+      AdmissionController admission,
+      DrainController drain,
+      LivenessMonitor liveness,
+      InboundRateLimitConfiguration rateLimitConfig,
+      MeterRegistry meterRegistry,
+      @Value("${messaging.node-id:local}") String nodeId) {
     this.userConnRegistry = userConnRegistry;
     this.headerUserIdExtractor = headerUserIdExtractor;
+    this.messageStore = messageStore;
+    this.fanoutBus = fanoutBus;
+    this.envelopeParser = envelopeParser;
+    this.membershipCache = membershipCache;
+    this.membershipSource = membershipSource;
+    this.databaseExecutor = databaseExecutor;
+    this.historyReplayer = historyReplayer;
+    this.recentMessages = recentMessages;
+    this.latencyTracker = latencyTracker;
+    this.connectionLanes = connectionLanes;
+    this.channelSequencer = channelSequencer;
+    this.readCursors = readCursors;
+    this.deflateNegotiator = deflateNegotiator;
+    this.admission = admission;
+    this.drain = drain;
+    this.liveness = liveness;
+    this.rateLimitViolationPolicy = rateLimitConfig.getViolationPolicy();
+    this.rateLimitNoticeIntervalNanos =
+        rateLimitConfig.isEnabled()
+            ? (long) (TimeUnit.SECONDS.toNanos(1) / rateLimitConfig.getMessagesPerSecond())
+            : 0;
+    this.nodeId = nodeId;
+    this.inboundMessages =
+        Counter.builder("messaging.inbound.messages")
+            .description("Frames received from clients")
+            .register(meterRegistry);
+    this.inboundRejected =
+        Counter.builder("messaging.inbound.rejected")
+            .description("Frames rejected as malformed or oversized envelopes")
+            .register(meterRegistry);
+  }
+
+  @PostConstruct
+  void subscribeToFanout() {
+    // Every member set the cache loads is also applied to the channel index, so a membership
+    // change whose bus message never arrived is corrected within one cache ttl
+    membershipCache.setLoadListener(userConnRegistry::reconcileChannel);
+    // Stored messages reach this node from every node's relay; the sequencer restores each
+    // channel's seq order (catching up gaps from history) before anything is delivered
+    fanoutSubscription =
+        fanoutBus.subscribe(
+            nodeId,
+            channelSequencer.inOrder(
+                message -> {
+                  recordRecent(message);
+                  onFanoutMessage(message);
+                }));
+  }
+
+  @PreDestroy
+  void unsubscribeFromFanout() throws Exception {
+    if (fanoutSubscription != null) fanoutSubscription.close();
   }
 
   @OnOpen
@@ -36,15 +182,42 @@ public class MessagingServer {
       return;
     }
     String userId = userIdOpt.get();
-    session.put(ATTR_USER_ID, userId);
-    userConnRegistry.registerUserSession(userId, session);
-    String ackPayload =
-        "{\"type\":\"ack\",\"userId\":\""
-            + userId
-            + "\",\"sessionId\":\""
-            + session.getId()
-            + "\"}";
-    session.sendAsync(ackPayload);
+    // A draining node sends its users on to its ring neighbours, new ones included
+    if (drain.isDraining()) {
+      session.close(drain.reconnectReason());
+      return;
+    }
+    // During a reconnect storm, opens beyond the admission rate are turned away before they cost
+    // a registration or a membership load
+    Optional<CloseReason> refused = admission.tryAdmit();
+    if (refused.isPresent()) {
+      LOG.debug("Refusing WebSocket for userId {}: {}", userId, refused.get().getReason());
+      session.close(refused.get());
+      return;
+    }
+    // The open stays pending for admission until its channels are indexed; whichever way setup
+    // ends, including by an exception, its slot is released exactly once
+    boolean releasedOnIndexed = false;
+    try {
+      session.put(ATTR_USER_ID, userId);
+      // Large-channel fanout shares one compressed frame among sessions that negotiated alike
+      if (!userConnRegistry.registerUserSession(
+          userId, session, Set.of(), deflateNegotiator.negotiate(request))) {
+        return;
+      }
+      liveness.track(session);
+      indexUserChannels(userId).whenComplete((ignored, ex) -> admission.release());
+      releasedOnIndexed = true;
+    } finally {
+      if (!releasedOnIndexed) admission.release();
+    }
+    reply(
+        userId,
+        session,
+        JsonEnvelopeWriter.begin("ack")
+            .field("userId", userId)
+            .field("sessionId", session.getId())
+            .toJson());
     LOG.info("WebSocket opened for userId {}: {}", userId, session.getId());
   }
 
@@ -60,15 +233,59 @@ public class MessagingServer {
   }
 
   @OnMessage
+  public void onSessionPong(WebSocketPongMessage pong, WebSocketSession session) {
+    liveness.onPong(session);
+  }
+
+  @OnMessage(maxPayloadLength = MAX_INBOUND_FRAME_BYTES)
   public void onSessionMessage(String message, WebSocketSession session) {
-    // TODO: Write message to DB - separate outbox will handle publishing to Kafka for fanout
-    // Messages must be written to DB first - otherwise new clients may join in between fanout and
-    // DB write and miss messages
-    // For now, just echo back to other users registered on this server
-    // Avoid doing any broadcasting in this method in the steady state - delegate to Kafka fanout
-    // instead
+    // End-to-end latency of a channel message is measured from here
+    Instant receivedAt = Instant.now();
     String userId = session.get(ATTR_USER_ID, String.class, null);
-    userConnRegistry.broadcastPayloadWithExclusions(buildPayload(userId, message), Set.of(userId));
+    inboundMessages.increment();
+    // Checked before parsing so a flooding client costs as little as possible
+    if (!userConnRegistry.tryAcquireInbound(userId)) {
+      onRateLimited(userId, session);
+      return;
+    }
+    if (!InboundEnvelopeParser.isEnvelope(message)) {
+      // Legacy plain-text frames carry no channel, so they are still only echoed to other users
+      // registered on this server
+      userConnRegistry.broadcastPayloadWithExclusions(
+          buildPayload(userId, message), Set.of(userId));
+      return;
+    }
+    InboundEnvelope envelope;
+    try {
+      envelope = envelopeParser.parse(message);
+    } catch (InvalidEnvelopeException e) {
+      inboundRejected.increment();
+      LOG.debug("Rejecting frame from userId {}: {}", userId, e.reason());
+      reply(userId, session, errorPayload(e.reason(), null));
+      return;
+    }
+    // Handlers may block on membership loads, so they run on the connection's lane rather than
+    // the event loop; the lane keeps this connection's frames in arrival order
+    Runnable handler =
+        switch (envelope.type()) {
+          case InboundEnvelope.TYPE_MESSAGE ->
+              () -> onChannelMessage(userId, envelope, session, receivedAt);
+          case InboundEnvelope.TYPE_RESUME -> () -> onResume(userId, envelope, session);
+          case InboundEnvelope.TYPE_ACK -> () -> onAck(userId, envelope, session);
+          default -> null;
+        };
+    if (handler == null) {
+      reply(userId, session, errorPayload(UNSUPPORTED_TYPE_REASON, envelope.clientMsgId()));
+    } else if (!connectionLanes.submit(session, handler)) {
+      onLaneFull(userId, session);
+    }
+  }
+
+  /** Closes a session whose frames are arriving faster than its handlers can work through them. */
+  private void onLaneFull(String userId, WebSocketSession session) {
+    LOG.info("Closing session {} of userId {}: too many frames in flight", session.getId(), userId);
+    session.close(
+        new CloseReason(CloseReason.POLICY_VIOLATION.getCode(), "Too many frames in flight"));
   }
 
   @OnError
@@ -80,17 +297,245 @@ public class MessagingServer {
     }
   }
 
-  public void onFanoutMessage(String fromUserId, String channelId, String payload) {
-    // TODO: Add Kafka subscription
-    // TODO: Fetch relevant channel members from Redis, exclude sender, and broadcast payload to
-    // targets
+  /** Drops a frame sent over the user's inbound rate limit, or closes its session. */
+  private void onRateLimited(String userId, WebSocketSession session) {
+    if (rateLimitViolationPolicy == ViolationPolicy.CLOSE) {
+      LOG.info("Closing session {} of userId {} over its inbound rate", session.getId(), userId);
+      session.close(
+          new CloseReason(CloseReason.POLICY_VIOLATION.getCode(), "Inbound rate limit exceeded"));
+      return;
+    }
+    // A flooding client is told once per token it earns back, not once per frame dropped
+    long now = System.nanoTime();
+    Long notifiedAt = session.get(ATTR_RATE_LIMIT_NOTICE, Long.class, null);
+    if (notifiedAt != null && now - notifiedAt < rateLimitNoticeIntervalNanos) return;
+    session.put(ATTR_RATE_LIMIT_NOTICE, now);
+    reply(userId, session, errorPayload(RATE_LIMITED_REASON, null));
+  }
+
+  /**
+   * Queues a reply behind whatever else is on its way to the session, so it counts against the
+   * same backpressure; dropped once the session is closed or replaced.
+   */
+  private void reply(String userId, WebSocketSession session, String payload) {
+    userConnRegistry.sendToSession(userId, session, payload);
+  }
+
+  /**
+   * Handles a message addressed to a channel. The sender must be a member of the channel. The
+   * message and its outbox row are committed in one transaction before anything is fanned out; the
+   * outbox relay then publishes it on the {@link FanoutBus}. {@code receivedAt} becomes the
+   * stored message's sentAt, which later stages measure their latency from.
+   *
+   * <p>Runs on the connection's lane and may block on a membership load; the commit itself happens
+   * on the database executor. Since receive times are stamped on the event loop in frame order, a
+   * connection's messages are stored in the order it sent them.
+   */
+  public void onChannelMessage(
+      String userId, InboundEnvelope envelope, WebSocketSession session, Instant receivedAt) {
+    if (!checkMembership(userId, envelope, session)) return;
+    persistAndPublish(userId, envelope, session, receivedAt);
+  }
+
+  /**
+   * Replays what the client missed in a channel since its last-seen cursor, e.g. after a network
+   * drop or when its session was replaced. Only members may resume a channel. Runs on the
+   * connection's lane.
+   */
+  public void onResume(String userId, InboundEnvelope envelope, WebSocketSession session) {
+    UUID channelId;
+    MessageCursor after;
+    try {
+      if (envelope.cursor() == null) throw new IllegalArgumentException("Missing cursor");
+      channelId = UUID.fromString(envelope.channelId());
+      after = MessageCursor.parse(envelope.cursor());
+    } catch (IllegalArgumentException e) {
+      reply(userId, session, errorPayload(INVALID_CURSOR_REASON, envelope.clientMsgId()));
+      return;
+    }
+    if (!checkMembership(userId, envelope, session)) return;
+    historyReplayer.resume(userId, session, channelId, after);
+  }
+
+  /**
+   * Marks the channel read up to the envelope's seq for the user. Acks are aggregated in memory and
+   * flushed as read cursors in batches, so no ack waits on the database. Only members may ack a
+   * channel. Runs on the connection's lane.
+   */
+  public void onAck(String userId, InboundEnvelope envelope, WebSocketSession session) {
+    if (!checkMembership(userId, envelope, session)) return;
+    try {
+      readCursors.ack(userId, envelope.channelId(), envelope.seq());
+    } catch (IllegalArgumentException e) {
+      reply(userId, session, errorPayload(INVALID_ACK_REASON, envelope.clientMsgId()));
+    }
+  }
+
+  /**
+   * Waits for the sender's membership in the envelope's channel, replying with an error and
+   * returning false unless they are a member. Blocks on a cache miss, so only call it on a lane.
+   */
+  private boolean checkMembership(
+      String userId, InboundEnvelope envelope, WebSocketSession session) {
+    boolean member;
+    try {
+      member = membershipCache.isMember(envelope.channelId(), userId).join();
+    } catch (CompletionException e) {
+      LOG.error(
+          "Failed to check membership of {} in {}", userId, envelope.channelId(), e.getCause());
+      reply(userId, session, errorPayload(MEMBERSHIP_UNAVAILABLE_REASON, envelope.clientMsgId()));
+      return false;
+    }
+    if (!member) {
+      reply(userId, session, errorPayload(NOT_A_MEMBER_REASON, envelope.clientMsgId()));
+    }
+    return member;
+  }
+
+  private void persistAndPublish(
+      String userId, InboundEnvelope envelope, WebSocketSession session, Instant receivedAt) {
+    String channelId = envelope.channelId();
+    long receivedAtMicros = MessageLatencyTracker.epochMicros(receivedAt);
+    if (messageStore == null) {
+      String payload = buildPayload(userId, envelope.body());
+      fanoutBus.publish(
+          new FanoutMessage(
+              FanoutMessage.Kind.MESSAGE,
+              userId,
+              session.getId(),
+              channelId,
+              payload,
+              null,
+              0,
+              receivedAtMicros));
+      latencyTracker.record(Stage.PUBLISHED, receivedAtMicros, channelId, null);
+      return;
+    }
+    MessageRecord record;
+    try {
+      record =
+          MessageRecord.newMessage(
+              UUID.fromString(channelId),
+              UUID.fromString(userId),
+              envelope.body(),
+              receivedAt,
+              session.getId());
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Dropping message with non-UUID userId {} or channelId {}", userId, channelId);
+      reply(userId, session, errorPayload(PERSIST_FAILED_REASON, envelope.clientMsgId()));
+      return;
+    }
+    messageStore
+        .append(record)
+        .whenComplete(
+            (ignored, ex) -> {
+              if (ex == null) {
+                latencyTracker.record(
+                    Stage.PERSISTED, receivedAtMicros, channelId, record.messageId().toString());
+                return;
+              }
+              LOG.error("Failed to persist message from userId {} to {}", userId, channelId, ex);
+              reply(userId, session, errorPayload(PERSIST_FAILED_REASON, envelope.clientMsgId()));
+            });
+  }
+
+  /** Handles a message received from the fanout bus on this node. */
+  public void onFanoutMessage(FanoutMessage message) {
+    switch (message.kind()) {
+      case MESSAGE -> deliver(message);
+      case MEMBER_JOINED -> onMembershipChanged(message.channelId(), message.fromUserId(), true);
+      case MEMBER_LEFT -> onMembershipChanged(message.channelId(), message.fromUserId(), false);
+      case PRESENCE -> deliverPresence(message);
+    }
+  }
+
+  /** Delivers a channel message to the channel's members on this node. */
+  private void deliver(FanoutMessage message) {
+    String channelId = message.channelId();
+    long receivedAtMicros = message.receivedAtMicros();
+    latencyTracker.record(Stage.FANOUT, receivedAtMicros, channelId, message.messageId());
+    DeliveryTrace trace =
+        latencyTracker.startDelivery(receivedAtMicros, channelId, message.messageId());
+    // Recipients come from the channel index, filled at session open and updated by membership
+    // changes from the bus. Touching the cached member set reloads it once its ttl has lapsed,
+    // and each load reconciles the index, without waiting here on a miss
+    membershipCache.members(channelId);
+    userConnRegistry.broadcastToChannel(
+        channelId, message.payload(), message.originSessionId(), trace);
+  }
+
+  /**
+   * Delivers a presence diff to the channel's members on this node, the sender's sessions included.
+   * Recipients come from the same channel index as messages, kept current the same way.
+   */
+  private void deliverPresence(FanoutMessage message) {
+    membershipCache.members(message.channelId());
+    userConnRegistry.broadcastToChannel(message.channelId(), message.payload(), null);
+  }
+
+  /**
+   * Applies a membership change published on the bus: the cached member set is dropped and, if
+   * the user is connected here, the channel index is updated so fanout reaches (or stops
+   * reaching) them.
+   */
+  private void onMembershipChanged(String channelId, String userId, boolean joined) {
+    membershipCache.invalidate(channelId);
+    if (joined) {
+      userConnRegistry.joinChannel(userId, channelId);
+    } else {
+      userConnRegistry.leaveChannel(userId, channelId);
+    }
+  }
+
+  /** Keeps stored messages delivered to this node around for resume catch-up. */
+  private void recordRecent(FanoutMessage message) {
+    if (message.seq() <= 0) return;
+    recentMessages.record(message.channelId(), new MessageCursor(message.seq()), message.payload());
+  }
+
+  private CompletableFuture<Void> indexUserChannels(String userId) {
+    return CompletableFuture.supplyAsync(
+            () -> membershipSource.loadChannels(userId), databaseExecutor)
+        .thenAccept(channelIds -> channelIds.forEach(c -> userConnRegistry.joinChannel(userId, c)))
+        .exceptionally(
+            ex -> {
+              LOG.error("Failed to load channels for userId {}", userId, ex);
+              return null;
+            });
+  }
+
+  static String errorPayload(String reason, String clientMsgId) {
+    JsonEnvelopeWriter writer = JsonEnvelopeWriter.begin("error").field("reason", reason);
+    if (clientMsgId != null) writer.field("clientMsgId", clientMsgId);
+    return writer.toJson();
+  }
+
+  /**
+   * Payload for a stored message, carrying the ids and cursor clients dedupe and resume with, and
+   * its sequence number in the channel, which clients can check for gaps.
+   */
+  public static String buildPayload(MessageRecord record) {
+    return buildPayload(record, new StringBuilder());
+  }
+
+  /** {@link #buildPayload(MessageRecord)} in a buffer the caller reuses across a batch. */
+  public static String buildPayload(MessageRecord record, StringBuilder buffer) {
+    JsonEnvelopeWriter writer =
+        JsonEnvelopeWriter.begin("message", buffer)
+            .field("from", record.senderUserId().toString())
+            .field("channelId", record.channelId().toString())
+            .field("messageId", record.messageId().toString());
+    // Rows written before sequencing have neither
+    if (record.seq() > 0) {
+      writer.field("cursor", MessageCursor.of(record).encode()).field("seq", record.seq());
+    }
+    return writer.field("text", record.body()).toJson();
   }
 
-  private static String buildPayload(String userId, String message) {
-    return "{\"type\":\"message\",\"from\":\""
-        + userId
-        + "\",\"text\":\""
-        + message.replace("\\", "\\\\").replace("\"", "\\\"")
-        + "\"}";
+  public static String buildPayload(String userId, String message) {
+    return JsonEnvelopeWriter.begin("message")
+        .field("from", userId)
+        .field("text", message)
+        .toJson();
   }
 }
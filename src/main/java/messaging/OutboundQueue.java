@@ -0,0 +1,328 @@
+package messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import messaging.OutboundQueueConfiguration.OverflowPolicy;
+import messaging.compression.DeflateMode;
+import messaging.ratelimit.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded outbound queue for one session. At most {@code max-in-flight} writes are outstanding in
+ * Netty at a time; completions drain the queue in order. A peer that stops reading stops
+ * completing writes, so its backlog stays here, bounded by {@code high-water-mark}, instead of
+ * growing without limit in Netty's outbound buffer. Past the mark the configured {@link
+ * OverflowPolicy} applies.
+ *
+ * <p>Messages may be Strings or reference-counted frames; frames that are dropped are released. A
+ * message may carry a callback that runs once its fate is known: written, failed or dropped.
+ *
+ * <p>With {@code coalesce-writes} on, String messages that queued behind an in-flight write are
+ * merged into one JSON array frame when the queue drains, so a burst to one session costs one
+ * write and flush rather than one per message. An idle session still sends immediately.
+ *
+ * <p>Each queue also carries its user's inbound rate limit, one bucket shared by all of the user's
+ * queues. When the last of them goes, {@link ConnectionRegistry} keeps the bucket until it would
+ * have refilled, so a reconnect picks up the same allowance.
+ */
+final class OutboundQueue {
+
+  /** Application close code sent to sessions evicted as slow consumers. */
+  static final int SLOW_CONSUMER_CLOSE_CODE = 4008;
+
+  private static final Object OVERFLOW_NOTICE = new Object();
+  private static final Logger LOG = LoggerFactory.getLogger(OutboundQueue.class);
+
+  /** A queued message with its settle callback; untracked messages are queued bare. */
+  private record Tracked(Object message, Runnable onSettled) {}
+
+  /** Meters shared by every queue. */
+  record Metrics(
+      DistributionSummary depth,
+      Counter dropped,
+      Counter evicted,
+      DistributionSummary coalescedBatch,
+      Timer sendLatency,
+      Counter sendFailures) {
+
+    static Metrics register(MeterRegistry meterRegistry) {
+      return new Metrics(
+          DistributionSummary.builder("messaging.outbound.queue.depth")
+              .description("Per-session outbound queue depth, sampled whenever a send is queued")
+              .register(meterRegistry),
+          Counter.builder("messaging.outbound.dropped")
+              .description("Outbound messages dropped or coalesced on queue overflow")
+              .register(meterRegistry),
+          Counter.builder("messaging.outbound.evicted")
+              .description("Sessions closed as slow consumers")
+              .register(meterRegistry),
+          DistributionSummary.builder("messaging.outbound.coalesced.batch")
+              .description("Messages merged into one array frame by write coalescing")
+              .register(meterRegistry),
+          Timer.builder("messaging.outbound.send.latency")
+              .description("Time from handing a message to sendAsync until the write completes")
+              .publishPercentileHistogram()
+              .register(meterRegistry),
+          Counter.builder("messaging.outbound.send.failures")
+              .description("Writes that failed or were refused by a closing session")
+              .register(meterRegistry));
+    }
+  }
+
+  private final String userId;
+  private final WebSocketSession session;
+  private final OutboundQueueConfiguration config;
+  private final Metrics metrics;
+  private final DeflateMode deflateMode;
+  @Nullable private final TokenBucket inboundLimit;
+  private final ArrayDeque<Object> pending = new ArrayDeque<>();
+  private int inFlight;
+  private int coalesced;
+  private boolean closed;
+  // Set once the session is to close after its backlog is written; nothing new is queued after
+  @Nullable private CloseReason closeWhenFlushed;
+
+  OutboundQueue(
+      String userId,
+      WebSocketSession session,
+      OutboundQueueConfiguration config,
+      Metrics metrics,
+      DeflateMode deflateMode,
+      @Nullable TokenBucket inboundLimit) {
+    this.userId = userId;
+    this.session = session;
+    this.config = config;
+    this.metrics = metrics;
+    this.deflateMode = deflateMode;
+    this.inboundLimit = inboundLimit;
+  }
+
+  WebSocketSession session() {
+    return session;
+  }
+
+  /** What the session negotiated for permessage-deflate. */
+  DeflateMode deflateMode() {
+    return deflateMode;
+  }
+
+  /** The user's inbound rate limit, or null when inbound rates are not limited. */
+  @Nullable
+  TokenBucket inboundLimit() {
+    return inboundLimit;
+  }
+
+  synchronized int depth() {
+    return pending.size();
+  }
+
+  /** Sends now if the in-flight window allows, otherwise queues; takes ownership of frames. */
+  void send(Object message) {
+    send(message, null);
+  }
+
+  /** As {@link #send(Object)}; {@code onSettled} runs once the message is written or dropped. */
+  void send(Object message, Runnable onSettled) {
+    Object entry = onSettled != null ? new Tracked(message, onSettled) : message;
+    boolean evict;
+    synchronized (this) {
+      if (closed || closeWhenFlushed != null) {
+        drop(entry);
+        return;
+      }
+      if (inFlight < config.getMaxInFlight() && pending.isEmpty()) {
+        inFlight++;
+        evict = false;
+      } else if (pending.size() < config.getHighWaterMark()) {
+        pending.addLast(entry);
+        metrics.depth().record(pending.size());
+        return;
+      } else {
+        evict = onOverflow(entry);
+        if (!evict) return;
+      }
+    }
+    if (evict) {
+      LOG.warn("Closing slow consumer session for userId {}: {}", userId, session.getId());
+      metrics.evicted().increment();
+      session.close(
+          new CloseReason(SLOW_CONSUMER_CLOSE_CODE, "Slow consumer: outbound queue overflow"));
+      return;
+    }
+    write(entry);
+  }
+
+  /** Releases anything still queued; called once the session leaves the registry. */
+  void discard() {
+    synchronized (this) {
+      closed = true;
+      pending.forEach(OutboundQueue::drop);
+      pending.clear();
+    }
+  }
+
+  /**
+   * Closes the session with {@code reason} once every message already queued or in flight has
+   * been written. Messages sent in the meantime are dropped, so the backlog only shrinks.
+   */
+  void closeAfterFlush(CloseReason reason) {
+    synchronized (this) {
+      if (closed || closeWhenFlushed != null) return;
+      closeWhenFlushed = reason;
+      // Anything queued waits behind an in-flight write, whose completion closes the session
+      if (inFlight > 0) return;
+    }
+    session.close(reason);
+  }
+
+  /** Applies the overflow policy with the lock held; returns true if the session must close. */
+  private boolean onOverflow(Object entry) {
+    OverflowPolicy policy = config.getOverflowPolicy();
+    return switch (policy) {
+      case DROP_OLDEST -> {
+        drop(pending.pollFirst());
+        pending.addLast(entry);
+        metrics.dropped().increment();
+        yield false;
+      }
+      case COALESCE -> {
+        int discarded = 1;
+        for (Object queued : pending) {
+          if (queued != OVERFLOW_NOTICE) discarded++;
+          drop(queued);
+        }
+        drop(entry);
+        pending.clear();
+        pending.addLast(OVERFLOW_NOTICE);
+        coalesced += discarded;
+        metrics.dropped().increment(discarded);
+        yield false;
+      }
+      case CLOSE -> {
+        closed = true;
+        pending.forEach(OutboundQueue::drop);
+        pending.clear();
+        drop(entry);
+        yield true;
+      }
+    };
+  }
+
+  /**
+   * Writes {@code entry} and keeps writing from the queue for as long as writes complete before
+   * control returns here, as they do when Netty flushes synchronously. Draining in this loop rather
+   * than from each completion callback keeps the stack flat however long the backlog is; once a
+   * write is still pending, its completion callback carries on instead.
+   */
+  private void write(Object entry) {
+    while (entry != null) {
+      Runnable onSettled = entry instanceof Tracked tracked ? tracked.onSettled() : null;
+      Object message = entry instanceof Tracked tracked ? tracked.message() : entry;
+      Object payload = message == OVERFLOW_NOTICE ? takeOverflowNotice() : message;
+      CompletableFuture<Object> future;
+      long startNanos = System.nanoTime();
+      try {
+        future = session.sendAsync(payload);
+      } catch (RuntimeException e) {
+        // The session closed before Netty took ownership of the message
+        ReferenceCountUtil.release(payload);
+        metrics.sendFailures().increment();
+        LOG.error("Failed to send payload to userId {}", userId, e);
+        if (onSettled != null) onSettled.run();
+        entry = onWriteComplete();
+        continue;
+      }
+      // Whichever of this loop and the callback gets here second continues the drain
+      AtomicBoolean handedOff = new AtomicBoolean();
+      future.whenComplete(
+          (ignored, ex) -> {
+            if (ex != null) {
+              metrics.sendFailures().increment();
+              LOG.error("Failed to send payload to userId {}", userId, ex);
+            } else {
+              metrics.sendLatency().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+            if (onSettled != null) onSettled.run();
+            if (!handedOff.compareAndSet(false, true)) write(onWriteComplete());
+          });
+      if (handedOff.compareAndSet(false, true)) return;
+      entry = onWriteComplete();
+    }
+  }
+
+  /**
+   * Accounts for a finished write and returns the next entry to write in its slot, or null if the
+   * slot is freed (closing the session if it was waiting for its backlog to flush).
+   */
+  @Nullable
+  private Object onWriteComplete() {
+    Object next;
+    CloseReason flushed = null;
+    synchronized (this) {
+      next = closed ? null : takeNext();
+      if (next == null) {
+        inFlight--;
+        if (inFlight > 0 || closed || closeWhenFlushed == null) return null;
+        flushed = closeWhenFlushed;
+      }
+    }
+    if (flushed != null) session.close(flushed);
+    return next;
+  }
+
+  /** Next message to write, merging queued JSON payloads when coalescing; lock must be held. */
+  private Object takeNext() {
+    Object next = pending.pollFirst();
+    if (!config.isCoalesceWrites()
+        || !(messageOf(next) instanceof String first)
+        || !(messageOf(pending.peekFirst()) instanceof String)) {
+      return next;
+    }
+    StringBuilder batch = new StringBuilder(first.length() * 4).append('[').append(first);
+    List<Runnable> settled = new ArrayList<>(0);
+    if (next instanceof Tracked tracked) settled.add(tracked.onSettled());
+    int merged = 1;
+    while (merged < config.getMaxCoalescedMessages()
+        && messageOf(pending.peekFirst()) instanceof String queued) {
+      if (pending.pollFirst() instanceof Tracked tracked) settled.add(tracked.onSettled());
+      batch.append(',').append(queued);
+      merged++;
+    }
+    metrics.coalescedBatch().record(merged);
+    String frame = batch.append(']').toString();
+    return settled.isEmpty() ? frame : new Tracked(frame, () -> settled.forEach(Runnable::run));
+  }
+
+  private static Object messageOf(Object entry) {
+    return entry instanceof Tracked tracked ? tracked.message() : entry;
+  }
+
+  /** Releases a queued entry that will never be written and settles it. */
+  private static void drop(Object entry) {
+    if (entry instanceof Tracked tracked) {
+      ReferenceCountUtil.release(tracked.message());
+      tracked.onSettled().run();
+    } else {
+      ReferenceCountUtil.release(entry);
+    }
+  }
+
+  private synchronized String takeOverflowNotice() {
+    String notice = "{\"type\":\"overflow\",\"dropped\":" + coalesced + "}";
+    coalesced = 0;
+    return notice;
+  }
+}
@@ -0,0 +1,72 @@
+package messaging;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+/** Limits for each session's {@link OutboundQueue}. */
+@ConfigurationProperties("messaging.outbound")
+public class OutboundQueueConfiguration {
+
+  /** What to do when a session's queue is at its high-water mark and another message arrives. */
+  public enum OverflowPolicy {
+    /** Drop the oldest queued message to make room. */
+    DROP_OLDEST,
+    /** Replace the whole backlog with one overflow notice so the client can catch up. */
+    COALESCE,
+    /** Close the session as a slow consumer. */
+    CLOSE
+  }
+
+  private int maxInFlight = 16;
+  private int highWaterMark = 1024;
+  private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+  private boolean coalesceWrites = false;
+  private int maxCoalescedMessages = 64;
+
+  /** Writes handed to Netty but not yet flushed to the socket before further sends are queued. */
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  /** Queued messages per session beyond which the overflow policy applies. */
+  public int getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  public void setHighWaterMark(int highWaterMark) {
+    this.highWaterMark = highWaterMark;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  /**
+   * When enabled, messages that queued up behind an in-flight write are sent as a single JSON array
+   * frame ({@code [msg,msg,...]}) instead of one frame, write and flush each. Pair with a small
+   * {@code max-in-flight} (1 or 2) so bursts actually queue. Clients must accept array frames.
+   */
+  public boolean isCoalesceWrites() {
+    return coalesceWrites;
+  }
+
+  public void setCoalesceWrites(boolean coalesceWrites) {
+    this.coalesceWrites = coalesceWrites;
+  }
+
+  /** Most messages merged into one array frame. */
+  public int getMaxCoalescedMessages() {
+    return maxCoalescedMessages;
+  }
+
+  public void setMaxCoalescedMessages(int maxCoalescedMessages) {
+    this.maxCoalescedMessages = maxCoalescedMessages;
+  }
+}
@@ -0,0 +1,36 @@
+package messaging;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+/** Limits on how many concurrent sessions (devices) one user may hold on a node. */
+@ConfigurationProperties("messaging.sessions")
+public class UserSessionConfiguration {
+
+  /** What to do when a user at the session limit opens another one. */
+  public enum EvictionPolicy {
+    /** Close the user's oldest session (a closed one first, if any) to admit the new one. */
+    EVICT_OLDEST,
+    /** Keep the existing sessions and close the new one. */
+    REJECT_NEW
+  }
+
+  private int maxPerUser = 5;
+  private EvictionPolicy evictionPolicy = EvictionPolicy.EVICT_OLDEST;
+
+  /** Sessions one user may hold at once; 1 restores one-session-per-user replacement. */
+  public int getMaxPerUser() {
+    return maxPerUser;
+  }
+
+  public void setMaxPerUser(int maxPerUser) {
+    this.maxPerUser = maxPerUser;
+  }
+
+  public EvictionPolicy getEvictionPolicy() {
+    return evictionPolicy;
+  }
+
+  public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+    this.evictionPolicy = evictionPolicy;
+  }
+}
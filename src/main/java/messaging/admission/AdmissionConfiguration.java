@@ -0,0 +1,73 @@
+package messaging.admission;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+
+/** Limits on how fast this node accepts new websocket sessions. */
+@ConfigurationProperties("messaging.admission")
+public class AdmissionConfiguration {
+
+  private boolean enabled = true;
+  private double opensPerSecond = 500;
+  private int burst = 1_000;
+  private int maxPendingOpens = 512;
+  private Duration retryAfterMin = Duration.ofSeconds(1);
+  private Duration retryAfterMax = Duration.ofSeconds(30);
+
+  /** Whether opens are limited at all; when off, every authenticated session is accepted. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Sustained rate of session opens admitted. */
+  public double getOpensPerSecond() {
+    return opensPerSecond;
+  }
+
+  public void setOpensPerSecond(double opensPerSecond) {
+    this.opensPerSecond = opensPerSecond;
+  }
+
+  /** Opens admitted back to back after a quiet period before the sustained rate applies. */
+  public int getBurst() {
+    return burst;
+  }
+
+  public void setBurst(int burst) {
+    this.burst = burst;
+  }
+
+  /**
+   * Admitted opens still being set up (registered but their channels not yet indexed) beyond
+   * which new ones are turned away, however many tokens are left.
+   */
+  public int getMaxPendingOpens() {
+    return maxPendingOpens;
+  }
+
+  public void setMaxPendingOpens(int maxPendingOpens) {
+    this.maxPendingOpens = maxPendingOpens;
+  }
+
+  /** Shortest retry-after hint given to a rejected client. */
+  public Duration getRetryAfterMin() {
+    return retryAfterMin;
+  }
+
+  public void setRetryAfterMin(Duration retryAfterMin) {
+    this.retryAfterMin = retryAfterMin;
+  }
+
+  /** Longest retry-after hint, before jitter, however far behind the rejected clients are. */
+  public Duration getRetryAfterMax() {
+    return retryAfterMax;
+  }
+
+  public void setRetryAfterMax(Duration retryAfterMax) {
+    this.retryAfterMax = retryAfterMax;
+  }
+}
@@ -0,0 +1,126 @@
+package messaging.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.websocket.CloseReason;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import messaging.ratelimit.TokenBucket;
+
+/**
+ * Admission control for session opens, so a reconnect storm after a deploy or a ring-hash
+ * reshuffle is spread out instead of landing on one node at once. An open needs a token from a
+ * {@link TokenBucket} and a free slot among {@code max-pending-opens} opens still being set up.
+ * A refused client is closed with {@code 1013 Try Again Later} and a retry-after hint. Hints are
+ * handed out in consecutive slots at the admission rate, so the refused clients come back about
+ * as fast as they can be admitted, plus up to {@code retry-after-min} of random jitter so clients
+ * given the same slot do not reconnect in lockstep.
+ */
+@Singleton
+public class AdmissionController {
+
+  /** Close reason text before the hint, e.g. {@code over_capacity;retry_after_ms=1834}. */
+  public static final String OVER_CAPACITY_REASON = "over_capacity;retry_after_ms=";
+
+  private final boolean enabled;
+  private final int maxPendingOpens;
+  private final long retryAfterMinNanos;
+  private final long retryAfterMaxNanos;
+  private final LongSupplier nanoClock;
+  private final TokenBucket opens;
+  private final AtomicInteger pending = new AtomicInteger();
+  // Latest retry time handed out, kept no further ahead than retry-after-max
+  private final AtomicLong lastRetrySlot;
+  private final Counter admitted;
+  private final Counter rejectedByRate;
+  private final Counter rejectedByPending;
+
+  @Inject
+  public AdmissionController(AdmissionConfiguration config, MeterRegistry meterRegistry) {
+    this(config, meterRegistry, System::nanoTime);
+  }
+
+  AdmissionController(
+      AdmissionConfiguration config, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+    this.enabled = config.isEnabled();
+    this.maxPendingOpens = config.getMaxPendingOpens();
+    this.retryAfterMinNanos = config.getRetryAfterMin().toNanos();
+    this.retryAfterMaxNanos = Math.max(retryAfterMinNanos, config.getRetryAfterMax().toNanos());
+    this.nanoClock = nanoClock;
+    long now = nanoClock.getAsLong();
+    this.opens = new TokenBucket(config.getOpensPerSecond(), config.getBurst(), now);
+    this.lastRetrySlot = new AtomicLong(now);
+    this.admitted =
+        Counter.builder("messaging.admission.admitted")
+            .description("Session opens admitted")
+            .register(meterRegistry);
+    this.rejectedByRate =
+        Counter.builder("messaging.admission.rejected")
+            .description("Session opens refused with a retry-after hint")
+            .tag("cause", "rate")
+            .register(meterRegistry);
+    this.rejectedByPending =
+        Counter.builder("messaging.admission.rejected")
+            .description("Session opens refused with a retry-after hint")
+            .tag("cause", "pending")
+            .register(meterRegistry);
+    Gauge.builder("messaging.admission.pending", pending, AtomicInteger::get)
+        .description("Admitted session opens still being set up")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Admits a session open, or returns the reason to close it with. Every admitted open must be
+   * followed by one {@link #release()} once its setup has finished, successfully or not.
+   */
+  public Optional<CloseReason> tryAdmit() {
+    if (!enabled) {
+      pending.incrementAndGet();
+      admitted.increment();
+      return Optional.empty();
+    }
+    long now = nanoClock.getAsLong();
+    // Checked first so opens refused for being pending do not also use up tokens
+    if (pending.incrementAndGet() > maxPendingOpens) {
+      pending.decrementAndGet();
+      rejectedByPending.increment();
+      return Optional.of(overCapacity(now, 0));
+    }
+    long wait = opens.tryAcquire(now);
+    if (wait > 0) {
+      pending.decrementAndGet();
+      rejectedByRate.increment();
+      return Optional.of(overCapacity(now, wait));
+    }
+    admitted.increment();
+    return Optional.empty();
+  }
+
+  /** Marks an admitted open as set up, freeing its pending slot. */
+  public void release() {
+    pending.decrementAndGet();
+  }
+
+  /** Admitted opens not yet released. */
+  public int pending() {
+    return pending.get();
+  }
+
+  private CloseReason overCapacity(long now, long minWaitNanos) {
+    long interval = opens.intervalNanos();
+    long max = retryAfterMaxNanos;
+    long slot =
+        lastRetrySlot.accumulateAndGet(
+            now, (last, n) -> Math.min((last - n > 0 ? last : n) + interval, n + max));
+    long hint = Math.min(Math.max(Math.max(slot - now, minWaitNanos), retryAfterMinNanos), max);
+    hint += ThreadLocalRandom.current().nextLong(retryAfterMinNanos + 1);
+    return new CloseReason(
+        CloseReason.TRY_AGAIN_LATER.getCode(), OVER_CAPACITY_REASON + hint / 1_000_000);
+  }
+}
@@ -0,0 +1,55 @@
+package messaging.compression;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+/** permessage-deflate settings for the {@code /chat} endpoint. */
+@ConfigurationProperties("messaging.compression")
+public class CompressionConfiguration {
+
+  private boolean enabled = true;
+  private int level = 6;
+  private int threshold = 256;
+  private boolean sharedFrames = true;
+
+  /** Whether permessage-deflate is offered at all; when off, every frame goes out uncompressed. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** zlib level, 1 (fastest) to 9 (smallest). */
+  public int getLevel() {
+    return level;
+  }
+
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  /**
+   * Frames with fewer payload bytes than this are sent uncompressed: below a few hundred bytes the
+   * deflate block overhead eats most of the saving and the CPU is wasted.
+   */
+  public int getThreshold() {
+    return threshold;
+  }
+
+  public void setThreshold(int threshold) {
+    this.threshold = threshold;
+  }
+
+  /**
+   * Whether large-channel broadcasts are compressed once and the compressed frame shared by every
+   * recipient whose negotiated parameters allow it (see {@link DeflateMode#SHARED}).
+   */
+  public boolean isSharedFrames() {
+    return sharedFrames;
+  }
+
+  public void setSharedFrames(boolean sharedFrames) {
+    this.sharedFrames = sharedFrames;
+  }
+}
@@ -0,0 +1,78 @@
+package messaging.compression;
+
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.netty.channel.ChannelPipelineCustomizer;
+import io.micronaut.http.server.netty.NettyServerCustomizer;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import jakarta.inject.Singleton;
+import java.util.Map;
+
+/**
+ * Swaps Micronaut's default websocket compression handler, which compresses every frame at the
+ * default level, for the one configured by {@link DeflateNegotiator}, or removes it when
+ * compression is disabled. Runs once per connection, after the HTTP pipeline is built and before
+ * any upgrade request is read.
+ */
+@Singleton
+public class CompressionPipelineCustomizer
+    implements BeanCreatedEventListener<NettyServerCustomizer.Registry> {
+
+  private static final String HANDLER_NAME = "messaging-websocket-deflate";
+
+  private final DeflateNegotiator negotiator;
+
+  public CompressionPipelineCustomizer(DeflateNegotiator negotiator) {
+    this.negotiator = negotiator;
+  }
+
+  @Override
+  public NettyServerCustomizer.Registry onCreated(
+      BeanCreatedEvent<NettyServerCustomizer.Registry> event) {
+    NettyServerCustomizer.Registry registry = event.getBean();
+    registry.register(new Customizer(null));
+    return registry;
+  }
+
+  private final class Customizer implements NettyServerCustomizer {
+
+    @Nullable private final Channel channel;
+
+    Customizer(@Nullable Channel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public NettyServerCustomizer specializeForChannel(Channel channel, ChannelRole role) {
+      return new Customizer(channel);
+    }
+
+    @Override
+    public void onStreamPipelineBuilt() {
+      if (channel == null) return;
+      ChannelPipeline pipeline = channel.pipeline();
+      for (Map.Entry<String, ChannelHandler> entry : pipeline) {
+        if (!(entry.getValue() instanceof WebSocketServerExtensionHandler)) continue;
+        if (negotiator.isEnabled()) {
+          pipeline.replace(entry.getKey(), HANDLER_NAME, negotiator.newExtensionHandler());
+        } else {
+          pipeline.remove(entry.getKey());
+        }
+        return;
+      }
+      // No default handler to take the place of (e.g. a connection that cannot upgrade)
+      if (!negotiator.isEnabled()
+          || pipeline.get(ChannelPipelineCustomizer.HANDLER_MICRONAUT_WEBSOCKET_UPGRADE) == null) {
+        return;
+      }
+      pipeline.addBefore(
+          ChannelPipelineCustomizer.HANDLER_MICRONAUT_WEBSOCKET_UPGRADE,
+          HANDLER_NAME,
+          negotiator.newExtensionHandler());
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package messaging.compression;
+
+/** What a session negotiated for permessage-deflate, as far as fanout is concerned. */
+public enum DeflateMode {
+  /** Not negotiated; frames go out as they are. */
+  OFF,
+  /**
+   * Negotiated with context takeover or a reduced window: Netty compresses each frame with the
+   * session's own deflater, whose history later frames refer back to.
+   */
+  SESSION,
+  /**
+   * Negotiated with {@code server_no_context_takeover} and the full window at the configured
+   * level: every message is compressed independently, so one compressed frame is valid for every
+   * session in this mode and can be shared between them.
+   */
+  SHARED
+}
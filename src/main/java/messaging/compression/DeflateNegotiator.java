@@ -0,0 +1,121 @@
+package messaging.compression;
+
+import io.micronaut.http.HttpRequest;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server side of permessage-deflate (RFC 7692) for the chat endpoint. Supplies the Netty extension
+ * handler that negotiates it during the websocket handshake, with frames under {@code threshold}
+ * bytes left uncompressed, and works out from a handshake request what that negotiation settled
+ * on, so fanout knows which sessions can share a pre-compressed frame.
+ */
+@Singleton
+public class DeflateNegotiator {
+
+  static final String SERVER_NO_CONTEXT = "server_no_context_takeover";
+  static final String SERVER_MAX_WINDOW = "server_max_window_bits";
+  private static final int MAX_WINDOW_BITS = 15;
+
+  private final CompressionConfiguration config;
+  private final PerMessageDeflateServerExtensionHandshaker handshaker;
+
+  public DeflateNegotiator(CompressionConfiguration config) {
+    this.config = config;
+    int threshold = config.getThreshold();
+    // Only whole small messages skip compression; a continuation must follow its first fragment
+    WebSocketExtensionFilter belowThreshold =
+        frame ->
+            !(frame instanceof ContinuationWebSocketFrame)
+                && frame.content().readableBytes() < threshold;
+    this.handshaker =
+        new PerMessageDeflateServerExtensionHandshaker(
+            config.getLevel(),
+            ZlibCodecFactory.isSupportingWindowSizeAndMemLevel(),
+            MAX_WINDOW_BITS,
+            true,
+            false,
+            new WebSocketExtensionFilterProvider() {
+              @Override
+              public WebSocketExtensionFilter encoderFilter() {
+                return belowThreshold;
+              }
+
+              @Override
+              public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+              }
+            });
+  }
+
+  public boolean isEnabled() {
+    return config.isEnabled();
+  }
+
+  /** A new handshake handler for one connection; Netty extension handlers are not sharable. */
+  public WebSocketServerExtensionHandler newExtensionHandler() {
+    return new WebSocketServerExtensionHandler(handshaker);
+  }
+
+  /**
+   * What the handshake for {@code request} negotiated. Runs the client's offers through the same
+   * handshaker the extension handler uses, in the same order, so the answer matches what the
+   * client was told.
+   */
+  public DeflateMode negotiate(HttpRequest<?> request) {
+    if (!config.isEnabled()) return DeflateMode.OFF;
+    for (String header : request.getHeaders().getAll(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS)) {
+      for (WebSocketExtensionData offer : parseOffers(header)) {
+        WebSocketServerExtension accepted = handshaker.handshakeExtension(offer);
+        if (accepted == null) continue;
+        Map<String, String> agreed = accepted.newReponseData().parameters();
+        // The window is only echoed back when it is below the maximum
+        boolean shareable =
+            config.isSharedFrames()
+                && agreed.containsKey(SERVER_NO_CONTEXT)
+                && !agreed.containsKey(SERVER_MAX_WINDOW);
+        return shareable ? DeflateMode.SHARED : DeflateMode.SESSION;
+      }
+    }
+    return DeflateMode.OFF;
+  }
+
+  /** Splits a {@code Sec-WebSocket-Extensions} value into its offers and their parameters. */
+  static List<WebSocketExtensionData> parseOffers(String header) {
+    List<WebSocketExtensionData> offers = new ArrayList<>();
+    for (String offer : header.split(",")) {
+      String[] parts = offer.split(";");
+      String name = parts[0].trim();
+      if (name.isEmpty()) continue;
+      Map<String, String> parameters = new LinkedHashMap<>();
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.isEmpty()) continue;
+        int eq = parameter.indexOf('=');
+        if (eq < 0) {
+          parameters.put(parameter, null);
+        } else {
+          String value = parameter.substring(eq + 1).trim();
+          if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+          }
+          parameters.put(parameter.substring(0, eq).trim(), value);
+        }
+      }
+      offers.add(new WebSocketExtensionData(name, parameters));
+    }
+    return offers;
+  }
+}
@@ -0,0 +1,102 @@
+package messaging.compression;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a text frame once for every {@link DeflateMode#SHARED} recipient of a broadcast. The
+ * output is a complete permessage-deflate message: a fresh raw deflate stream flushed with
+ * SYNC_FLUSH, its trailing {@code 00 00 ff ff} removed, sent with RSV1 set. Netty's deflate
+ * encoder passes frames that already have RSV1 set through untouched, so each recipient writes the
+ * same bytes without compressing them again.
+ *
+ * <p>Deflaters are pooled rather than thread-local, since fanout may run on virtual threads and
+ * each deflater holds a few hundred KiB of native memory.
+ */
+@Singleton
+public class SharedFrameCompressor {
+
+  private static final int SYNC_FLUSH_TAIL = 4;
+
+  private final CompressionConfiguration config;
+  private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+  private final Counter inputBytes;
+  private final Counter outputBytes;
+  private final Timer compressTimer;
+
+  public SharedFrameCompressor(CompressionConfiguration config, MeterRegistry meterRegistry) {
+    this.config = config;
+    this.inputBytes =
+        Counter.builder("messaging.compression.shared.input")
+            .description("Payload bytes compressed once into shared frames")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    this.outputBytes =
+        Counter.builder("messaging.compression.shared.output")
+            .description("Compressed bytes of shared frames, counted once however many recipients")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    this.compressTimer =
+        Timer.builder("messaging.compression.shared.latency")
+            .description("CPU time to compress one shared frame")
+            .register(meterRegistry);
+  }
+
+  /** True if a frame of this size should be compressed for shared recipients. */
+  public boolean accepts(TextWebSocketFrame frame) {
+    return config.isEnabled()
+        && config.isSharedFrames()
+        && frame.content().readableBytes() >= config.getThreshold();
+  }
+
+  /** A new compressed frame with the same payload; the caller releases both. */
+  public TextWebSocketFrame compress(TextWebSocketFrame frame) {
+    long startNanos = System.nanoTime();
+    ByteBuf input = frame.content();
+    Deflater deflater = deflaters.poll();
+    if (deflater == null) deflater = new Deflater(config.getLevel(), true);
+    ByteBuf out = ByteBufAllocator.DEFAULT.buffer(input.readableBytes() / 2 + 64);
+    try {
+      deflater.setInput(input.nioBuffer());
+      int written;
+      do {
+        out.ensureWritable(Math.max(64, input.readableBytes() / 4));
+        ByteBuffer target = out.nioBuffer(out.writerIndex(), out.writableBytes());
+        written = deflater.deflate(target, Deflater.SYNC_FLUSH);
+        out.writerIndex(out.writerIndex() + written);
+        // A flush that fills the buffer may have more to give
+      } while (written > 0 && !out.isWritable());
+      out.writerIndex(out.writerIndex() - SYNC_FLUSH_TAIL);
+    } catch (RuntimeException e) {
+      out.release();
+      deflater.end();
+      throw e;
+    }
+    deflater.reset();
+    deflaters.offer(deflater);
+    inputBytes.increment(input.readableBytes());
+    outputBytes.increment(out.readableBytes());
+    compressTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    return new TextWebSocketFrame(true, WebSocketExtension.RSV1, out);
+  }
+
+  @PreDestroy
+  void close() {
+    Deflater deflater;
+    while ((deflater = deflaters.poll()) != null) {
+      deflater.end();
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package messaging.drain;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+
+/** How a draining node hands its sessions over to the rest of the ring. */
+@ConfigurationProperties("messaging.drain")
+public class DrainConfiguration {
+
+  private double closesPerSecond = 200;
+  private Duration flushTimeout = Duration.ofSeconds(5);
+  private Duration reconnectDelayMax = Duration.ofSeconds(2);
+
+  /**
+   * Sessions closed per second while draining. The users move to this node's ring neighbours, so
+   * this is the extra open rate they see; keep it within their {@code messaging.admission} rate.
+   */
+  public double getClosesPerSecond() {
+    return closesPerSecond;
+  }
+
+  public void setClosesPerSecond(double closesPerSecond) {
+    this.closesPerSecond = closesPerSecond;
+  }
+
+  /** How long a session's outbound backlog may take to flush before it is closed regardless. */
+  public Duration getFlushTimeout() {
+    return flushTimeout;
+  }
+
+  public void setFlushTimeout(Duration flushTimeout) {
+    this.flushTimeout = flushTimeout;
+  }
+
+  /** Closed clients are told to reconnect after a random delay of up to this. */
+  public Duration getReconnectDelayMax() {
+    return reconnectDelayMax;
+  }
+
+  public void setReconnectDelayMax(Duration reconnectDelayMax) {
+    this.reconnectDelayMax = reconnectDelayMax;
+  }
+}
@@ -0,0 +1,154 @@
+package messaging.drain;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.TaskScheduler;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+import messaging.ConnectionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drain mode for rolling deploys. Envoy hashes users onto nodes by {@code X-User-Id}, so every user
+ * on a node that goes away lands on its ring neighbours, and closing them all at once turns a
+ * deploy into a reconnect storm there. Once {@link #drain()} is called the node refuses new opens,
+ * reports itself down to the readiness check and closes its sessions at {@code closes-per-second}.
+ * Each session's outbound backlog is flushed before it is closed, bounded by {@code
+ * flush-timeout}, and every close carries {@code 1012 Service Restart} with a jittered reconnect
+ * hint. Draining is one way: the node stays out until it restarts.
+ */
+@Singleton
+public class DrainController {
+
+  /** Close reason text before the hint, e.g. {@code draining;reconnect_after_ms=740}. */
+  public static final String DRAINING_REASON = "draining;reconnect_after_ms=";
+
+  static final Duration TICK = Duration.ofMillis(100);
+
+  private static final Logger LOG = LoggerFactory.getLogger(DrainController.class);
+
+  private record Target(String userId, WebSocketSession session) {}
+
+  private record Flushing(WebSocketSession session, CloseReason reason, long deadlineNanos) {}
+
+  private final ConnectionRegistry registry;
+  private final TaskScheduler scheduler;
+  private final double closesPerSecond;
+  private final double closesPerTick;
+  private final long flushTimeoutNanos;
+  private final long reconnectDelayMaxMillis;
+  private final LongSupplier nanoClock;
+  // Both only touched with the monitor held
+  private final Deque<Target> toClose = new ArrayDeque<>();
+  private final Deque<Flushing> flushing = new ArrayDeque<>();
+  private final Counter sessionsClosed;
+  private final Counter flushTimeouts;
+  private volatile boolean draining;
+  private double allowance;
+  private ScheduledFuture<?> ticker;
+
+  @Inject
+  public DrainController(
+      ConnectionRegistry registry,
+      @Named(TaskExecutors.SCHEDULED) TaskScheduler scheduler,
+      DrainConfiguration config,
+      MeterRegistry meterRegistry) {
+    this(registry, scheduler, config, meterRegistry, System::nanoTime);
+  }
+
+  DrainController(
+      ConnectionRegistry registry,
+      TaskScheduler scheduler,
+      DrainConfiguration config,
+      MeterRegistry meterRegistry,
+      LongSupplier nanoClock) {
+    this.registry = registry;
+    this.scheduler = scheduler;
+    this.closesPerSecond = config.getClosesPerSecond();
+    this.closesPerTick = closesPerSecond * TICK.toMillis() / 1_000.0;
+    this.flushTimeoutNanos = config.getFlushTimeout().toNanos();
+    this.reconnectDelayMaxMillis = config.getReconnectDelayMax().toMillis();
+    this.nanoClock = nanoClock;
+    this.sessionsClosed =
+        Counter.builder("messaging.drain.closed")
+            .description("Sessions closed by draining")
+            .register(meterRegistry);
+    this.flushTimeouts =
+        Counter.builder("messaging.drain.flush.timeouts")
+            .description("Draining sessions closed before their outbound backlog was flushed")
+            .register(meterRegistry);
+    Gauge.builder("messaging.drain.remaining", this, DrainController::remaining)
+        .description("Sessions still to be closed by draining")
+        .register(meterRegistry);
+  }
+
+  /** Starts draining this node. Returns false if it was already draining. */
+  public synchronized boolean drain() {
+    if (draining) return false;
+    draining = true;
+    registry.forEachSession((userId, session) -> toClose.add(new Target(userId, session)));
+    LOG.info("Draining {} sessions at {}/s", toClose.size(), closesPerSecond);
+    ticker = scheduler.scheduleAtFixedRate(TICK, TICK, this::tick);
+    return true;
+  }
+
+  public boolean isDraining() {
+    return draining;
+  }
+
+  /** Sessions not yet handed a close. */
+  public synchronized int remaining() {
+    return toClose.size();
+  }
+
+  /** A close reason telling the client to reconnect (to another node) after a random delay. */
+  public CloseReason reconnectReason() {
+    long delay = ThreadLocalRandom.current().nextLong(reconnectDelayMaxMillis + 1);
+    return new CloseReason(CloseReason.SERVICE_RESTART.getCode(), DRAINING_REASON + delay);
+  }
+
+  /** Closes this tick's share of sessions and any whose flush has run out of time. */
+  synchronized void tick() {
+    long now = nanoClock.getAsLong();
+    // A tick's unused share is not saved up, so a late tick cannot release a burst of closes
+    allowance = Math.min(allowance + closesPerTick, Math.max(1, closesPerTick));
+    while (allowance >= 1 && !toClose.isEmpty()) {
+      Target next = toClose.pollFirst();
+      if (!next.session().isOpen()) continue;
+      CloseReason reason = reconnectReason();
+      registry.closeAfterFlush(next.userId(), next.session(), reason);
+      flushing.addLast(new Flushing(next.session(), reason, now + flushTimeoutNanos));
+      sessionsClosed.increment();
+      allowance--;
+    }
+    // Deadlines are in close order, so the expired ones are at the head
+    while (!flushing.isEmpty() && flushing.peekFirst().deadlineNanos() - now <= 0) {
+      Flushing expired = flushing.pollFirst();
+      if (!expired.session().isOpen()) continue;
+      flushTimeouts.increment();
+      expired.session().close(expired.reason());
+    }
+    if (!toClose.isEmpty() || !flushing.isEmpty()) return;
+    // Sweep up any session that registered while the first snapshot was taken
+    registry.forEachSession(
+        (userId, session) -> {
+          if (session.isOpen()) toClose.add(new Target(userId, session));
+        });
+    if (toClose.isEmpty()) {
+      LOG.info("Drain complete");
+      if (ticker != null) ticker.cancel(false);
+    }
+  }
+}
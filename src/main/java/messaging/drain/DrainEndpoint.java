@@ -0,0 +1,31 @@
+package messaging.drain;
+
+import io.micronaut.management.endpoint.annotation.Endpoint;
+import io.micronaut.management.endpoint.annotation.Read;
+import io.micronaut.management.endpoint.annotation.Write;
+import java.util.Map;
+
+/**
+ * {@code GET /drain} reports drain progress; {@code POST /drain} starts draining, e.g. from a
+ * pre-stop hook. Sensitive by default: enable it only where it is not reachable through Envoy.
+ */
+@Endpoint(id = "drain", defaultSensitive = true)
+public class DrainEndpoint {
+
+  private final DrainController drain;
+
+  public DrainEndpoint(DrainController drain) {
+    this.drain = drain;
+  }
+
+  @Read
+  public Map<String, Object> status() {
+    return Map.of("draining", drain.isDraining(), "remaining", drain.remaining());
+  }
+
+  @Write
+  public Map<String, Object> start() {
+    boolean started = drain.drain();
+    return Map.of("started", started, "draining", true, "remaining", drain.remaining());
+  }
+}
@@ -0,0 +1,34 @@
+package messaging.drain;
+
+import io.micronaut.core.async.publisher.Publishers;
+import io.micronaut.health.HealthStatus;
+import io.micronaut.management.health.indicator.HealthIndicator;
+import io.micronaut.management.health.indicator.HealthResult;
+import io.micronaut.management.health.indicator.annotation.Readiness;
+import jakarta.inject.Singleton;
+import java.util.Map;
+import org.reactivestreams.Publisher;
+
+/**
+ * Reports the node down while it drains, so readiness checks and deploy tooling stop sending it
+ * new users. Readiness only: a draining node is still alive and must not be restarted early.
+ */
+@Singleton
+@Readiness
+public class DrainHealthIndicator implements HealthIndicator {
+
+  private final DrainController drain;
+
+  public DrainHealthIndicator(DrainController drain) {
+    this.drain = drain;
+  }
+
+  @Override
+  public Publisher<HealthResult> getResult() {
+    HealthStatus status = drain.isDraining() ? HealthStatus.DOWN : HealthStatus.UP;
+    return Publishers.just(
+        HealthResult.builder("drain", status)
+            .details(Map.of("draining", drain.isDraining(), "remaining", drain.remaining()))
+            .build());
+  }
+}
@@ -0,0 +1,39 @@
+package messaging.execution;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+/**
+ * Bounds for the database executor built by {@link ExecutionFactory} and the per-connection
+ * {@link ConnectionLanes}.
+ */
+@ConfigurationProperties("messaging.blocking")
+public class BlockingExecutionConfiguration {
+
+  private int maxConcurrency = 14;
+  private int maxQueuedPerConnection = 64;
+
+  /**
+   * Database tasks allowed to run at once. Keep it at or just below the Hikari pool size (less the
+   * connection the outbox relay holds), so that excess tasks wait on a cheap semaphore instead of
+   * timing out in the pool.
+   */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public void setMaxConcurrency(int maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Frames a single connection may have waiting for its handlers. A client that gets further ahead
+   * than this is sending faster than it can be served, and its session is closed.
+   */
+  public int getMaxQueuedPerConnection() {
+    return maxQueuedPerConnection;
+  }
+
+  public void setMaxQueuedPerConnection(int maxQueuedPerConnection) {
+    this.maxQueuedPerConnection = maxQueuedPerConnection;
+  }
+}
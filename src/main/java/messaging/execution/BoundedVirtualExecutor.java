@@ -0,0 +1,54 @@
+package messaging.execution;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs each task on its own virtual thread, at most {@code maxConcurrency} at a time. Tasks over
+ * the limit park their virtual thread on a fair semaphore, which costs a few hundred bytes of heap
+ * rather than a platform thread, and start in submission order as permits free up.
+ */
+public final class BoundedVirtualExecutor implements Executor, AutoCloseable {
+
+  private final ExecutorService threads;
+  private final Semaphore permits;
+  private final int maxConcurrency;
+
+  public BoundedVirtualExecutor(String threadNamePrefix, int maxConcurrency) {
+    this.threads =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix, 0).factory());
+    this.permits = new Semaphore(maxConcurrency, true);
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    threads.execute(
+        () -> {
+          permits.acquireUninterruptibly();
+          try {
+            task.run();
+          } finally {
+            permits.release();
+          }
+        });
+  }
+
+  /** Tasks currently running. */
+  public int active() {
+    return maxConcurrency - permits.availablePermits();
+  }
+
+  /** Tasks waiting for a permit. */
+  public int waiting() {
+    return permits.getQueueLength();
+  }
+
+  /** Stops accepting tasks and waits for those already submitted to finish. */
+  @Override
+  public void close() {
+    threads.close();
+  }
+}
@@ -0,0 +1,112 @@
+package messaging.execution;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands work triggered by a connection's frames off the event loop onto virtual threads, running
+ * one connection's tasks one at a time in the order they were submitted. A task may block freely
+ * (wait on a membership load, a database call on the {@link ExecutionFactory#DATABASE} executor)
+ * and only holds up later frames from the same connection, never the event loop or other
+ * connections.
+ *
+ * <p>Tasks never touch Netty state directly: replies go out through {@code sendAsync} or the
+ * session's outbound queue, and Netty hands every write from a non-event-loop thread back to the
+ * channel's own event loop, so writes for a connection stay single-threaded.
+ *
+ * <p>A connection's lane exists only while it has work: it is created by the first submission and
+ * removed once its queue runs dry, so idle connections cost nothing here. A lane holds at most
+ * {@code messaging.blocking.max-queued-per-connection} tasks; past that, submissions are refused
+ * so a client flooding frames faster than its handlers finish cannot grow memory without bound.
+ */
+@Singleton
+public class ConnectionLanes {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ConnectionLanes.class);
+
+  /** Lanes with queued or running work; each is drained by exactly one virtual thread. */
+  private final ConcurrentHashMap<Object, ArrayDeque<Runnable>> lanes = new ConcurrentHashMap<>();
+
+  private final ExecutorService threads =
+      Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("messaging-conn-", 0).factory());
+
+  private final int maxQueued;
+  private final Counter rejected;
+
+  public ConnectionLanes(BlockingExecutionConfiguration config, MeterRegistry meterRegistry) {
+    this.maxQueued = config.getMaxQueuedPerConnection();
+    Gauge.builder("messaging.blocking.lanes", lanes, ConcurrentHashMap::size)
+        .description("Connections with blocking work queued or running")
+        .register(meterRegistry);
+    this.rejected =
+        Counter.builder("messaging.blocking.lane.rejected")
+            .description("Tasks refused because their connection's lane was full")
+            .register(meterRegistry);
+  }
+
+  /**
+   * Queues the task behind any earlier work for the same connection.
+   *
+   * @return false, without queueing the task, if the connection already has the maximum number of
+   *     tasks waiting
+   */
+  public boolean submit(Object connection, Runnable task) {
+    boolean[] started = new boolean[1];
+    boolean[] queued = new boolean[1];
+    // All lane mutation happens inside the map's per-key lock, so a lane that is just emptying
+    // cannot miss a task submitted concurrently
+    lanes.compute(
+        connection,
+        (key, lane) -> {
+          if (lane == null) {
+            lane = new ArrayDeque<>();
+            started[0] = true;
+          } else if (lane.size() >= maxQueued) {
+            return lane;
+          }
+          lane.addLast(task);
+          queued[0] = true;
+          return lane;
+        });
+    if (started[0]) threads.execute(() -> drain(connection));
+    if (!queued[0]) rejected.increment();
+    return queued[0];
+  }
+
+  private void drain(Object connection) {
+    Runnable task;
+    while ((task = next(connection)) != null) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        LOG.error("Connection task failed", e);
+      }
+    }
+  }
+
+  /** Takes the lane's next task, removing the lane instead if it is empty. */
+  private Runnable next(Object connection) {
+    Runnable[] next = new Runnable[1];
+    lanes.computeIfPresent(
+        connection,
+        (key, lane) -> {
+          next[0] = lane.pollFirst();
+          return next[0] != null ? lane : null;
+        });
+    return next[0];
+  }
+
+  @PreDestroy
+  void close() {
+    threads.close();
+  }
+}
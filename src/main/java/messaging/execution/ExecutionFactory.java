@@ -0,0 +1,37 @@
+package messaging.execution;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Bean;
+import io.micronaut.context.annotation.Factory;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.util.concurrent.Executor;
+
+/**
+ * Executors for work that must stay off the Netty event loops. Anything that holds a JDBC
+ * connection (persistence, membership loads, history reads) runs on the {@link #DATABASE}
+ * executor: virtual threads bounded to the connection pool, so a slow database queues work
+ * cheaply instead of stalling event loops or exhausting the pool.
+ */
+@Factory
+public class ExecutionFactory {
+
+  public static final String DATABASE = "messaging-database";
+
+  @Singleton
+  @Named(DATABASE)
+  @Bean(preDestroy = "close")
+  BoundedVirtualExecutor databaseExecutor(
+      BlockingExecutionConfiguration config, MeterRegistry meterRegistry) {
+    BoundedVirtualExecutor executor =
+        new BoundedVirtualExecutor("messaging-db-", config.getMaxConcurrency());
+    Gauge.builder("messaging.blocking.active", executor, BoundedVirtualExecutor::active)
+        .description("Database tasks running")
+        .register(meterRegistry);
+    Gauge.builder("messaging.blocking.waiting", executor, BoundedVirtualExecutor::waiting)
+        .description("Database tasks waiting for a connection slot")
+        .register(meterRegistry);
+    return executor;
+  }
+}
@@ -0,0 +1,19 @@
+package messaging.fanout;
+
+import java.util.function.Consumer;
+
+/**
+ * Cross-node fanout transport. Messages are published by channel and every subscribed node
+ * (including the publisher's own) receives each one; nodes then deliver to whichever channel
+ * members are connected locally.
+ */
+public interface FanoutBus {
+
+  void publish(FanoutMessage message);
+
+  /**
+   * Subscribes a node to all published messages. The handler is invoked on a bus-owned thread, in
+   * publish order for a given publisher. Closing the returned handle stops delivery.
+   */
+  AutoCloseable subscribe(String nodeId, Consumer<FanoutMessage> handler);
+}
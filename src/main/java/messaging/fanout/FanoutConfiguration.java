@@ -0,0 +1,47 @@
+package messaging.fanout;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+/** Selects and tunes the {@link FanoutBus} implementation. */
+@ConfigurationProperties("messaging.fanout")
+public class FanoutConfiguration {
+
+  private String transport = "in-process";
+  private String multicastGroup = "239.255.42.99";
+  private int multicastPort = 4446;
+  private String multicastInterface;
+
+  /** {@code in-process} (single JVM) or {@code multicast} (brokerless, one host or LAN). */
+  public String getTransport() {
+    return transport;
+  }
+
+  public void setTransport(String transport) {
+    this.transport = transport;
+  }
+
+  public String getMulticastGroup() {
+    return multicastGroup;
+  }
+
+  public void setMulticastGroup(String multicastGroup) {
+    this.multicastGroup = multicastGroup;
+  }
+
+  public int getMulticastPort() {
+    return multicastPort;
+  }
+
+  public void setMulticastPort(int multicastPort) {
+    this.multicastPort = multicastPort;
+  }
+
+  /** Network interface name to send and join on; defaults to the loopback interface. */
+  public String getMulticastInterface() {
+    return multicastInterface;
+  }
+
+  public void setMulticastInterface(String multicastInterface) {
+    this.multicastInterface = multicastInterface;
+  }
+}
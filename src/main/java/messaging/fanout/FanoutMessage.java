@@ -0,0 +1,43 @@
+package messaging.fanout;
+
+/**
+ * A rendered payload published to every node for delivery to a channel's local members. {@code
+ * messageId} is the stored message's id and {@code seq} its sequence number in the channel; they
+ * are null and 0 for messages that were never persisted. {@code receivedAtMicros} is
+ * when the sender's frame was received, in epoch microseconds, or 0 if unknown; it is what
+ * end-to-end latency is measured from. {@code originSessionId} is the sender's session the message
+ * came from, which is the only one it is not delivered to, or null.
+ *
+ * <p>Control messages share the bus so they reach every node the same way: for {@link
+ * Kind#MEMBER_JOINED} and {@link Kind#MEMBER_LEFT}, {@code fromUserId} is the member whose
+ * membership of the channel changed and the payload is empty. A {@link Kind#PRESENCE} diff has no
+ * sender and goes to every member of the channel on each node.
+ */
+public record FanoutMessage(
+    Kind kind,
+    String fromUserId,
+    String originSessionId,
+    String channelId,
+    String payload,
+    String messageId,
+    long seq,
+    long receivedAtMicros) {
+
+  public enum Kind {
+    MESSAGE,
+    MEMBER_JOINED,
+    MEMBER_LEFT,
+    PRESENCE
+  }
+
+  /** Tells every node that {@code userId} was added to or removed from the channel. */
+  public static FanoutMessage membershipChanged(String channelId, String userId, boolean joined) {
+    return new FanoutMessage(
+        joined ? Kind.MEMBER_JOINED : Kind.MEMBER_LEFT, userId, null, channelId, "", null, 0, 0);
+  }
+
+  /** A rendered presence diff for the channel's members. */
+  public static FanoutMessage presence(String channelId, String payload) {
+    return new FanoutMessage(Kind.PRESENCE, null, null, channelId, payload, null, 0, 0);
+  }
+}
@@ -0,0 +1,68 @@
+package messaging.fanout;
+
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link FanoutBus} for nodes living in one JVM. Each subscriber gets its own single-threaded
+ * executor, so a slow node never delays delivery to the others and each node sees messages in
+ * publish order.
+ */
+@Singleton
+@Requires(
+    property = "messaging.fanout.transport",
+    value = "in-process",
+    defaultValue = "in-process")
+public class InProcessFanoutBus implements FanoutBus {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InProcessFanoutBus.class);
+
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  private record Subscriber(
+      String nodeId, Consumer<FanoutMessage> handler, ExecutorService executor)
+      implements AutoCloseable {
+
+    void deliver(FanoutMessage message) {
+      executor.execute(
+          () -> {
+            try {
+              handler.accept(message);
+            } catch (RuntimeException e) {
+              LOG.error("Fanout handler failed on node {}", nodeId, e);
+            }
+          });
+    }
+
+    @Override
+    public void close() {
+      executor.shutdown();
+    }
+  }
+
+  @Override
+  public void publish(FanoutMessage message) {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.deliver(message);
+    }
+  }
+
+  @Override
+  public AutoCloseable subscribe(String nodeId, Consumer<FanoutMessage> handler) {
+    ExecutorService executor =
+        Executors.newSingleThreadExecutor(Thread.ofVirtual().name("fanout-" + nodeId).factory());
+    Subscriber subscriber = new Subscriber(nodeId, handler, executor);
+    subscribers.add(subscriber);
+    return () -> {
+      subscribers.remove(subscriber);
+      subscriber.close();
+    };
+  }
+}
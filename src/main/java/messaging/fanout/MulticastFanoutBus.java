@@ -0,0 +1,173 @@
+package messaging.fanout;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.micronaut.context.annotation.Requires;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brokerless {@link FanoutBus} over UDP multicast. Every subscriber joins the same group, and
+ * multicast loopback is enabled so several nodes (or several subscriptions in one JVM) on the
+ * same host all receive every datagram. Intended for load-testing multi-node fanout on a single
+ * machine: delivery is best-effort and a message must fit in one datagram.
+ */
+@Singleton
+@Requires(property = "messaging.fanout.transport", value = "multicast")
+public class MulticastFanoutBus implements FanoutBus {
+
+  static final int MAX_DATAGRAM_BYTES = 65_507;
+  private static final Logger LOG = LoggerFactory.getLogger(MulticastFanoutBus.class);
+
+  private final InetSocketAddress groupAddress;
+  private final NetworkInterface networkInterface;
+  private final DatagramChannel sendChannel;
+
+  public MulticastFanoutBus(FanoutConfiguration config) throws IOException {
+    this.groupAddress =
+        new InetSocketAddress(
+            InetAddress.getByName(config.getMulticastGroup()), config.getMulticastPort());
+    this.networkInterface =
+        config.getMulticastInterface() != null
+            ? NetworkInterface.getByName(config.getMulticastInterface())
+            : NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+    this.sendChannel =
+        DatagramChannel.open(StandardProtocolFamily.INET)
+            .setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface)
+            .setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+  }
+
+  @Override
+  public void publish(FanoutMessage message) {
+    ByteBuffer datagram = encode(message);
+    if (datagram == null) {
+      LOG.warn("Dropping fanout message for channel {}: exceeds one datagram", message.channelId());
+      return;
+    }
+    try {
+      sendChannel.send(datagram, groupAddress);
+    } catch (IOException e) {
+      LOG.error("Failed to publish fanout message for channel {}", message.channelId(), e);
+    }
+  }
+
+  @Override
+  public AutoCloseable subscribe(String nodeId, Consumer<FanoutMessage> handler) {
+    try {
+      DatagramChannel receiveChannel =
+          DatagramChannel.open(StandardProtocolFamily.INET)
+              .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+              .bind(new InetSocketAddress(groupAddress.getPort()));
+      MembershipKey membership = receiveChannel.join(groupAddress.getAddress(), networkInterface);
+      Thread.ofPlatform()
+          .daemon()
+          .name("fanout-multicast-" + nodeId)
+          .start(() -> receive(nodeId, receiveChannel, handler));
+      return () -> {
+        membership.drop();
+        receiveChannel.close();
+      };
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to join multicast group " + groupAddress, e);
+    }
+  }
+
+  @PreDestroy
+  void close() throws IOException {
+    sendChannel.close();
+  }
+
+  private void receive(
+      String nodeId, DatagramChannel receiveChannel, Consumer<FanoutMessage> handler) {
+    ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+    while (receiveChannel.isOpen()) {
+      try {
+        buffer.clear();
+        receiveChannel.receive(buffer);
+        buffer.flip();
+        handler.accept(decode(buffer));
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException | RuntimeException e) {
+        LOG.error("Failed to handle fanout datagram on node {}", nodeId, e);
+      }
+    }
+  }
+
+  /**
+   * The kind's ordinal, length-prefixed UTF-8 fields, with a length of -1 for a null sender, origin
+   * session or message id, then the sequence number and receive time; returns null if the message
+   * does not fit in one datagram.
+   */
+  static ByteBuffer encode(FanoutMessage message) {
+    byte[] from = bytesOrNull(message.fromUserId());
+    byte[] origin = bytesOrNull(message.originSessionId());
+    byte[] channel = message.channelId().getBytes(UTF_8);
+    byte[] payload = message.payload().getBytes(UTF_8);
+    byte[] messageId = bytesOrNull(message.messageId());
+    int fields =
+        length(from) + length(origin) + channel.length + payload.length + length(messageId);
+    int size = 1 + 5 * Integer.BYTES + 2 * Long.BYTES + fields;
+    if (size > MAX_DATAGRAM_BYTES) return null;
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.put((byte) message.kind().ordinal());
+    putNullable(buffer, from);
+    putNullable(buffer, origin);
+    buffer.putInt(channel.length).put(channel);
+    buffer.putInt(payload.length).put(payload);
+    putNullable(buffer, messageId);
+    buffer.putLong(message.seq());
+    buffer.putLong(message.receivedAtMicros());
+    return buffer.flip();
+  }
+
+  static FanoutMessage decode(ByteBuffer buffer) {
+    return new FanoutMessage(
+        FanoutMessage.Kind.values()[buffer.get()],
+        readString(buffer),
+        readString(buffer),
+        readString(buffer),
+        readString(buffer),
+        readString(buffer),
+        buffer.getLong(),
+        buffer.getLong());
+  }
+
+  private static byte[] bytesOrNull(String field) {
+    return field != null ? field.getBytes(UTF_8) : null;
+  }
+
+  private static int length(byte[] field) {
+    return field != null ? field.length : 0;
+  }
+
+  private static void putNullable(ByteBuffer buffer, byte[] field) {
+    if (field != null) {
+      buffer.putInt(field.length).put(field);
+    } else {
+      buffer.putInt(-1);
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) return null;
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+}
@@ -0,0 +1,93 @@
+package messaging.history;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-capacity ring of one channel's recently delivered messages. Cursors are kept as a
+ * primitive array of sequence numbers, so a full ring costs one long and one reference per slot
+ * plus the payload strings themselves.
+ *
+ * <p>Messages arrive in seq order from the channel's sequencer, so the ring is kept in seq order
+ * and {@link #coveredFrom} is the seq after which it holds every message up to its latest. That
+ * point starts just before the first message recorded, advances past every evicted one, and jumps
+ * to just before any message that arrives past a gap the sequencer gave up on.
+ */
+final class ChannelRing {
+
+  // Approximate header, hash and array overhead of a String on a 64-bit JVM with compressed oops
+  private static final int STRING_OVERHEAD_BYTES = 40;
+  private static final int SLOT_BYTES = Long.BYTES + 4;
+
+  private final long[] seqs;
+  private final String[] payloads;
+  private int next;
+  private int size;
+  private long payloadBytes;
+  private long coveredFrom;
+  private long latest = -1;
+
+  ChannelRing(int capacity) {
+    this.seqs = new long[capacity];
+    this.payloads = new String[capacity];
+  }
+
+  synchronized void add(MessageCursor cursor, String payload) {
+    long seq = cursor.seq();
+    // Already held, or behind a gap the ring has moved past
+    if (seq <= latest) return;
+    if (seq != latest + 1) coveredFrom = seq - 1;
+    if (size == payloads.length) {
+      coveredFrom = Math.max(coveredFrom, seqs[next]);
+      payloadBytes -= estimateBytes(payloads[next]);
+    } else {
+      size++;
+    }
+    seqs[next] = seq;
+    payloads[next] = payload;
+    payloadBytes += estimateBytes(payload);
+    next = (next + 1) % payloads.length;
+    latest = seq;
+  }
+
+  /** The newest message held, or null if the ring is empty. */
+  synchronized MessageCursor latest() {
+    return latest < 0 ? null : new MessageCursor(latest);
+  }
+
+  /**
+   * Up to {@code limit} buffered messages in {@code (after, until]}, in seq order, or null when
+   * messages right after {@code after} may already have been evicted (or predate the ring).
+   */
+  synchronized List<RecentMessageBuffer.Entry> page(
+      MessageCursor after, MessageCursor until, int limit) {
+    if (latest < 0 || after.seq() < coveredFrom) return null;
+    List<RecentMessageBuffer.Entry> matches = new ArrayList<>();
+    int oldest = size < payloads.length ? 0 : next;
+    for (int i = 0; i < size && matches.size() < limit; i++) {
+      int slot = (oldest + i) % payloads.length;
+      if (seqs[slot] > until.seq()) break;
+      if (seqs[slot] > after.seq()) {
+        matches.add(new RecentMessageBuffer.Entry(new MessageCursor(seqs[slot]), payloads[slot]));
+      }
+    }
+    return matches;
+  }
+
+  /** Estimated heap held by this ring, including its payloads. */
+  synchronized long estimatedBytes() {
+    return (long) payloads.length * SLOT_BYTES + payloadBytes;
+  }
+
+  private static long estimateBytes(String payload) {
+    // Compact strings store Latin-1 text at one byte per char; others use two
+    return STRING_OVERHEAD_BYTES + (long) payload.length() * (isLatin1(payload) ? 1 : 2);
+  }
+
+  private static boolean isLatin1(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) > 0xFF) return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,40 @@
+package messaging.history;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+
+/** Pacing for {@link HistoryReplayer}. */
+@ConfigurationProperties("messaging.history")
+public class HistoryReplayConfiguration {
+
+  private int pageSize = 100;
+  private int maxOutboundDepth = 64;
+  private Duration drainCheckInterval = Duration.ofMillis(50);
+
+  /** Messages read from the store per keyset page. */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public void setPageSize(int pageSize) {
+    this.pageSize = pageSize;
+  }
+
+  /** The next page is only read once the session's outbound backlog is at or below this. */
+  public int getMaxOutboundDepth() {
+    return maxOutboundDepth;
+  }
+
+  public void setMaxOutboundDepth(int maxOutboundDepth) {
+    this.maxOutboundDepth = maxOutboundDepth;
+  }
+
+  /** How often a paused replay re-checks the outbound backlog. */
+  public Duration getDrainCheckInterval() {
+    return drainCheckInterval;
+  }
+
+  public void setDrainCheckInterval(Duration drainCheckInterval) {
+    this.drainCheckInterval = drainCheckInterval;
+  }
+}
@@ -0,0 +1,161 @@
+package messaging.history;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.TaskScheduler;
+import io.micronaut.websocket.WebSocketSession;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import messaging.ConnectionRegistry;
+import messaging.MessagingServer;
+import messaging.execution.ExecutionFactory;
+import messaging.persistence.MessageRecord;
+import messaging.protocol.JsonEnvelopeWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the messages a reconnecting client missed in a channel. Each page is served from the
+ * {@link RecentMessageBuffer} when it covers the range and otherwise read from the {@link
+ * MessageHistory}, so a client that was only briefly away never reaches the database. Pages are
+ * read on the database executor and pushed through the session's outbound queue, so they
+ * interleave with live traffic and are subject to the same backpressure. The next page is only
+ * read once the session's backlog has drained to {@code max-outbound-depth}, so a client resuming
+ * a busy channel is never handed more than about one page beyond what it is keeping up with.
+ *
+ * <p>Replay stops at the channel's newest message when it starts: the newest one delivered to this
+ * node if the channel is buffered here, otherwise the newest one stored. Anything newer arrives
+ * live. Around that boundary a message can be delivered both ways, and clients dedupe on {@code
+ * messageId}.
+ */
+@Singleton
+public class HistoryReplayer {
+
+  static final String RESUME_COMPLETE_TYPE = "resume_complete";
+  static final String HISTORY_UNAVAILABLE_REASON = "history_unavailable";
+  private static final Logger LOG = LoggerFactory.getLogger(HistoryReplayer.class);
+
+  // Absent when no datasource is configured (e.g. tests); only buffered ranges can then be resumed
+  @Nullable private final MessageHistory history;
+  private final RecentMessageBuffer recentMessages;
+  private final ConnectionRegistry registry;
+  private final Executor databaseExecutor;
+  private final TaskScheduler scheduler;
+  private final HistoryReplayConfiguration config;
+
+  /** One channel's replay for one session; only ever touched by one task at a time. */
+  private static final class Replay {
+    final String userId;
+    final WebSocketSession session;
+    final UUID channelId;
+    MessageCursor cursor;
+    // Resolved by the first page read, off the caller's thread
+    MessageCursor until;
+
+    Replay(String userId, WebSocketSession session, UUID channelId, MessageCursor cursor) {
+      this.userId = userId;
+      this.session = session;
+      this.channelId = channelId;
+      this.cursor = cursor;
+    }
+  }
+
+  public HistoryReplayer(
+      @Nullable MessageHistory history,
+      RecentMessageBuffer recentMessages,
+      ConnectionRegistry registry,
+      @Named(ExecutionFactory.DATABASE) Executor databaseExecutor,
+      @Named(TaskExecutors.SCHEDULED) TaskScheduler scheduler,
+      HistoryReplayConfiguration config) {
+    this.history = history;
+    this.recentMessages = recentMessages;
+    this.registry = registry;
+    this.databaseExecutor = databaseExecutor;
+    this.scheduler = scheduler;
+    this.config = config;
+  }
+
+  /** Starts replaying the channel after {@code after} to the session. Returns immediately. */
+  public void resume(String userId, WebSocketSession session, UUID channelId, MessageCursor after) {
+    Replay replay = new Replay(userId, session, channelId, after);
+    databaseExecutor.execute(() -> replayPage(replay));
+  }
+
+  private void replayPage(Replay replay) {
+    List<RecentMessageBuffer.Entry> page;
+    try {
+      page = readPage(replay);
+    } catch (RuntimeException e) {
+      LOG.error("History replay failed for userId {} in {}", replay.userId, replay.channelId, e);
+      registry.sendToSession(replay.userId, replay.session, errorPayload(replay.channelId));
+      return;
+    }
+    for (RecentMessageBuffer.Entry entry : page) {
+      // Stop quietly once the session has closed or been replaced
+      if (!registry.sendToSession(replay.userId, replay.session, entry.payload())) return;
+    }
+    if (!page.isEmpty()) replay.cursor = page.get(page.size() - 1).cursor();
+    if (page.size() < config.getPageSize()) {
+      registry.sendToSession(replay.userId, replay.session, completePayload(replay));
+      return;
+    }
+    awaitDrain(replay);
+  }
+
+  private List<RecentMessageBuffer.Entry> readPage(Replay replay) {
+    int limit = config.getPageSize();
+    if (replay.until == null) replay.until = head(replay);
+    Optional<List<RecentMessageBuffer.Entry>> buffered =
+        recentMessages.page(replay.channelId.toString(), replay.cursor, replay.until, limit);
+    if (buffered.isPresent()) return buffered.get();
+    if (history == null) throw new IllegalStateException("No message history is configured");
+    List<MessageRecord> records =
+        history.page(replay.channelId, replay.cursor, replay.until, limit);
+    List<RecentMessageBuffer.Entry> page = new ArrayList<>(records.size());
+    StringBuilder buffer = new StringBuilder();
+    for (MessageRecord record : records) {
+      page.add(
+          new RecentMessageBuffer.Entry(
+              MessageCursor.of(record), MessagingServer.buildPayload(record, buffer)));
+    }
+    return page;
+  }
+
+  /** Where the replay stops; anything after it reaches the session live. */
+  private MessageCursor head(Replay replay) {
+    Optional<MessageCursor> delivered = recentMessages.latest(replay.channelId.toString());
+    if (delivered.isPresent()) return delivered.get();
+    // Without a store only buffered channels can be resumed, which the page read reports
+    if (history == null) return replay.cursor;
+    return history.head(replay.channelId);
+  }
+
+  private void awaitDrain(Replay replay) {
+    if (!replay.session.isOpen()) return;
+    int depth = registry.outboundQueueDepth(replay.userId, replay.session);
+    if (depth <= config.getMaxOutboundDepth()) {
+      databaseExecutor.execute(() -> replayPage(replay));
+    } else {
+      scheduler.schedule(config.getDrainCheckInterval(), () -> awaitDrain(replay));
+    }
+  }
+
+  private static String completePayload(Replay replay) {
+    return JsonEnvelopeWriter.begin(RESUME_COMPLETE_TYPE)
+        .field("channelId", replay.channelId.toString())
+        .field("cursor", replay.cursor.encode())
+        .toJson();
+  }
+
+  private static String errorPayload(UUID channelId) {
+    return JsonEnvelopeWriter.begin("error")
+        .field("reason", HISTORY_UNAVAILABLE_REASON)
+        .field("channelId", channelId.toString())
+        .toJson();
+  }
+}
@@ -0,0 +1,128 @@
+package messaging.history;
+
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.sql.DataSource;
+import messaging.persistence.MessagePersistenceException;
+import messaging.persistence.MessageRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keyset pagination over {@code messages}. Each page is a single-shard range scan on {@code
+ * idx_messages_channel_seq} that starts at the previous page's last seq, so paging deep into a
+ * channel never re-reads or skips rows the way OFFSET would. Rows that predate sequencing have no
+ * seq and are not paged.
+ */
+@Singleton
+@Requires(beans = DataSource.class)
+public class JdbcMessageHistory implements MessageHistory {
+
+  private static final String SELECT_RANGE_SQL =
+      "SELECT channel_id, message_id, sender_user_id, sent_at, body, seq"
+          + " FROM messages"
+          + " WHERE channel_id = ? AND seq > ? AND seq <= ?"
+          + " ORDER BY seq"
+          + " LIMIT ?";
+  private static final String SELECT_HEAD_SQL =
+      "SELECT last_seq FROM channel_sequences WHERE channel_id = ?";
+  private static final String SELECT_HEADS_SQL =
+      "SELECT channel_id, last_seq FROM channel_sequences WHERE channel_id = ANY(?)";
+  private static final Logger LOG = LoggerFactory.getLogger(JdbcMessageHistory.class);
+
+  private final DataSource dataSource;
+
+  public JdbcMessageHistory(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  @Override
+  public List<MessageRecord> page(
+      UUID channelId, MessageCursor after, MessageCursor until, int limit) {
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(SELECT_RANGE_SQL)) {
+      stmt.setObject(1, channelId);
+      stmt.setLong(2, after.seq());
+      stmt.setLong(3, until.seq());
+      stmt.setInt(4, limit);
+      return read(stmt);
+    } catch (SQLException e) {
+      LOG.error("Failed to read history for channel {} after {}", channelId, after, e);
+      throw new MessagePersistenceException("Failed to read history for channel " + channelId, e);
+    }
+  }
+
+  @Override
+  public MessageCursor head(UUID channelId) {
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(SELECT_HEAD_SQL)) {
+      stmt.setObject(1, channelId);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? new MessageCursor(rs.getLong(1)) : MessageCursor.START;
+      }
+    } catch (SQLException e) {
+      LOG.error("Failed to read the head of channel {}", channelId, e);
+      throw new MessagePersistenceException("Failed to read history for channel " + channelId, e);
+    }
+  }
+
+  @Override
+  public Map<UUID, Long> heads(Collection<UUID> channelIds) {
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(SELECT_HEADS_SQL)) {
+      stmt.setArray(1, conn.createArrayOf("uuid", channelIds.toArray()));
+      Map<UUID, Long> heads = new HashMap<>();
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) heads.put(rs.getObject(1, UUID.class), rs.getLong(2));
+      }
+      return heads;
+    } catch (SQLException e) {
+      LOG.error("Failed to read the heads of {} channels", channelIds.size(), e);
+      throw new MessagePersistenceException("Failed to read channel heads", e);
+    }
+  }
+
+  @Override
+  public List<MessageRecord> range(UUID channelId, long afterSeq, long untilSeq, int limit) {
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(SELECT_RANGE_SQL)) {
+      stmt.setObject(1, channelId);
+      stmt.setLong(2, afterSeq);
+      stmt.setLong(3, untilSeq);
+      stmt.setInt(4, limit);
+      return read(stmt);
+    } catch (SQLException e) {
+      LOG.error("Failed to read seq {}..{} of channel {}", afterSeq + 1, untilSeq, channelId, e);
+      throw new MessagePersistenceException("Failed to read history for channel " + channelId, e);
+    }
+  }
+
+  private static List<MessageRecord> read(PreparedStatement stmt) throws SQLException {
+    List<MessageRecord> records = new ArrayList<>();
+    try (ResultSet rs = stmt.executeQuery()) {
+      while (rs.next()) {
+        records.add(
+            new MessageRecord(
+                rs.getObject(1, UUID.class),
+                rs.getObject(2, UUID.class),
+                rs.getObject(3, UUID.class),
+                rs.getObject(4, OffsetDateTime.class).toInstant(),
+                rs.getString(5),
+                rs.getLong(6),
+                null));
+      }
+    }
+    return records;
+  }
+}
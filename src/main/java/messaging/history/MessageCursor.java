@@ -0,0 +1,35 @@
+package messaging.history;
+
+import messaging.persistence.MessageRecord;
+
+/**
+ * Position of a message within its channel: its {@code seq}. Sequence numbers are handed out in the
+ * transaction that stores the message and commit in order, so nothing can later appear before a
+ * cursor a client already holds, however messages were received or batched. Clients treat the
+ * encoded form as opaque and hand back the last one they saw to resume.
+ */
+public record MessageCursor(long seq) implements Comparable<MessageCursor> {
+
+  /** Before every message of a channel. */
+  public static final MessageCursor START = new MessageCursor(0);
+
+  public static MessageCursor of(MessageRecord record) {
+    return new MessageCursor(record.seq());
+  }
+
+  /** Decodes a cursor produced by {@link #encode()}; throws IllegalArgumentException if invalid. */
+  public static MessageCursor parse(String encoded) {
+    long seq = Long.parseLong(encoded);
+    if (seq < 0) throw new IllegalArgumentException("Malformed cursor: " + encoded);
+    return new MessageCursor(seq);
+  }
+
+  public String encode() {
+    return Long.toString(seq);
+  }
+
+  @Override
+  public int compareTo(MessageCursor other) {
+    return Long.compare(seq, other.seq);
+  }
+}
@@ -0,0 +1,32 @@
+package messaging.history;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import messaging.persistence.MessageRecord;
+
+/**
+ * Read side of a channel's message log, paged by {@link MessageCursor} or read by sequence number.
+ * May block.
+ */
+public interface MessageHistory {
+
+  /**
+   * Up to {@code limit} messages of the channel positioned strictly after {@code after} and no
+   * later than {@code until}, in cursor order.
+   */
+  List<MessageRecord> page(UUID channelId, MessageCursor after, MessageCursor until, int limit);
+
+  /** The newest message stored in the channel, or {@link MessageCursor#START} if there is none. */
+  MessageCursor head(UUID channelId);
+
+  /** The newest seq of each of the channels, read at once; channels with no messages are absent. */
+  Map<UUID, Long> heads(Collection<UUID> channelIds);
+
+  /**
+   * Up to {@code limit} of the channel's messages with {@code afterSeq < seq <= untilSeq}, in seq
+   * order.
+   */
+  List<MessageRecord> range(UUID channelId, long afterSeq, long untilSeq, int limit);
+}
@@ -0,0 +1,87 @@
+package messaging.history;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.inject.Singleton;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Per-channel ring buffers of the messages this node most recently fanned out, so that resuming
+ * clients that were only briefly away are caught up from memory instead of the database.
+ *
+ * <p>A buffer answers for a range only when it can vouch that nothing in it is missing. Sequence
+ * numbers are gapless and arrive in order, so the ring holds every message from its coverage
+ * point up to the newest one delivered here; anything newer has not been relayed to this node yet
+ * and will reach the resumed session live. Older ranges fall back to {@link MessageHistory}.
+ */
+@Singleton
+public class RecentMessageBuffer {
+
+  /** A buffered message: its cursor and the payload exactly as it was fanned out. */
+  public record Entry(MessageCursor cursor, String payload) {}
+
+  private final Cache<String, ChannelRing> rings;
+  private final int capacity;
+  private final Counter hits;
+  private final Counter misses;
+
+  public RecentMessageBuffer(RecentMessageBufferConfiguration config, MeterRegistry meterRegistry) {
+    this.capacity = config.getCapacity();
+    this.rings =
+        Caffeine.newBuilder()
+            .maximumSize(config.getMaxChannels())
+            .expireAfterAccess(config.getIdleTimeout())
+            .build();
+    this.hits =
+        Counter.builder("messaging.history.buffer.hits")
+            .description("Resume pages served from memory, i.e. history queries avoided")
+            .register(meterRegistry);
+    this.misses =
+        Counter.builder("messaging.history.buffer.misses")
+            .description("Resume pages that fell back to the message store")
+            .register(meterRegistry);
+    Gauge.builder("messaging.history.buffer.channels", rings, c -> c.estimatedSize())
+        .description("Channels with a recent-message buffer")
+        .register(meterRegistry);
+    Gauge.builder("messaging.history.buffer.bytes", this, RecentMessageBuffer::estimatedBytes)
+        .description("Estimated heap held by recent-message buffers")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+  }
+
+  /** Records a message as it is fanned out to this node. */
+  public void record(String channelId, MessageCursor cursor, String payload) {
+    rings.get(channelId, k -> new ChannelRing(capacity)).add(cursor, payload);
+  }
+
+  /**
+   * Up to {@code limit} messages in {@code (after, until]} in seq order, or empty if the
+   * buffer cannot serve the range and the caller must read it from the store.
+   */
+  public Optional<List<Entry>> page(
+      String channelId, MessageCursor after, MessageCursor until, int limit) {
+    ChannelRing ring = rings.getIfPresent(channelId);
+    List<Entry> page = ring != null ? ring.page(after, until, limit) : null;
+    (page != null ? hits : misses).increment();
+    return Optional.ofNullable(page);
+  }
+
+  /** The newest message of the channel delivered to this node, if it is buffered. */
+  public Optional<MessageCursor> latest(String channelId) {
+    ChannelRing ring = rings.getIfPresent(channelId);
+    return Optional.ofNullable(ring != null ? ring.latest() : null);
+  }
+
+  /** Estimated heap held by all buffers, including payloads. */
+  public long estimatedBytes() {
+    long total = 0;
+    for (ChannelRing ring : rings.asMap().values()) {
+      total += ring.estimatedBytes();
+    }
+    return total;
+  }
+}
@@ -0,0 +1,40 @@
+package messaging.history;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+
+/** Bounds for {@link RecentMessageBuffer}. */
+@ConfigurationProperties("messaging.history.buffer")
+public class RecentMessageBufferConfiguration {
+
+  private int capacity = 256;
+  private long maxChannels = 10_000;
+  private Duration idleTimeout = Duration.ofMinutes(10);
+
+  /** Most recent messages kept per channel. */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /** Channels buffered at once; the least recently used channel's buffer is dropped first. */
+  public long getMaxChannels() {
+    return maxChannels;
+  }
+
+  public void setMaxChannels(long maxChannels) {
+    this.maxChannels = maxChannels;
+  }
+
+  /** A channel with no fanout or resume traffic for this long gives up its buffer. */
+  public Duration getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  public void setIdleTimeout(Duration idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+}
@@ -0,0 +1,91 @@
+package messaging.membership;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import messaging.execution.ExecutionFactory;
+
+/**
+ * Local cache of channel members keyed by channel id, loaded from the {@link
+ * ChannelMembershipSource} on the database executor. Entries expire after {@code ttl} and the cache
+ * is bounded by total member count rather than channel count, so a few huge channels cannot crowd
+ * out memory. Hits complete immediately on the calling thread, which keeps the per-message path
+ * free of lookups. Hit, miss, load and eviction counts are published as {@code cache.*} meters
+ * tagged {@code cache=channel-members}.
+ *
+ * <p>A load listener is told about every member set loaded, so state derived from membership
+ * elsewhere can be reconciled with it at least once per {@code ttl}. A load that overlapped an
+ * invalidation of its channel may have read the old membership and is not reported.
+ */
+@Singleton
+public class ChannelMembershipCache {
+
+  static final String CACHE_NAME = "channel-members";
+  private static final int INVALIDATION_STRIPES = 64;
+
+  private final ChannelMembershipSource source;
+  private final AsyncLoadingCache<String, Set<String>> cache;
+  // Invalidations per stripe of channel ids, to spot loads that raced a membership change
+  private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+  private volatile BiConsumer<String, Set<String>> loadListener = (channelId, members) -> {};
+
+  public ChannelMembershipCache(
+      ChannelMembershipSource source,
+      ChannelMembershipConfiguration config,
+      @Named(ExecutionFactory.DATABASE) Executor databaseExecutor,
+      MeterRegistry meterRegistry) {
+    this.source = source;
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumWeight(config.getMaxMembers())
+            .weigher((String channelId, Set<String> members) -> 1 + members.size())
+            .expireAfterWrite(config.getTtl())
+            .recordStats()
+            // Only the load itself holds a database permit; Caffeine's own upkeep stays on its
+            // default executor
+            .buildAsync(
+                (channelId, executor) ->
+                    CompletableFuture.supplyAsync(() -> load(channelId), databaseExecutor));
+    CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), CACHE_NAME);
+  }
+
+  /** Members of the channel. Completes immediately on a hit; loads off-thread on a miss. */
+  public CompletableFuture<Set<String>> members(String channelId) {
+    return cache.get(channelId);
+  }
+
+  public CompletableFuture<Boolean> isMember(String channelId, String userId) {
+    return members(channelId).thenApply(members -> members.contains(userId));
+  }
+
+  /** Drops the cached member set; call whenever the channel's membership changes. */
+  public void invalidate(String channelId) {
+    invalidations.incrementAndGet(stripe(channelId));
+    cache.synchronous().invalidate(channelId);
+  }
+
+  /** Replaces the listener told about each loaded member set; runs on the database executor. */
+  public void setLoadListener(BiConsumer<String, Set<String>> loadListener) {
+    this.loadListener = loadListener;
+  }
+
+  private Set<String> load(String channelId) {
+    int stripe = stripe(channelId);
+    long before = invalidations.get(stripe);
+    Set<String> members = source.loadMembers(channelId);
+    if (invalidations.get(stripe) == before) loadListener.accept(channelId, members);
+    return members;
+  }
+
+  private static int stripe(String channelId) {
+    return Math.floorMod(channelId.hashCode(), INVALIDATION_STRIPES);
+  }
+}
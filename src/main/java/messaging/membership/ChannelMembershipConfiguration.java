@@ -0,0 +1,33 @@
+package messaging.membership;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+
+/** Bounds for {@link ChannelMembershipCache}. */
+@ConfigurationProperties("messaging.membership.cache")
+public class ChannelMembershipConfiguration {
+
+  private Duration ttl = Duration.ofSeconds(30);
+  private long maxMembers = 1_000_000;
+
+  /**
+   * How long a loaded member set is trusted. Bounds staleness when a membership change made on
+   * another node never reaches this one's {@code invalidate}.
+   */
+  public Duration getTtl() {
+    return ttl;
+  }
+
+  public void setTtl(Duration ttl) {
+    this.ttl = ttl;
+  }
+
+  /** Total member entries held across all cached channels; large channels weigh more. */
+  public long getMaxMembers() {
+    return maxMembers;
+  }
+
+  public void setMaxMembers(long maxMembers) {
+    this.maxMembers = maxMembers;
+  }
+}
@@ -0,0 +1,16 @@
+package messaging.membership;
+
+import java.util.Set;
+
+/**
+ * Authoritative channel membership. Both lookups may block (e.g. on JDBC), so callers run them off
+ * the event loop; {@link ChannelMembershipCache} does this for channel lookups.
+ */
+public interface ChannelMembershipSource {
+
+  /** Users that belong to the channel; empty if the channel is unknown. */
+  Set<String> loadMembers(String channelId);
+
+  /** Channels the user belongs to; empty if the user is unknown. */
+  Set<String> loadChannels(String userId);
+}
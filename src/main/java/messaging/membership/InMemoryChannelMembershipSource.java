@@ -0,0 +1,47 @@
+package messaging.membership;
+
+import io.micronaut.context.annotation.Secondary;
+import jakarta.inject.Singleton;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Membership held in memory. Used when no datasource is configured (e.g. tests) and as a fake
+ * that tests populate directly; the JDBC source takes precedence whenever it exists.
+ */
+@Singleton
+@Secondary
+public class InMemoryChannelMembershipSource implements ChannelMembershipSource {
+
+  private final ConcurrentHashMap<String, Set<String>> membersByChannel = new ConcurrentHashMap<>();
+
+  public void addMember(String channelId, String userId) {
+    membersByChannel.computeIfAbsent(channelId, k -> ConcurrentHashMap.newKeySet()).add(userId);
+  }
+
+  public void removeMember(String channelId, String userId) {
+    membersByChannel.computeIfPresent(
+        channelId,
+        (cid, members) -> {
+          members.remove(userId);
+          return members.isEmpty() ? null : members;
+        });
+  }
+
+  @Override
+  public Set<String> loadMembers(String channelId) {
+    Set<String> members = membersByChannel.get(channelId);
+    return members != null ? Set.copyOf(members) : Set.of();
+  }
+
+  @Override
+  public Set<String> loadChannels(String userId) {
+    Set<String> channels = new HashSet<>();
+    membersByChannel.forEach(
+        (channelId, members) -> {
+          if (members.contains(userId)) channels.add(channelId);
+        });
+    return Set.copyOf(channels);
+  }
+}
@@ -0,0 +1,69 @@
+package messaging.membership;
+
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads membership from {@code channel_members}. Member lookups filter on the distribution column
+ * and hit one shard; channel lookups for a user fan out to every shard, so they are only done once
+ * per session open.
+ */
+@Singleton
+@Requires(beans = DataSource.class)
+public class JdbcChannelMembershipSource implements ChannelMembershipSource {
+
+  private static final String SELECT_MEMBERS =
+      "SELECT user_id FROM channel_members WHERE channel_id = ?";
+  private static final String SELECT_CHANNELS =
+      "SELECT channel_id FROM channel_members WHERE user_id = ?";
+  private static final Logger LOG = LoggerFactory.getLogger(JdbcChannelMembershipSource.class);
+
+  private final DataSource dataSource;
+
+  public JdbcChannelMembershipSource(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  @Override
+  public Set<String> loadMembers(String channelId) {
+    return query(SELECT_MEMBERS, channelId);
+  }
+
+  @Override
+  public Set<String> loadChannels(String userId) {
+    return query(SELECT_CHANNELS, userId);
+  }
+
+  private Set<String> query(String sql, String id) {
+    UUID uuid;
+    try {
+      uuid = UUID.fromString(id);
+    } catch (IllegalArgumentException e) {
+      return Set.of();
+    }
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setObject(1, uuid);
+      Set<String> ids = new HashSet<>();
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          ids.add(rs.getObject(1, UUID.class).toString());
+        }
+      }
+      return Set.copyOf(ids);
+    } catch (SQLException e) {
+      LOG.error("Failed to load channel membership for {}", id, e);
+      throw new MembershipLookupException("Failed to load channel membership for " + id, e);
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package messaging.membership;
+
+import io.micronaut.management.endpoint.annotation.Endpoint;
+import io.micronaut.management.endpoint.annotation.Write;
+import java.util.Map;
+import messaging.fanout.FanoutBus;
+import messaging.fanout.FanoutMessage;
+
+/**
+ * {@code POST /membership} with {@code channelId}, {@code userId} and {@code joined} announces a
+ * membership change to every node over the fanout bus, so each drops its cached member set and
+ * starts (or stops) delivering the channel to the user's sessions straight away. Whatever writes
+ * {@code channel_members} calls it once the change is committed; a call that is missed is still
+ * picked up when the cached member set next expires. Sensitive by default: enable it only where it
+ * is not reachable through Envoy.
+ */
+@Endpoint(id = "membership", defaultSensitive = true)
+public class MembershipEndpoint {
+
+  private final FanoutBus fanoutBus;
+
+  public MembershipEndpoint(FanoutBus fanoutBus) {
+    this.fanoutBus = fanoutBus;
+  }
+
+  @Write
+  public Map<String, Object> changed(String channelId, String userId, boolean joined) {
+    fanoutBus.publish(FanoutMessage.membershipChanged(channelId, userId, joined));
+    return Map.of("channelId", channelId, "userId", userId, "joined", joined);
+  }
+}
@@ -0,0 +1,8 @@
+package messaging.membership;
+
+public class MembershipLookupException extends RuntimeException {
+
+  public MembershipLookupException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
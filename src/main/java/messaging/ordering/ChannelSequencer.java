@@ -0,0 +1,290 @@
+package messaging.ordering;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.TaskScheduler;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import messaging.execution.ExecutionFactory;
+import messaging.fanout.FanoutMessage;
+import messaging.history.MessageHistory;
+import messaging.persistence.MessageRecord;
+import messaging.persistence.OutboxRelay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Puts each channel's stored messages back into {@code seq} order before this node delivers them.
+ * Every node's outbox relay publishes the messages it wrote, so two messages of one channel written
+ * on different nodes can arrive in either order, and without this recipients on different nodes
+ * could see them in different orders.
+ *
+ * <p>Per channel the next expected seq is tracked. A message that arrives early is held until the
+ * gap before it fills, for at most {@code max-wait}. A gap still open after that means a message
+ * was lost or badly delayed on the bus (e.g. a dropped multicast datagram): it is counted, the
+ * missing range is read from {@link MessageHistory}, at most {@code max-held} messages at a time,
+ * and delivered in place, and only if history cannot supply it are the held messages delivered
+ * past the gap. Duplicates from the at-least-once relay are dropped. Messages that were never
+ * persisted carry no seq and pass straight through.
+ *
+ * <p>A channel's messages are delivered under that channel's lock, so whichever thread completes a
+ * run delivers it in order and no other thread can interleave. A channel dropped for idling or to
+ * make room leaves its position, and anything it still held, to the next order for the channel;
+ * bare positions are kept far longer than channels, so a quiet channel picks up where it left off.
+ * A channel with no position at all (after a restart) starts at its first message without waiting.
+ */
+@Singleton
+public class ChannelSequencer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ChannelSequencer.class);
+
+  private final OrderingConfiguration config;
+  // Absent when no datasource is configured (e.g. tests); gaps are then skipped
+  @Nullable private final MessageHistory history;
+  private final Executor databaseExecutor;
+  private final TaskScheduler scheduler;
+  private final Counter gaps;
+  private final Counter recovered;
+  private final Counter skipped;
+  private final Counter duplicates;
+
+  public ChannelSequencer(
+      OrderingConfiguration config,
+      @Nullable MessageHistory history,
+      @Named(ExecutionFactory.DATABASE) Executor databaseExecutor,
+      @Named(TaskExecutors.SCHEDULED) TaskScheduler scheduler,
+      MeterRegistry meterRegistry) {
+    this.config = config;
+    this.history = history;
+    this.databaseExecutor = databaseExecutor;
+    this.scheduler = scheduler;
+    this.gaps =
+        Counter.builder("messaging.ordering.gaps")
+            .description("Sequence gaps still open after max-wait, each triggering a catch-up")
+            .register(meterRegistry);
+    this.recovered =
+        Counter.builder("messaging.ordering.recovered")
+            .description("Missing messages read back from history to fill gaps")
+            .register(meterRegistry);
+    this.skipped =
+        Counter.builder("messaging.ordering.skipped")
+            .description("Missing messages history could not supply; delivery moved past them")
+            .register(meterRegistry);
+    this.duplicates =
+        Counter.builder("messaging.ordering.duplicates")
+            .description("Messages dropped because their seq was already delivered or held")
+            .register(meterRegistry);
+  }
+
+  /** Wraps {@code deliver} so that it sees each channel's messages exactly once, in seq order. */
+  public Consumer<FanoutMessage> inOrder(Consumer<FanoutMessage> deliver) {
+    return new Ordered(deliver);
+  }
+
+  private final class Ordered implements Consumer<FanoutMessage> {
+
+    /** A dropped channel's place: the next seq it expected and anything it still held. */
+    private record Position(long nextSeq, TreeMap<Long, FanoutMessage> held) {}
+
+    private final Consumer<FanoutMessage> deliver;
+    private final Cache<String, ChannelOrder> channels;
+    private final Cache<String, Position> positions;
+
+    Ordered(Consumer<FanoutMessage> deliver) {
+      this.deliver = deliver;
+      this.positions =
+          Caffeine.newBuilder()
+              .maximumSize(config.getMaxPositions())
+              .expireAfterAccess(config.getPositionTimeout())
+              .<String, Position>removalListener(
+                  (channelId, position, cause) -> {
+                    if (cause.wasEvicted() && !position.held().isEmpty()) {
+                      LOG.warn(
+                          "Dropping {} held messages of {} with its position",
+                          position.held().size(),
+                          channelId);
+                    }
+                  })
+              .build();
+      this.channels =
+          Caffeine.newBuilder()
+              .maximumSize(config.getMaxChannels())
+              .expireAfterAccess(config.getIdleTimeout())
+              // Runs inside the removal, so the next order for the channel starts where this one
+              // stopped and cannot deliver alongside it
+              .<String, ChannelOrder>evictionListener(
+                  (channelId, order, cause) -> positions.put(channelId, order.park()))
+              .build();
+    }
+
+    @Override
+    public void accept(FanoutMessage message) {
+      if (message.seq() <= 0) {
+        deliverSafely(message);
+        return;
+      }
+      // An order parked between the lookup and the offer refuses it; its successor takes it
+      while (!channels.get(message.channelId(), ChannelOrder::new).offer(message)) {
+        Thread.onSpinWait();
+      }
+    }
+
+    private void deliverSafely(FanoutMessage message) {
+      try {
+        deliver.accept(message);
+      } catch (RuntimeException e) {
+        LOG.error("Failed to deliver message {} in {}", message.seq(), message.channelId(), e);
+      }
+    }
+
+    /** One channel's position and the messages held ahead of it; guarded by its own lock. */
+    private final class ChannelOrder {
+
+      private final String channelId;
+      private final TreeMap<Long, FanoutMessage> held;
+      // 0 until the first message of a channel with no kept position
+      private long nextSeq;
+      private long gapSinceNanos;
+      private boolean timerPending;
+      private boolean recovering;
+      // Dropped from the cache and handed to its successor: ignores everything from now on
+      private boolean parked;
+
+      ChannelOrder(String channelId) {
+        this.channelId = channelId;
+        Position position = positions.asMap().remove(channelId);
+        this.nextSeq = position != null ? position.nextSeq() : 0;
+        this.held = position != null ? position.held() : new TreeMap<>();
+      }
+
+      /** Takes the message in order; false if this order was parked and the caller must retry. */
+      synchronized boolean offer(FanoutMessage message) {
+        if (parked) return false;
+        // With nothing known, start at once rather than stall the channel's first message
+        if (nextSeq == 0) nextSeq = message.seq();
+        if (message.seq() < nextSeq || held.putIfAbsent(message.seq(), message) != null) {
+          duplicates.increment();
+          return true;
+        }
+        release();
+        if (held.size() > config.getMaxHeld()) recover();
+        return true;
+      }
+
+      /** Delivers the run starting at nextSeq and starts the wait clock if a gap remains. */
+      private void release() {
+        boolean advanced = false;
+        Map.Entry<Long, FanoutMessage> first;
+        while ((first = held.firstEntry()) != null && first.getKey() == nextSeq) {
+          held.pollFirstEntry();
+          nextSeq++;
+          advanced = true;
+          deliverSafely(first.getValue());
+        }
+        if (held.isEmpty()) {
+          gapSinceNanos = 0;
+        } else {
+          awaitGap(advanced);
+        }
+      }
+
+      /** Starts the wait clock for the current gap; one timer per channel is pending at most. */
+      private void awaitGap(boolean restart) {
+        if (gapSinceNanos == 0 || restart) gapSinceNanos = System.nanoTime();
+        if (timerPending) return;
+        timerPending = true;
+        scheduler.schedule(config.getMaxWait(), this::onWaitExpired);
+      }
+
+      private synchronized void onWaitExpired() {
+        timerPending = false;
+        if (parked || held.isEmpty() || recovering) return;
+        // The gap may have moved on since this timer was scheduled; wait out the rest of its time
+        long remainingNanos = config.getMaxWait().toNanos() - (System.nanoTime() - gapSinceNanos);
+        if (remainingNanos > 0) {
+          timerPending = true;
+          scheduler.schedule(Duration.ofNanos(remainingNanos), this::onWaitExpired);
+          return;
+        }
+        recover();
+      }
+
+      /** Counts a gap and starts catching it up; lock held. */
+      private void recover() {
+        if (recovering) return;
+        gaps.increment();
+        readMissing();
+      }
+
+      /**
+       * Reads the messages missing before the first held one from history, at most max-held of
+       * them at a time; lock held.
+       */
+      private void readMissing() {
+        long afterSeq = nextSeq - 1;
+        long untilSeq = Math.min(held.firstKey() - 1, afterSeq + config.getMaxHeld());
+        if (history == null) {
+          skipTo(held.firstKey());
+          return;
+        }
+        recovering = true;
+        databaseExecutor.execute(
+            () -> {
+              List<MessageRecord> missing;
+              try {
+                missing =
+                    history.range(
+                        UUID.fromString(channelId), afterSeq, untilSeq, config.getMaxHeld());
+              } catch (RuntimeException e) {
+                LOG.warn(
+                    "Failed to catch up seq {}..{} of {}", afterSeq + 1, untilSeq, channelId, e);
+                missing = List.of();
+              }
+              onRecovered(missing, untilSeq);
+            });
+      }
+
+      private synchronized void onRecovered(List<MessageRecord> missing, long untilSeq) {
+        recovering = false;
+        if (parked) return;
+        for (MessageRecord record : missing) {
+          if (record.seq() < nextSeq) continue;
+          if (held.putIfAbsent(record.seq(), OutboxRelay.fanoutMessage(record)) == null) {
+            recovered.increment();
+          }
+        }
+        release();
+        // Whatever of the range read history could not supply is skipped
+        if (!held.isEmpty() && nextSeq <= untilSeq) {
+          skipTo(Math.min(held.firstKey(), untilSeq + 1));
+        }
+        // A gap wider than one read goes on from where this read stopped
+        if (!held.isEmpty() && nextSeq == untilSeq + 1) readMissing();
+      }
+
+      private void skipTo(long seq) {
+        LOG.warn("Skipping seq {}..{} of {}", nextSeq, seq - 1, channelId);
+        skipped.increment(seq - nextSeq);
+        nextSeq = seq;
+        release();
+      }
+
+      /** Stops this order and returns its place for the channel's next order to resume from. */
+      synchronized Position park() {
+        parked = true;
+        return new Position(nextSeq, held);
+      }
+    }
+  }
+}
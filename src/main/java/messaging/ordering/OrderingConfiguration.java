@@ -0,0 +1,82 @@
+package messaging.ordering;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+
+/** Tuning for {@link ChannelSequencer}. */
+@ConfigurationProperties("messaging.ordering")
+public class OrderingConfiguration {
+
+  private Duration maxWait = Duration.ofMillis(500);
+  private int maxHeld = 1_000;
+  private long maxChannels = 10_000;
+  private Duration idleTimeout = Duration.ofMinutes(10);
+  private long maxPositions = 1_000_000;
+  private Duration positionTimeout = Duration.ofDays(1);
+
+  /**
+   * How long messages that arrived ahead of a gap are held for the gap to fill before it is
+   * caught up from history. Should cover the outbox poll interval plus bus latency.
+   */
+  public Duration getMaxWait() {
+    return maxWait;
+  }
+
+  public void setMaxWait(Duration maxWait) {
+    this.maxWait = maxWait;
+  }
+
+  /**
+   * Messages held per channel; beyond this the gap is caught up at once instead of waited on. Gaps
+   * are read from history at most this many messages at a time.
+   */
+  public int getMaxHeld() {
+    return maxHeld;
+  }
+
+  public void setMaxHeld(int maxHeld) {
+    this.maxHeld = maxHeld;
+  }
+
+  /** Channels whose sequence position is tracked at once; the least recently used is dropped. */
+  public long getMaxChannels() {
+    return maxChannels;
+  }
+
+  public void setMaxChannels(long maxChannels) {
+    this.maxChannels = maxChannels;
+  }
+
+  /**
+   * A channel with no traffic for this long is dropped, keeping only its position (and anything
+   * it still held) for up to {@code position-timeout}.
+   */
+  public Duration getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  public void setIdleTimeout(Duration idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+
+  /** Positions of dropped channels kept at once; the least recently used is forgotten. */
+  public long getMaxPositions() {
+    return maxPositions;
+  }
+
+  public void setMaxPositions(long maxPositions) {
+    this.maxPositions = maxPositions;
+  }
+
+  /**
+   * How long a dropped channel's position is kept. A channel that comes back after this starts at
+   * whatever seq arrives first, so a message of it still in flight then is delivered out of order.
+   */
+  public Duration getPositionTimeout() {
+    return positionTimeout;
+  }
+
+  public void setPositionTimeout(Duration positionTimeout) {
+    this.positionTimeout = positionTimeout;
+  }
+}
@@ -0,0 +1,40 @@
+package messaging.persistence;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+
+/** Tuning for {@link GroupCommitWriter}: a batch commits when it is full or its window elapses. */
+@ConfigurationProperties("messaging.persistence.group-commit")
+public class GroupCommitConfiguration {
+
+  private Duration maxWait = Duration.ofMillis(5);
+  private int maxBatchSize = 256;
+  private int queueCapacity = 10_000;
+
+  /** Longest a message waits for other messages to share its commit. */
+  public Duration getMaxWait() {
+    return maxWait;
+  }
+
+  public void setMaxWait(Duration maxWait) {
+    this.maxWait = maxWait;
+  }
+
+  /** Most messages gathered into one batch. */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /** Messages that may wait for a commit before new writes are rejected. */
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+}
@@ -0,0 +1,211 @@
+package messaging.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Primary;
+import io.micronaut.context.annotation.Requires;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import messaging.execution.ExecutionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group-commit front for {@link JdbcMessageStore}. Messages are queued and a single writer thread
+ * gathers them for up to {@code max-wait} or {@code max-batch-size} rows, then commits each
+ * channel's share of the batch as one multi-row insert. The channels' transactions live on
+ * different shards, so they run in parallel on the {@link ExecutionFactory#DATABASE} executor, and
+ * the next batch starts once they have all finished, which keeps each channel's batches in queue
+ * order. Every sender's future completes when the transaction holding its message commits, so
+ * callers still see per-message durability while each shard sees one round-trip per batch instead
+ * of one per message.
+ */
+@Singleton
+@Primary
+@Requires(beans = JdbcMessageStore.class)
+public class GroupCommitWriter implements MessageStore {
+
+  private static final long IDLE_POLL_MILLIS = 100;
+  private static final Logger LOG = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+  private record PendingWrite(MessageRecord record, CompletableFuture<Void> future) {}
+
+  private final JdbcMessageStore jdbcMessageStore;
+  private final int maxBatchSize;
+  private final long maxWaitNanos;
+  private final BlockingQueue<PendingWrite> queue;
+  private final DistributionSummary batchSizeSummary;
+  private final Timer commitTimer;
+  private final Counter rejectedCounter;
+  private final Executor databaseExecutor;
+  // Appends hold the read lock from the running check to the offer, so stop() cannot slip between
+  // them and leave a write in the queue after the writer thread has exited
+  private final ReadWriteLock stopLock = new ReentrantReadWriteLock();
+  private volatile boolean running = true;
+  private Thread writerThread;
+
+  public GroupCommitWriter(
+      JdbcMessageStore jdbcMessageStore,
+      GroupCommitConfiguration config,
+      @Named(ExecutionFactory.DATABASE) Executor databaseExecutor,
+      MeterRegistry meterRegistry) {
+    this.jdbcMessageStore = jdbcMessageStore;
+    this.databaseExecutor = databaseExecutor;
+    this.maxBatchSize = config.getMaxBatchSize();
+    this.maxWaitNanos = config.getMaxWait().toNanos();
+    this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+    this.batchSizeSummary =
+        DistributionSummary.builder("messaging.persistence.batch.size")
+            .description("Messages committed per channel transaction")
+            .register(meterRegistry);
+    this.commitTimer =
+        Timer.builder("messaging.persistence.commit.latency")
+            .description("Time to commit one channel batch")
+            .register(meterRegistry);
+    this.rejectedCounter =
+        Counter.builder("messaging.persistence.rejected")
+            .description("Messages rejected because the write queue was full")
+            .register(meterRegistry);
+    Gauge.builder("messaging.persistence.queue.depth", queue, BlockingQueue::size)
+        .description("Messages waiting for a group commit")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  void start() {
+    writerThread = Thread.ofPlatform().name("message-group-commit").daemon().start(this::drain);
+  }
+
+  /** Stops accepting writes and waits for everything already queued to commit. */
+  @PreDestroy
+  void stop() throws InterruptedException {
+    stopLock.writeLock().lock();
+    try {
+      running = false;
+    } finally {
+      stopLock.writeLock().unlock();
+    }
+    if (writerThread != null) writerThread.join();
+    // Only left behind if the writer thread was interrupted
+    List<PendingWrite> leftover = new ArrayList<>();
+    queue.drainTo(leftover);
+    failAll(leftover, new MessagePersistenceException("Message writer stopped"));
+  }
+
+  @Override
+  public CompletableFuture<Void> append(MessageRecord record) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    boolean stopped;
+    boolean queued;
+    stopLock.readLock().lock();
+    try {
+      stopped = !running;
+      queued = !stopped && queue.offer(new PendingWrite(record, future));
+    } finally {
+      stopLock.readLock().unlock();
+    }
+    if (!queued) {
+      rejectedCounter.increment();
+      future.completeExceptionally(
+          new MessagePersistenceException(
+              stopped ? "Message writer stopped" : "Message write queue is full"));
+    }
+    return future;
+  }
+
+  @Override
+  public CompletableFuture<Void> append(List<MessageRecord> records) {
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[records.size()];
+    for (int i = 0; i < futures.length; i++) {
+      futures[i] = append(records.get(i));
+    }
+    return CompletableFuture.allOf(futures);
+  }
+
+  private void drain() {
+    List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        collectBatch(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failAll(batch, e);
+        return;
+      }
+      if (!batch.isEmpty()) commit(batch);
+      batch.clear();
+    }
+  }
+
+  private void collectBatch(List<PendingWrite> batch) throws InterruptedException {
+    PendingWrite first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+    if (first == null) return;
+    batch.add(first);
+    long deadline = System.nanoTime() + maxWaitNanos;
+    while (batch.size() < maxBatchSize) {
+      // Take whatever is already queued before waiting out the rest of the window
+      if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) continue;
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) return;
+      PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) return;
+      batch.add(next);
+    }
+  }
+
+  private void commit(List<PendingWrite> batch) {
+    Map<UUID, List<PendingWrite>> writesByChannel = new LinkedHashMap<>();
+    for (PendingWrite write : batch) {
+      writesByChannel
+          .computeIfAbsent(write.record().channelId(), k -> new ArrayList<>())
+          .add(write);
+    }
+    CompletableFuture<?>[] commits = new CompletableFuture<?>[writesByChannel.size()];
+    int i = 0;
+    for (List<PendingWrite> channelWrites : writesByChannel.values()) {
+      commits[i++] =
+          CompletableFuture.runAsync(() -> commitChannel(channelWrites), databaseExecutor);
+    }
+    // A channel's next batch must not commit ahead of this one, or its seqs would not follow the
+    // order its messages were queued in
+    CompletableFuture.allOf(commits).join();
+    LOG.debug(
+        "Group commit of {} messages across {} channels", batch.size(), writesByChannel.size());
+  }
+
+  private void commitChannel(List<PendingWrite> channelWrites) {
+    List<MessageRecord> records = new ArrayList<>(channelWrites.size());
+    channelWrites.forEach(write -> records.add(write.record()));
+    long start = System.nanoTime();
+    try {
+      jdbcMessageStore.writeChannel(records);
+      channelWrites.forEach(write -> write.future().complete(null));
+    } catch (RuntimeException e) {
+      failAll(channelWrites, e);
+    } finally {
+      commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      batchSizeSummary.record(channelWrites.size());
+    }
+  }
+
+  private static void failAll(List<PendingWrite> writes, Throwable cause) {
+    writes.forEach(write -> write.future().completeExceptionally(cause));
+  }
+}
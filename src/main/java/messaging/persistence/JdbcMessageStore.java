@@ -0,0 +1,165 @@
+package messaging.persistence;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import javax.sql.DataSource;
+import messaging.execution.ExecutionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JDBC {@link MessageStore} for the Citus cluster. Records are grouped by {@code channel_id} (the
+ * distribution column of both {@code messages} and {@code message_outbox}), and each group is
+ * written with multi-row inserts in one transaction, so every transaction is routed to a single
+ * shard.
+ */
+@Singleton
+@Requires(beans = DataSource.class)
+public class JdbcMessageStore implements MessageStore {
+
+  // Keeps bind parameters per statement well under the Postgres limit of 32767
+  static final int MAX_ROWS_PER_STATEMENT = 1_000;
+  private static final String INSERT_MESSAGE_PREFIX =
+      "INSERT INTO messages (channel_id, message_id, sender_user_id, sent_at, body, seq) VALUES ";
+  private static final String MESSAGE_ROW = "(?, ?, ?, ?, ?, ?)";
+  private static final String INSERT_OUTBOX_PREFIX =
+      "INSERT INTO message_outbox (channel_id, message_id, node_id, origin_session_id) VALUES ";
+  private static final String OUTBOX_ROW = "(?, ?, ?, ?)";
+  // Takes the channel's sequence row lock until commit, so concurrent writers of a channel (on any
+  // node) commit in seq order
+  private static final String ALLOCATE_SEQ_SQL =
+      "INSERT INTO channel_sequences (channel_id, last_seq) VALUES (?, ?)"
+          + " ON CONFLICT (channel_id)"
+          + " DO UPDATE SET last_seq = channel_sequences.last_seq + EXCLUDED.last_seq"
+          + " RETURNING last_seq";
+  private static final Logger LOG = LoggerFactory.getLogger(JdbcMessageStore.class);
+
+  private final DataSource dataSource;
+  private final Executor databaseExecutor;
+  private final String nodeId;
+
+  public JdbcMessageStore(
+      DataSource dataSource,
+      @Named(ExecutionFactory.DATABASE) Executor databaseExecutor,
+      @Value("${messaging.node-id:local}") String nodeId) {
+    this.dataSource = dataSource;
+    this.databaseExecutor = databaseExecutor;
+    this.nodeId = nodeId;
+  }
+
+  @Override
+  public CompletableFuture<Void> append(List<MessageRecord> records) {
+    return CompletableFuture.runAsync(() -> write(records), databaseExecutor);
+  }
+
+  /** Writes the records on the calling thread, one single-shard transaction per channel. */
+  public void write(List<MessageRecord> records) {
+    Map<UUID, List<MessageRecord>> recordsByChannel = new LinkedHashMap<>();
+    for (MessageRecord record : records) {
+      recordsByChannel.computeIfAbsent(record.channelId(), k -> new ArrayList<>()).add(record);
+    }
+    MessagePersistenceException failure = null;
+    for (List<MessageRecord> channelRecords : recordsByChannel.values()) {
+      try {
+        writeChannel(channelRecords);
+      } catch (MessagePersistenceException e) {
+        // Keep going: other channels live on other shards and should not be held back
+        if (failure == null) failure = e;
+      }
+    }
+    if (failure != null) throw failure;
+  }
+
+  /**
+   * Writes records that all belong to the same channel in one transaction, using one multi-row
+   * {@code INSERT} per table (split every {@link #MAX_ROWS_PER_STATEMENT} rows). The records are
+   * given the channel's next sequence numbers in list order.
+   */
+  public void writeChannel(List<MessageRecord> channelRecords) {
+    try (Connection conn = dataSource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        long lastSeq = allocateSequences(conn, channelRecords);
+        long firstSeq = lastSeq - channelRecords.size() + 1;
+        for (int from = 0; from < channelRecords.size(); from += MAX_ROWS_PER_STATEMENT) {
+          int to = Math.min(from + MAX_ROWS_PER_STATEMENT, channelRecords.size());
+          insertRows(conn, channelRecords.subList(from, to), firstSeq + from);
+        }
+        conn.commit();
+      } catch (SQLException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      }
+    } catch (SQLException e) {
+      UUID channelId = channelRecords.get(0).channelId();
+      LOG.error(
+          "Failed to persist {} messages for channel {}", channelRecords.size(), channelId, e);
+      throw new MessagePersistenceException(
+          "Failed to persist messages for channel " + channelId, e);
+    }
+  }
+
+  /** Reserves one sequence number per record and returns the last one. */
+  private static long allocateSequences(Connection conn, List<MessageRecord> channelRecords)
+      throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(ALLOCATE_SEQ_SQL)) {
+      stmt.setObject(1, channelRecords.get(0).channelId());
+      stmt.setLong(2, channelRecords.size());
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        return rs.getLong(1);
+      }
+    }
+  }
+
+  private void insertRows(Connection conn, List<MessageRecord> rows, long firstSeq)
+      throws SQLException {
+    try (PreparedStatement messageStmt =
+            conn.prepareStatement(multiRowInsert(INSERT_MESSAGE_PREFIX, MESSAGE_ROW, rows.size()));
+        PreparedStatement outboxStmt =
+            conn.prepareStatement(multiRowInsert(INSERT_OUTBOX_PREFIX, OUTBOX_ROW, rows.size()))) {
+      int messageParam = 1;
+      int outboxParam = 1;
+      long seq = firstSeq;
+      for (MessageRecord record : rows) {
+        messageStmt.setObject(messageParam++, record.channelId());
+        messageStmt.setObject(messageParam++, record.messageId());
+        messageStmt.setObject(messageParam++, record.senderUserId());
+        messageStmt.setObject(messageParam++, record.sentAt().atOffset(ZoneOffset.UTC));
+        messageStmt.setString(messageParam++, record.body());
+        messageStmt.setLong(messageParam++, seq++);
+
+        outboxStmt.setObject(outboxParam++, record.channelId());
+        outboxStmt.setObject(outboxParam++, record.messageId());
+        outboxStmt.setString(outboxParam++, nodeId);
+        outboxStmt.setString(outboxParam++, record.originSessionId());
+      }
+      messageStmt.executeUpdate();
+      outboxStmt.executeUpdate();
+    }
+  }
+
+  private static String multiRowInsert(String prefix, String row, int rows) {
+    StringBuilder sql = new StringBuilder(prefix.length() + rows * (row.length() + 2));
+    sql.append(prefix);
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) sql.append(", ");
+      sql.append(row);
+    }
+    return sql.toString();
+  }
+}
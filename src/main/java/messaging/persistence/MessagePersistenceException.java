@@ -0,0 +1,12 @@
+package messaging.persistence;
+
+public class MessagePersistenceException extends RuntimeException {
+
+  public MessagePersistenceException(String message) {
+    super(message);
+  }
+
+  public MessagePersistenceException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,45 @@
+package messaging.persistence;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * A chat message as stored in the distributed {@code messages} table. {@code seq} is the message's
+ * position in its channel, assigned when it is written; it is 0 for a record not yet written (and
+ * for rows that predate sequencing). {@code originSessionId} is the sender's session the message
+ * came from, or null if unknown; it is stored on the outbox row only, so that fanout can skip that
+ * session.
+ */
+public record MessageRecord(
+    UUID channelId,
+    UUID messageId,
+    UUID senderUserId,
+    Instant sentAt,
+    String body,
+    long seq,
+    String originSessionId) {
+
+  /**
+   * A new message sent now. The timestamp is truncated to microseconds, the precision of {@code
+   * timestamptz}, so cursors built from the in-memory record match the stored row.
+   */
+  public static MessageRecord newMessage(UUID channelId, UUID senderUserId, String body) {
+    return newMessage(channelId, senderUserId, body, Instant.now(), null);
+  }
+
+  /**
+   * A new message whose frame was received at {@code receivedAt}, which becomes its sentAt, on the
+   * session {@code originSessionId}.
+   */
+  public static MessageRecord newMessage(
+      UUID channelId,
+      UUID senderUserId,
+      String body,
+      Instant receivedAt,
+      String originSessionId) {
+    Instant sentAt = receivedAt.truncatedTo(ChronoUnit.MICROS);
+    return new MessageRecord(
+        channelId, UUID.randomUUID(), senderUserId, sentAt, body, 0, originSessionId);
+  }
+}
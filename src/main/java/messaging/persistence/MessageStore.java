@@ -0,0 +1,19 @@
+package messaging.persistence;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Durable write path for chat messages. Each message is written together with an outbox row in
+ * the same transaction; publishing for fanout is left to the outbox relay. Implementations never
+ * block the caller, so it is safe to call from WebSocket handlers running on the event loop.
+ */
+public interface MessageStore {
+
+  /** Completes once every record and its outbox row have committed. */
+  CompletableFuture<Void> append(List<MessageRecord> records);
+
+  default CompletableFuture<Void> append(MessageRecord record) {
+    return append(List.of(record));
+  }
+}
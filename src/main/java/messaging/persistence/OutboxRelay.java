@@ -0,0 +1,177 @@
+package messaging.persistence;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Singleton;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.sql.DataSource;
+import messaging.MessagingServer;
+import messaging.fanout.FanoutBus;
+import messaging.fanout.FanoutMessage;
+import messaging.tracing.MessageLatencyTracker;
+import messaging.tracing.MessageLatencyTracker.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background relay that publishes committed messages from {@code message_outbox} on the {@link
+ * FanoutBus} and then deletes their outbox rows. A row is claimed with a lease ({@code
+ * claimed_by}, {@code claimed_at}) before it is published. Each node claims the rows it wrote as
+ * soon as they appear, and any node claims rows older than the lease that nobody holds a live lease
+ * on, so the rows of a node that crashed or restarted under a new hostname are still relayed, while
+ * healthy nodes do not contend for each other's rows. Delivery is at-least-once: a relay that dies
+ * between publish and delete leaves a lease that expires and is claimed again, and clients dedupe
+ * on message id.
+ */
+@Singleton
+@Requires(beans = DataSource.class)
+public class OutboxRelay {
+
+  // Own unclaimed rows, plus anyone's rows that outlived the lease without a live claim
+  private static final String SELECT_CLAIMABLE_SQL =
+      "SELECT o.channel_id, o.message_id, m.sender_user_id, m.sent_at, m.body, m.seq,"
+          + " o.origin_session_id"
+          + " FROM message_outbox o"
+          + " JOIN messages m ON m.channel_id = o.channel_id AND m.message_id = o.message_id"
+          + " WHERE (o.claimed_at IS NULL AND o.node_id = ?)"
+          + " OR (o.created_at < now() - make_interval(secs => ?)"
+          + " AND (o.claimed_at IS NULL OR o.claimed_at < now() - make_interval(secs => ?)))"
+          + " ORDER BY o.created_at"
+          + " LIMIT ?";
+  // Compare-and-set on the lease: a row another relay claimed first updates nothing. Citus does
+  // not allow SELECT ... FOR UPDATE across shards, so rows are claimed one single-shard update each
+  private static final String CLAIM_SQL =
+      "UPDATE message_outbox SET claimed_by = ?, claimed_at = now()"
+          + " WHERE channel_id = ? AND message_id = ?"
+          + " AND (claimed_at IS NULL OR claimed_at < now() - make_interval(secs => ?))";
+  private static final String DELETE_RELAYED_SQL =
+      "DELETE FROM message_outbox WHERE channel_id = ? AND message_id = ?";
+  private static final Logger LOG = LoggerFactory.getLogger(OutboxRelay.class);
+
+  private final DataSource dataSource;
+  private final FanoutBus fanoutBus;
+  private final MessageLatencyTracker latencyTracker;
+  private final String nodeId;
+  private final int batchSize;
+  private final double leaseSeconds;
+
+  public OutboxRelay(
+      DataSource dataSource,
+      FanoutBus fanoutBus,
+      MessageLatencyTracker latencyTracker,
+      @Value("${messaging.node-id:local}") String nodeId,
+      @Value("${messaging.outbox.relay-batch-size:500}") int batchSize,
+      @Value("${messaging.outbox.lease:30s}") Duration lease) {
+    this.dataSource = dataSource;
+    this.fanoutBus = fanoutBus;
+    this.latencyTracker = latencyTracker;
+    this.nodeId = nodeId;
+    this.batchSize = batchSize;
+    this.leaseSeconds = lease.toMillis() / 1000.0;
+  }
+
+  @Scheduled(fixedDelay = "${messaging.outbox.poll-interval:200ms}")
+  public void relayPending() {
+    try {
+      List<MessageRecord> pending = claim(fetchClaimable());
+      if (pending.isEmpty()) return;
+      StringBuilder buffer = new StringBuilder();
+      for (MessageRecord record : pending) {
+        FanoutMessage message = fanoutMessage(record, buffer);
+        fanoutBus.publish(message);
+        latencyTracker.record(
+            Stage.PUBLISHED, message.receivedAtMicros(), message.channelId(), message.messageId());
+      }
+      deleteRelayed(pending);
+      LOG.debug("Relayed {} outbox messages", pending.size());
+    } catch (SQLException e) {
+      LOG.error("Outbox relay failed for node {}", nodeId, e);
+    }
+  }
+
+  /** The fanout form of a stored message. */
+  public static FanoutMessage fanoutMessage(MessageRecord record) {
+    return fanoutMessage(record, new StringBuilder());
+  }
+
+  private static FanoutMessage fanoutMessage(MessageRecord record, StringBuilder buffer) {
+    return new FanoutMessage(
+        FanoutMessage.Kind.MESSAGE,
+        record.senderUserId().toString(),
+        record.originSessionId(),
+        record.channelId().toString(),
+        MessagingServer.buildPayload(record, buffer),
+        record.messageId().toString(),
+        record.seq(),
+        // sentAt is the receive time of the sender's frame
+        MessageLatencyTracker.epochMicros(record.sentAt()));
+  }
+
+  private List<MessageRecord> fetchClaimable() throws SQLException {
+    List<MessageRecord> pending = new ArrayList<>();
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(SELECT_CLAIMABLE_SQL)) {
+      stmt.setString(1, nodeId);
+      stmt.setDouble(2, leaseSeconds);
+      stmt.setDouble(3, leaseSeconds);
+      stmt.setInt(4, batchSize);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          pending.add(
+              new MessageRecord(
+                  rs.getObject(1, UUID.class),
+                  rs.getObject(2, UUID.class),
+                  rs.getObject(3, UUID.class),
+                  rs.getObject(4, OffsetDateTime.class).toInstant(),
+                  rs.getString(5),
+                  rs.getLong(6),
+                  rs.getString(7)));
+        }
+      }
+    }
+    return pending;
+  }
+
+  /** Takes the lease on each row and returns the records whose lease this node now holds. */
+  private List<MessageRecord> claim(List<MessageRecord> claimable) throws SQLException {
+    if (claimable.isEmpty()) return claimable;
+    int[] updated;
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(CLAIM_SQL)) {
+      for (MessageRecord record : claimable) {
+        stmt.setString(1, nodeId);
+        stmt.setObject(2, record.channelId());
+        stmt.setObject(3, record.messageId());
+        stmt.setDouble(4, leaseSeconds);
+        stmt.addBatch();
+      }
+      updated = stmt.executeBatch();
+    }
+    List<MessageRecord> claimed = new ArrayList<>(claimable.size());
+    for (int i = 0; i < updated.length; i++) {
+      if (updated[i] > 0) claimed.add(claimable.get(i));
+    }
+    return claimed;
+  }
+
+  private void deleteRelayed(List<MessageRecord> relayed) throws SQLException {
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(DELETE_RELAYED_SQL)) {
+      for (MessageRecord record : relayed) {
+        stmt.setObject(1, record.channelId());
+        stmt.setObject(2, record.messageId());
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package messaging.presence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.scheduling.annotation.Scheduled;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pings every session once per {@code ping-interval} and closes those that did not answer the
+ * previous ping, so a peer that vanished without a close (a dropped mobile network, a sleeping
+ * laptop) goes offline within two intervals rather than when TCP finally gives up. Closing it
+ * removes the session from the registry, which is what takes the user offline for {@link
+ * PresenceTracker}.
+ *
+ * <p>Sessions wait for their next ping in a {@link TimerWheel} advanced by one scheduled task, so
+ * tens of thousands of sessions cost one list entry each rather than a scheduled task each. With
+ * presence disabled no session is tracked.
+ */
+@Singleton
+public class LivenessMonitor {
+
+  /** Application close code for sessions that stopped answering pings. */
+  public static final int PING_TIMEOUT_CLOSE_CODE = 4009;
+
+  private static final String ATTR_LIVENESS = "liveness";
+  private static final byte[] PING = {'p'};
+  private static final Logger LOG = LoggerFactory.getLogger(LivenessMonitor.class);
+
+  /** A tracked session; pings and pongs only ever flip its flag. */
+  private static final class Liveness {
+    final WebSocketSession session;
+    volatile boolean awaitingPong;
+
+    Liveness(WebSocketSession session) {
+      this.session = session;
+    }
+  }
+
+  private final boolean enabled;
+  private final TimerWheel<Liveness> wheel;
+  private final int pingIntervalTicks;
+  private final Counter pings;
+  private final Counter timeouts;
+
+  public LivenessMonitor(PresenceConfiguration config, MeterRegistry meterRegistry) {
+    this.enabled = config.isEnabled();
+    long ticks = config.getPingInterval().toMillis() / config.getWheelTick().toMillis();
+    this.pingIntervalTicks = (int) Math.max(1, ticks);
+    this.wheel = new TimerWheel<>(pingIntervalTicks);
+    this.pings =
+        Counter.builder("messaging.presence.pings")
+            .description("Liveness pings sent to sessions")
+            .register(meterRegistry);
+    this.timeouts =
+        Counter.builder("messaging.presence.ping.timeouts")
+            .description("Sessions closed for not answering a ping")
+            .register(meterRegistry);
+    Gauge.builder("messaging.presence.tracked", wheel, TimerWheel::size)
+        .description("Sessions waiting for their next liveness ping")
+        .register(meterRegistry);
+  }
+
+  /** Starts pinging the session, if presence is enabled; it is dropped once it closes. */
+  public void track(WebSocketSession session) {
+    if (!enabled) return;
+    Liveness liveness = new Liveness(session);
+    session.put(ATTR_LIVENESS, liveness);
+    wheel.schedule(liveness, pingIntervalTicks);
+  }
+
+  /** Records that the session answered its last ping. */
+  public void onPong(WebSocketSession session) {
+    Liveness liveness = session.get(ATTR_LIVENESS, Liveness.class, null);
+    if (liveness != null) liveness.awaitingPong = false;
+  }
+
+  /** Pings the sessions due this tick, closing any still owing a pong from the last round. */
+  @Scheduled(fixedDelay = "${messaging.presence.wheel-tick:1s}")
+  public void tick() {
+    for (Liveness liveness : wheel.advance()) {
+      WebSocketSession session = liveness.session;
+      if (!session.isOpen()) continue;
+      if (liveness.awaitingPong) {
+        timeouts.increment();
+        LOG.debug("Closing session {} that did not answer a ping", session.getId());
+        session.close(new CloseReason(PING_TIMEOUT_CLOSE_CODE, "Ping timeout"));
+        continue;
+      }
+      liveness.awaitingPong = true;
+      session.sendPingAsync(PING);
+      pings.increment();
+      wheel.schedule(liveness, pingIntervalTicks);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package messaging.presence;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.time.Duration;
+
+/** Presence diffs and ping/pong liveness for websocket sessions. */
+@ConfigurationProperties("messaging.presence")
+public class PresenceConfiguration {
+
+  private boolean enabled = true;
+  private Duration coalesceWindow = Duration.ofMillis(500);
+  private int maxUsersPerDiff = 100;
+  private Duration pingInterval = Duration.ofSeconds(30);
+  private Duration wheelTick = Duration.ofSeconds(1);
+
+  /** Whether presence diffs are published and sessions are pinged for liveness. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * How long presence changes are gathered per channel before one diff is published. A user who
+   * drops and reconnects within it causes no diff at all.
+   */
+  public Duration getCoalesceWindow() {
+    return coalesceWindow;
+  }
+
+  public void setCoalesceWindow(Duration coalesceWindow) {
+    this.coalesceWindow = coalesceWindow;
+  }
+
+  /** Users listed per diff message, online and offline each; larger diffs are split. */
+  public int getMaxUsersPerDiff() {
+    return maxUsersPerDiff;
+  }
+
+  public void setMaxUsersPerDiff(int maxUsersPerDiff) {
+    this.maxUsersPerDiff = maxUsersPerDiff;
+  }
+
+  /**
+   * How often each session is pinged. A session that has not answered one ping by the time the
+   * next is due is closed as dead.
+   */
+  public Duration getPingInterval() {
+    return pingInterval;
+  }
+
+  public void setPingInterval(Duration pingInterval) {
+    this.pingInterval = pingInterval;
+  }
+
+  /** Resolution of the timer wheel that schedules pings; one wheel slot per tick. */
+  public Duration getWheelTick() {
+    return wheelTick;
+  }
+
+  public void setWheelTick(Duration wheelTick) {
+    this.wheelTick = wheelTick;
+  }
+}
@@ -0,0 +1,126 @@
+package messaging.presence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import messaging.ConnectionRegistry;
+import messaging.fanout.FanoutBus;
+import messaging.fanout.FanoutMessage;
+import messaging.protocol.JsonEnvelopeWriter;
+
+/**
+ * Online status per channel. Whenever a user comes online or goes offline in a channel on this
+ * node (their first session opens or their last one closes, or they join or leave the channel
+ * while connected) the change is noted, and once per {@code coalesce-window} each channel with
+ * changes gets one diff published on the {@link FanoutBus}, e.g. {@code
+ * {"type":"presence","channelId":"...","online":["u1"],"offline":["u2"]}}. Only users whose status
+ * actually differs from the start of the window are listed, so connection churn, such as a flaky
+ * network reconnecting or a device replacing another, costs nothing, and a burst of joins costs
+ * one message per channel rather than one per join.
+ *
+ * <p>Envoy routes all of a user's sessions to the same node by {@code X-User-Id}, so the node a
+ * user is connected to is the one that speaks for their presence. Clients build the initial member
+ * list from their own channel state and apply diffs on top. Diffs are published as {@link
+ * FanoutMessage.Kind#PRESENCE} and reach a channel's members on each node through that node's
+ * channel index, which membership messages on the bus and member-set reloads keep current.
+ */
+@Context // Eager, so the registry has its listener before the first session opens
+public class PresenceTracker {
+
+  private final ConnectionRegistry registry;
+  private final FanoutBus fanoutBus;
+  private final boolean enabled;
+  private final int maxUsersPerDiff;
+  // channelId -> userId -> whether they were online in it when the window started
+  private final ConcurrentHashMap<String, Map<String, Boolean>> pending = new ConcurrentHashMap<>();
+  private final Counter changes;
+  private final Counter coalesced;
+  private final Counter diffs;
+
+  public PresenceTracker(
+      ConnectionRegistry registry,
+      FanoutBus fanoutBus,
+      PresenceConfiguration config,
+      MeterRegistry meterRegistry) {
+    this.registry = registry;
+    this.fanoutBus = fanoutBus;
+    this.enabled = config.isEnabled();
+    this.maxUsersPerDiff = config.getMaxUsersPerDiff();
+    this.changes =
+        Counter.builder("messaging.presence.changes")
+            .description("Users coming online or going offline in a channel on this node")
+            .register(meterRegistry);
+    this.coalesced =
+        Counter.builder("messaging.presence.coalesced")
+            .description("Users left out of a diff because their status ended where it started")
+            .register(meterRegistry);
+    this.diffs =
+        Counter.builder("messaging.presence.diffs")
+            .description("Presence diff messages published")
+            .register(meterRegistry);
+  }
+
+  @PostConstruct
+  void listen() {
+    if (enabled) registry.setPresenceListener(this::onPresenceChanged);
+  }
+
+  void onPresenceChanged(String channelId, String userId, boolean online) {
+    changes.increment();
+    // Only the first change in the window is kept: the status before it is what the diff is against
+    pending.compute(
+        channelId,
+        (cid, users) -> {
+          Map<String, Boolean> before = users != null ? users : new LinkedHashMap<>();
+          before.putIfAbsent(userId, !online);
+          return before;
+        });
+  }
+
+  /** Publishes one diff per channel whose members' status changed since the last flush. */
+  @Scheduled(fixedDelay = "${messaging.presence.coalesce-window:500ms}")
+  public void flush() {
+    for (String channelId : pending.keySet()) {
+      // Removed before reading, so changes arriving meanwhile start the next window
+      Map<String, Boolean> before = pending.remove(channelId);
+      if (before == null) continue;
+      List<String> online = new ArrayList<>();
+      List<String> offline = new ArrayList<>();
+      before.forEach(
+          (userId, wasOnline) -> {
+            boolean isOnline = registry.isInChannel(channelId, userId);
+            if (isOnline == wasOnline) {
+              coalesced.increment();
+            } else {
+              (isOnline ? online : offline).add(userId);
+            }
+          });
+      for (int from = 0; from < Math.max(online.size(), offline.size()); from += maxUsersPerDiff) {
+        publish(channelId, slice(online, from), slice(offline, from));
+      }
+    }
+  }
+
+  private List<String> slice(List<String> users, int from) {
+    int to = Math.min(from + maxUsersPerDiff, users.size());
+    return users.subList(Math.min(from, to), to);
+  }
+
+  private void publish(String channelId, List<String> online, List<String> offline) {
+    String payload =
+        JsonEnvelopeWriter.begin("presence")
+            .field("channelId", channelId)
+            .arrayField("online", online)
+            .arrayField("offline", offline)
+            .toJson();
+    fanoutBus.publish(FanoutMessage.presence(channelId, payload));
+    diffs.increment();
+  }
+}
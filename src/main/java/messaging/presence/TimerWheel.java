@@ -0,0 +1,51 @@
+package messaging.presence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel: a ring of slots, one per tick, with a cursor that moves one slot per {@link
+ * #advance()}. An item scheduled {@code n} ticks ahead goes into the slot {@code n} past the cursor
+ * and is handed back when the cursor gets there. Scheduling and firing are O(1) per item, with no
+ * timer task, future or heap entry per item, so it suits one timeout per connection. Items cannot
+ * be cancelled; the caller skips stale ones when they fire.
+ */
+final class TimerWheel<T> {
+
+  private final List<List<T>> slots;
+  private int cursor;
+
+  /** A wheel that can schedule up to {@code maxTicks} ahead. */
+  TimerWheel(int maxTicks) {
+    if (maxTicks < 1) throw new IllegalArgumentException("maxTicks must be positive");
+    slots = new ArrayList<>(maxTicks + 1);
+    for (int i = 0; i <= maxTicks; i++) {
+      slots.add(new ArrayList<>());
+    }
+  }
+
+  /** Schedules {@code item} to fire on the {@code ticks}th call to {@link #advance()} from now. */
+  synchronized void schedule(T item, int ticks) {
+    if (ticks < 1 || ticks >= slots.size()) {
+      throw new IllegalArgumentException("ticks must be between 1 and " + (slots.size() - 1));
+    }
+    slots.get((cursor + ticks) % slots.size()).add(item);
+  }
+
+  /** Moves to the next tick and returns the items due on it. */
+  synchronized List<T> advance() {
+    cursor = (cursor + 1) % slots.size();
+    List<T> due = slots.get(cursor);
+    if (due.isEmpty()) return List.of();
+    slots.set(cursor, new ArrayList<>());
+    return due;
+  }
+
+  synchronized int size() {
+    int size = 0;
+    for (List<T> slot : slots) {
+      size += slot.size();
+    }
+    return size;
+  }
+}
@@ -0,0 +1,17 @@
+package messaging.protocol;
+
+/**
+ * A client frame addressed to a channel, e.g. {@code
+ * {"type":"message","channelId":"...","clientMsgId":"...","body":"..."}}. {@code clientMsgId} is
+ * chosen by the client so it can correlate acks and errors, and may be null. {@code body} is
+ * required for {@code message} frames; {@code cursor} is the last-seen position a {@code resume}
+ * frame asks to continue from; {@code seq} is the sequence number an {@code ack} frame marks the
+ * channel read up to, and 0 on other frames.
+ */
+public record InboundEnvelope(
+    String type, String channelId, String clientMsgId, String body, String cursor, long seq) {
+
+  public static final String TYPE_MESSAGE = "message";
+  public static final String TYPE_RESUME = "resume";
+  public static final String TYPE_ACK = "ack";
+}
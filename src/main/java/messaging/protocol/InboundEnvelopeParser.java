@@ -0,0 +1,97 @@
+package messaging.protocol;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+
+/**
+ * Reads an {@link InboundEnvelope} from a text frame with Jackson's streaming parser: fields are
+ * pulled token by token straight into the envelope, with no intermediate tree or POJO binding.
+ * Unknown fields are skipped so clients can add fields ahead of the server.
+ */
+@Singleton
+public class InboundEnvelopeParser {
+
+  static final String REASON_INVALID = "invalid_envelope";
+  static final String REASON_BODY_TOO_LARGE = "body_too_large";
+
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private final int maxBodyLength;
+
+  public InboundEnvelopeParser(
+      @Value("${messaging.inbound.max-body-length:4096}") int maxBodyLength) {
+    this.maxBodyLength = maxBodyLength;
+  }
+
+  /** True if the frame looks like an envelope rather than legacy plain text. */
+  public static boolean isEnvelope(String frame) {
+    for (int i = 0; i < frame.length(); i++) {
+      char c = frame.charAt(i);
+      if (!Character.isWhitespace(c)) return c == '{';
+    }
+    return false;
+  }
+
+  public InboundEnvelope parse(String frame) {
+    String type = null;
+    String channelId = null;
+    String clientMsgId = null;
+    String body = null;
+    String cursor = null;
+    long seq = 0;
+    try (JsonParser parser = JSON.createParser(frame)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new InvalidEnvelopeException(REASON_INVALID);
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        switch (field) {
+          case "type" -> type = stringValue(parser, value);
+          case "channelId" -> channelId = stringValue(parser, value);
+          case "clientMsgId" -> clientMsgId = stringValue(parser, value);
+          case "cursor" -> cursor = stringValue(parser, value);
+          case "seq" -> seq = longValue(parser, value);
+          case "body" -> {
+            body = stringValue(parser, value);
+            if (body != null && body.length() > maxBodyLength) {
+              throw new InvalidEnvelopeException(REASON_BODY_TOO_LARGE);
+            }
+          }
+          default -> parser.skipChildren();
+        }
+      }
+      if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+        throw new InvalidEnvelopeException(REASON_INVALID);
+      }
+    } catch (IOException e) {
+      throw new InvalidEnvelopeException(REASON_INVALID, e);
+    }
+    if (type == null || channelId == null) {
+      throw new InvalidEnvelopeException(REASON_INVALID);
+    }
+    if (InboundEnvelope.TYPE_MESSAGE.equals(type) && body == null) {
+      throw new InvalidEnvelopeException(REASON_INVALID);
+    }
+    if (InboundEnvelope.TYPE_ACK.equals(type) && seq <= 0) {
+      throw new InvalidEnvelopeException(REASON_INVALID);
+    }
+    return new InboundEnvelope(type, channelId, clientMsgId, body, cursor, seq);
+  }
+
+  private static String stringValue(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_NULL) return null;
+    if (token != JsonToken.VALUE_STRING) throw new InvalidEnvelopeException(REASON_INVALID);
+    return parser.getText();
+  }
+
+  /** An integer field; values that do not fit a long fail to parse and reject the frame. */
+  private static long longValue(JsonParser parser, JsonToken token) throws IOException {
+    if (token != JsonToken.VALUE_NUMBER_INT) throw new InvalidEnvelopeException(REASON_INVALID);
+    return parser.getLongValue();
+  }
+}
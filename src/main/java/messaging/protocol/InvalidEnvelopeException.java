@@ -0,0 +1,17 @@
+package messaging.protocol;
+
+/** Thrown when an inbound frame is not a valid envelope; the message is the reason sent back. */
+public class InvalidEnvelopeException extends RuntimeException {
+
+  public InvalidEnvelopeException(String reason) {
+    super(reason);
+  }
+
+  public InvalidEnvelopeException(String reason, Throwable cause) {
+    super(reason, cause);
+  }
+
+  public String reason() {
+    return getMessage();
+  }
+}
@@ -0,0 +1,134 @@
+package messaging.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.util.Collection;
+
+/**
+ * Streaming writer for the flat JSON envelopes sent to clients, e.g. {@code
+ * {"type":"message","from":"...","text":"..."}}. Values are escaped in a single pass straight into
+ * one buffer, so building a payload allocates only that buffer and the final {@link String} (or
+ * no String at all when written directly into a {@link ByteBuf}).
+ *
+ * <p>Callers that build many envelopes in a row, such as a relay batch or a history page, pass in
+ * a buffer they own and reuse it for each; one-off envelopes use a fresh one. Buffers are not tied
+ * to threads, since most envelopes are built on short-lived virtual threads that would never reuse
+ * one. Obtain a writer with {@code begin}, add fields, and finish with {@link #toJson()} or {@link
+ * #writeTo(ByteBuf)} before beginning the next envelope in the same buffer.
+ */
+public final class JsonEnvelopeWriter {
+
+  private static final int INITIAL_CAPACITY = 256;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final StringBuilder buf;
+
+  private JsonEnvelopeWriter(StringBuilder buf) {
+    this.buf = buf;
+  }
+
+  /** Starts a new envelope with the given {@code type} field in a fresh buffer. */
+  public static JsonEnvelopeWriter begin(String type) {
+    return begin(type, new StringBuilder(INITIAL_CAPACITY));
+  }
+
+  /** Starts a new envelope in {@code buffer}, discarding whatever it held. */
+  public static JsonEnvelopeWriter begin(String type, StringBuilder buffer) {
+    buffer.setLength(0);
+    buffer.append("{\"type\":");
+    appendString(buffer, type);
+    return new JsonEnvelopeWriter(buffer);
+  }
+
+  /** Adds a string field; a null value is written as JSON {@code null}. */
+  public JsonEnvelopeWriter field(String name, CharSequence value) {
+    appendName(name);
+    if (value == null) {
+      buf.append("null");
+    } else {
+      appendString(buf, value);
+    }
+    return this;
+  }
+
+  public JsonEnvelopeWriter field(String name, long value) {
+    appendName(name);
+    buf.append(value);
+    return this;
+  }
+
+  /** Adds a field holding an array of strings. */
+  public JsonEnvelopeWriter arrayField(String name, Collection<? extends CharSequence> values) {
+    appendName(name);
+    buf.append('[');
+    boolean first = true;
+    for (CharSequence value : values) {
+      if (!first) buf.append(',');
+      appendString(buf, value);
+      first = false;
+    }
+    buf.append(']');
+    return this;
+  }
+
+  /**
+   * Adds a field whose value is already serialized JSON (e.g. a nested object), copied verbatim.
+   */
+  public JsonEnvelopeWriter rawField(String name, CharSequence json) {
+    appendName(name);
+    buf.append(json);
+    return this;
+  }
+
+  /** Closes the envelope and returns it as a string. */
+  public String toJson() {
+    buf.append('}');
+    return buf.toString();
+  }
+
+  /** Closes the envelope and UTF-8 encodes it into {@code out}, returning the bytes written. */
+  public int writeTo(ByteBuf out) {
+    buf.append('}');
+    return ByteBufUtil.writeUtf8(out, buf);
+  }
+
+  private void appendName(String name) {
+    buf.append(',');
+    appendString(buf, name);
+    buf.append(':');
+  }
+
+  /**
+   * Appends {@code value} as a quoted JSON string. Runs of characters that need no escaping are
+   * copied in bulk; quotes, backslashes, control characters and the JavaScript line separators
+   * U+2028/U+2029 are escaped.
+   */
+  static void appendString(StringBuilder out, CharSequence value) {
+    out.append('"');
+    int len = value.length();
+    int runStart = 0;
+    for (int i = 0; i < len; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') continue;
+      out.append(value, runStart, i);
+      switch (c) {
+        case '"' -> out.append("\\\"");
+        case '\\' -> out.append("\\\\");
+        case '\n' -> out.append("\\n");
+        case '\r' -> out.append("\\r");
+        case '\t' -> out.append("\\t");
+        case '\b' -> out.append("\\b");
+        case '\f' -> out.append("\\f");
+        default ->
+            out.append("\\u")
+                .append(HEX[(c >> 12) & 0xF])
+                .append(HEX[(c >> 8) & 0xF])
+                .append(HEX[(c >> 4) & 0xF])
+                .append(HEX[c & 0xF]);
+      }
+      runStart = i + 1;
+    }
+    out.append(value, runStart, len);
+    out.append('"');
+  }
+}
@@ -0,0 +1,67 @@
+package messaging.ratelimit;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock-free token bucket. Rather than a token count and a refill time, it keeps the single instant
+ * at which the bucket would be full again (the generic cell rate algorithm), so taking a permit is
+ * one compare-and-set and an idle bucket costs nothing to refill. The state is a plain field
+ * updated through a {@link VarHandle}, so a bucket is one small object, cheap enough to keep one
+ * per connected user. Times are {@link System#nanoTime()} values passed in by the caller.
+ */
+public final class TokenBucket {
+
+  private static final VarHandle FULL_AT;
+
+  static {
+    try {
+      FULL_AT = MethodHandles.lookup().findVarHandle(TokenBucket.class, "fullAt", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final long intervalNanos;
+  // How far ahead of now the full-again instant may be while a permit is still available
+  private final long toleranceNanos;
+  private volatile long fullAt;
+
+  /**
+   * A full bucket refilling at {@code permitsPerSecond} that holds at most {@code burst} permits.
+   */
+  public TokenBucket(double permitsPerSecond, int burst, long nowNanos) {
+    if (permitsPerSecond <= 0 || burst < 1) {
+      throw new IllegalArgumentException("Rate and burst must be positive");
+    }
+    this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+    this.toleranceNanos = intervalNanos * (burst - 1);
+    this.fullAt = nowNanos;
+  }
+
+  /**
+   * Takes a permit if one is available.
+   *
+   * @return 0 if a permit was taken, otherwise how many nanoseconds until one will be
+   */
+  public long tryAcquire(long nowNanos) {
+    while (true) {
+      long current = fullAt;
+      long base = current - nowNanos > 0 ? current : nowNanos;
+      long wait = base - nowNanos - toleranceNanos;
+      if (wait > 0) return wait;
+      if (FULL_AT.compareAndSet(this, current, base + intervalNanos)) return 0;
+    }
+  }
+
+  /** Nanoseconds until the bucket is full again if no permits are taken, or 0 if it is full. */
+  public long nanosUntilFull(long nowNanos) {
+    return Math.max(0, fullAt - nowNanos);
+  }
+
+  /** Nanoseconds between permits at the sustained rate. */
+  public long intervalNanos() {
+    return intervalNanos;
+  }
+}
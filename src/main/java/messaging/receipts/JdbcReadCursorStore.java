@@ -0,0 +1,100 @@
+package messaging.receipts;
+
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import javax.sql.DataSource;
+import messaging.persistence.MessagePersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ReadCursorStore} on {@code read_cursors}. Cursors are upserted with multi-row inserts
+ * that keep the greater of the stored and new positions. Read states join the user's memberships
+ * with {@code channel_sequences} and {@code read_cursors}; all three are distributed by {@code
+ * channel_id}, so the join runs shard-locally and never touches {@code messages}.
+ */
+@Singleton
+@Requires(beans = DataSource.class)
+public class JdbcReadCursorStore implements ReadCursorStore {
+
+  // Keeps bind parameters per statement well under the Postgres limit of 32767
+  static final int MAX_ROWS_PER_STATEMENT = 1_000;
+  private static final String UPSERT_PREFIX =
+      "INSERT INTO read_cursors (channel_id, user_id, last_read_seq) VALUES ";
+  private static final String CURSOR_ROW = "(?, ?, ?)";
+  private static final String UPSERT_SUFFIX =
+      " ON CONFLICT (channel_id, user_id) DO UPDATE"
+          + " SET last_read_seq = GREATEST(read_cursors.last_read_seq, EXCLUDED.last_read_seq),"
+          + " updated_at = now()";
+  private static final String SELECT_READ_STATES_SQL =
+      "SELECT m.channel_id, COALESCE(s.last_seq, 0), COALESCE(r.last_read_seq, 0)"
+          + " FROM channel_members m"
+          + " LEFT JOIN channel_sequences s ON s.channel_id = m.channel_id"
+          + " LEFT JOIN read_cursors r ON r.channel_id = m.channel_id AND r.user_id = m.user_id"
+          + " WHERE m.user_id = ?";
+  private static final Logger LOG = LoggerFactory.getLogger(JdbcReadCursorStore.class);
+
+  private final DataSource dataSource;
+
+  public JdbcReadCursorStore(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  @Override
+  public void save(Collection<ReadCursor> cursors) {
+    if (cursors.isEmpty()) return;
+    List<ReadCursor> rows = List.copyOf(cursors);
+    try (Connection conn = dataSource.getConnection()) {
+      for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+        upsert(conn, rows.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, rows.size())));
+      }
+    } catch (SQLException e) {
+      LOG.error("Failed to save {} read cursors", rows.size(), e);
+      throw new MessagePersistenceException("Failed to save read cursors", e);
+    }
+  }
+
+  @Override
+  public List<ReadState> readStates(UUID userId) {
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(SELECT_READ_STATES_SQL)) {
+      stmt.setObject(1, userId);
+      List<ReadState> states = new ArrayList<>();
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          states.add(new ReadState(rs.getObject(1, UUID.class), rs.getLong(2), rs.getLong(3)));
+        }
+      }
+      return states;
+    } catch (SQLException e) {
+      LOG.error("Failed to read read states for userId {}", userId, e);
+      throw new MessagePersistenceException("Failed to read read states for " + userId, e);
+    }
+  }
+
+  private static void upsert(Connection conn, List<ReadCursor> rows) throws SQLException {
+    StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+    for (int i = 0; i < rows.size(); i++) {
+      if (i > 0) sql.append(", ");
+      sql.append(CURSOR_ROW);
+    }
+    sql.append(UPSERT_SUFFIX);
+    try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+      int param = 1;
+      for (ReadCursor cursor : rows) {
+        stmt.setObject(param++, cursor.channelId());
+        stmt.setObject(param++, cursor.userId());
+        stmt.setLong(param++, cursor.lastReadSeq());
+      }
+      stmt.executeUpdate();
+    }
+  }
+}
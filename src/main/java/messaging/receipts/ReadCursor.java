@@ -0,0 +1,6 @@
+package messaging.receipts;
+
+import java.util.UUID;
+
+/** A user's read position in a channel: every message with {@code seq <= lastReadSeq} is read. */
+public record ReadCursor(UUID channelId, UUID userId, long lastReadSeq) {}
@@ -0,0 +1,21 @@
+package messaging.receipts;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/** Durable read cursors and the channel heads unread counts are derived from. May block. */
+public interface ReadCursorStore {
+
+  /**
+   * Stores the cursors. A stored cursor only ever moves forward, so saving an older position than
+   * the one stored is a no-op and a batch may safely be saved again.
+   */
+  void save(Collection<ReadCursor> cursors);
+
+  /**
+   * The channel head and stored cursor of every channel the user is a member of. Channels with no
+   * messages, or that the user has never acked, report 0 for the missing side.
+   */
+  List<ReadState> readStates(UUID userId);
+}
@@ -0,0 +1,198 @@
+package messaging.receipts;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import messaging.execution.ExecutionFactory;
+import messaging.history.MessageHistory;
+import messaging.persistence.MessagePersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates client acks into read cursors and writes them to the {@link ReadCursorStore} in
+ * periodic batches. Acks only ever raise the pending cursor of their (user, channel) pair, so a
+ * client acking every message it renders costs one map update per ack and one row per pair per
+ * {@code flush-interval}, however many acks arrived in between. A failed flush keeps its cursors
+ * pending for the next one; a cursor acked again during a flush stays pending with the newer seq.
+ * Flushes run on the {@link ExecutionFactory#DATABASE} executor, one at a time, and clamp each
+ * cursor to its channel's head so a client cannot mark messages read that do not exist yet.
+ *
+ * <p>Pending cursors are lost if the node dies before flushing them. Clients re-ack as they read,
+ * so this only ever under-reports reading by one interval.
+ */
+@Singleton
+public class ReadCursorTracker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReadCursorTracker.class);
+
+  private record Key(UUID channelId, UUID userId) {}
+
+  // Absent when no datasource is configured (e.g. tests), in which case acks are not kept
+  @Nullable private final ReadCursorStore store;
+  @Nullable private final MessageHistory history;
+  private final Executor databaseExecutor;
+  private final int maxPending;
+  private final Map<Key, Long> pending = new ConcurrentHashMap<>();
+  private final AtomicBoolean flushing = new AtomicBoolean();
+  private final Counter acks;
+  private final Counter dropped;
+  private final Counter clamped;
+  private final Counter flushFailures;
+  private final DistributionSummary flushSize;
+
+  public ReadCursorTracker(
+      @Nullable ReadCursorStore store,
+      @Nullable MessageHistory history,
+      @Named(ExecutionFactory.DATABASE) Executor databaseExecutor,
+      MeterRegistry meterRegistry,
+      @Value("${messaging.read-cursors.max-pending:100000}") int maxPending) {
+    this.store = store;
+    this.history = history;
+    this.databaseExecutor = databaseExecutor;
+    this.maxPending = maxPending;
+    this.acks =
+        Counter.builder("messaging.receipts.acks")
+            .description("Read acks received from clients")
+            .register(meterRegistry);
+    this.dropped =
+        Counter.builder("messaging.receipts.dropped")
+            .description("Acks for new cursors dropped because max-pending cursors were waiting")
+            .register(meterRegistry);
+    this.clamped =
+        Counter.builder("messaging.receipts.clamped")
+            .description("Cursors acked past their channel's head and written at the head instead")
+            .register(meterRegistry);
+    this.flushFailures =
+        Counter.builder("messaging.receipts.flush.failures")
+            .description("Cursor flushes that failed and were left for the next interval")
+            .register(meterRegistry);
+    this.flushSize =
+        DistributionSummary.builder("messaging.receipts.flush.size")
+            .description("Cursors written per flush")
+            .register(meterRegistry);
+    Gauge.builder("messaging.receipts.pending", pending, Map::size)
+        .description("Cursors waiting to be flushed")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Records that the user has read the channel up to {@code seq}. Never blocks.
+   *
+   * @throws IllegalArgumentException if either id is not a UUID
+   */
+  public void ack(String userId, String channelId, long seq) {
+    acks.increment();
+    if (store == null) return;
+    Key key = new Key(UUID.fromString(channelId), UUID.fromString(userId));
+    // Cursors already pending can still advance; only new ones are refused while the store lags
+    if (pending.size() >= maxPending && !pending.containsKey(key)) {
+      dropped.increment();
+      return;
+    }
+    pending.merge(key, seq, Math::max);
+  }
+
+  /** Hands the pending cursors to the database executor, unless a flush is still running. */
+  @Scheduled(fixedDelay = "${messaging.read-cursors.flush-interval:1s}")
+  public void flush() {
+    if (store == null || pending.isEmpty() || !flushing.compareAndSet(false, true)) return;
+    try {
+      databaseExecutor.execute(
+          () -> {
+            try {
+              write();
+            } finally {
+              flushing.set(false);
+            }
+          });
+    } catch (RuntimeException e) {
+      flushing.set(false);
+      throw e;
+    }
+  }
+
+  /** Writes out whatever is still pending on shutdown. */
+  @PreDestroy
+  void close() {
+    if (store != null && !pending.isEmpty()) write();
+  }
+
+  private void write() {
+    Map<Key, Long> acked = new HashMap<>(pending);
+    List<ReadCursor> batch = new ArrayList<>(acked.size());
+    try {
+      Map<UUID, Long> heads = heads(acked.keySet());
+      acked.forEach(
+          (key, seq) -> {
+            long head = heads == null ? Long.MAX_VALUE : heads.getOrDefault(key.channelId(), 0L);
+            long readSeq = Math.min(seq, head);
+            if (readSeq < seq) clamped.increment();
+            // Nothing to mark read in a channel with no messages yet
+            if (readSeq > 0) batch.add(new ReadCursor(key.channelId(), key.userId(), readSeq));
+          });
+      store.save(batch);
+    } catch (MessagePersistenceException e) {
+      flushFailures.increment();
+      LOG.warn("Keeping {} read cursors for the next flush", acked.size());
+      return;
+    }
+    // Leaves an entry if its cursor advanced while the batch was being written
+    acked.forEach(pending::remove);
+    flushSize.record(batch.size());
+  }
+
+  /** The last seq of every acked channel, in one read; null when there is no history. */
+  @Nullable
+  private Map<UUID, Long> heads(Set<Key> keys) {
+    if (history == null) return null;
+    Set<UUID> channelIds = new HashSet<>();
+    keys.forEach(key -> channelIds.add(key.channelId()));
+    return history.heads(channelIds);
+  }
+
+  /**
+   * Unread messages per channel the user is a member of, with this node's pending acks applied on
+   * top of the stored cursors. Served by {@link UnreadEndpoint}; the store is read on the database
+   * executor.
+   */
+  public CompletableFuture<Map<UUID, Long>> unreadCounts(UUID userId) {
+    if (store == null) {
+      return CompletableFuture.failedFuture(
+          new IllegalStateException("No read cursor store is configured"));
+    }
+    return CompletableFuture.supplyAsync(() -> store.readStates(userId), databaseExecutor)
+        .thenApply(states -> applyPending(userId, states));
+  }
+
+  private Map<UUID, Long> applyPending(UUID userId, List<ReadState> states) {
+    Map<UUID, Long> unread = new LinkedHashMap<>();
+    for (ReadState state : states) {
+      Long pendingSeq = pending.get(new Key(state.channelId(), userId));
+      if (pendingSeq != null && pendingSeq > state.lastReadSeq()) {
+        state = new ReadState(state.channelId(), state.lastSeq(), pendingSeq);
+      }
+      unread.put(state.channelId(), state.unread());
+    }
+    return unread;
+  }
+}
@@ -0,0 +1,12 @@
+package messaging.receipts;
+
+import java.util.UUID;
+
+/** A user's position in a channel against the channel's head, both as sequence numbers. */
+public record ReadState(UUID channelId, long lastSeq, long lastReadSeq) {
+
+  /** Messages after the cursor; never below 0, since a pending ack may not be capped yet. */
+  public long unread() {
+    return Math.max(0, lastSeq - lastReadSeq);
+  }
+}
@@ -0,0 +1,39 @@
+package messaging.receipts;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.management.endpoint.annotation.Endpoint;
+import io.micronaut.management.endpoint.annotation.Read;
+import io.micronaut.management.endpoint.annotation.Selector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@code GET /unread/{userId}} returns the user's unread message count per channel they are a
+ * member of, keyed by channel id, for whatever renders badges or sends notifications. Counts come
+ * from the stored read cursors and channel heads, with this node's pending acks applied. Sensitive
+ * by default: enable it only where it is not reachable through Envoy.
+ */
+@Endpoint(id = "unread", defaultSensitive = true)
+@Requires(beans = ReadCursorStore.class)
+public class UnreadEndpoint {
+
+  private final ReadCursorTracker readCursors;
+
+  public UnreadEndpoint(ReadCursorTracker readCursors) {
+    this.readCursors = readCursors;
+  }
+
+  @Read
+  public CompletableFuture<Map<String, Long>> unread(@Selector String userId) {
+    return readCursors
+        .unreadCounts(UUID.fromString(userId))
+        .thenApply(
+            unread -> {
+              Map<String, Long> counts = new LinkedHashMap<>();
+              unread.forEach((channelId, count) -> counts.put(channelId.toString(), count));
+              return counts;
+            });
+  }
+}
@@ -0,0 +1,48 @@
+package messaging.tracing;
+
+import io.micronaut.core.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks one fanout of a message to this node's recipients and records the {@code delivered}
+ * stage when the last recipient's write settles, i.e. completes, fails or is dropped. The count
+ * starts at one so that writes settling while recipients are still being added cannot finish the
+ * trace early; {@link #dispatched()} releases that hold once every recipient has been added.
+ */
+public final class DeliveryTrace {
+
+  private final MessageLatencyTracker tracker;
+  private final long receivedAtMicros;
+  private final String channelId;
+  @Nullable private final String messageId;
+  private final AtomicInteger pending = new AtomicInteger(1);
+
+  DeliveryTrace(
+      MessageLatencyTracker tracker,
+      long receivedAtMicros,
+      String channelId,
+      @Nullable String messageId) {
+    this.tracker = tracker;
+    this.receivedAtMicros = receivedAtMicros;
+    this.channelId = channelId;
+    this.messageId = messageId;
+  }
+
+  /** Called before each recipient's write is queued. */
+  public void addRecipient() {
+    pending.incrementAndGet();
+  }
+
+  /** Called exactly once per added recipient, whatever became of its write. */
+  public void recipientSettled() {
+    if (pending.decrementAndGet() == 0) {
+      tracker.record(
+          MessageLatencyTracker.Stage.DELIVERED, receivedAtMicros, channelId, messageId);
+    }
+  }
+
+  /** Called once after the last recipient has been added. */
+  public void dispatched() {
+    recipientSettled();
+  }
+}
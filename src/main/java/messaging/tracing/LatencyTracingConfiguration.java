@@ -0,0 +1,29 @@
+package messaging.tracing;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+/** Switches for {@link MessageLatencyTracker}. */
+@ConfigurationProperties("messaging.tracing")
+public class LatencyTracingConfiguration {
+
+  private boolean enabled = true;
+  private boolean spansEnabled = false;
+
+  /** Record per-stage latency histograms for every channel message. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Also export one OpenTelemetry span per stage; needs an exporter configured under otel.*. */
+  public boolean isSpansEnabled() {
+    return spansEnabled;
+  }
+
+  public void setSpansEnabled(boolean spansEnabled) {
+    this.spansEnabled = spansEnabled;
+  }
+}
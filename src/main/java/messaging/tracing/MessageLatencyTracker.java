@@ -0,0 +1,146 @@
+package messaging.tracing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.core.annotation.Nullable;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanId;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceId;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import jakarta.inject.Singleton;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency of channel messages, measured from the moment the sender's frame reached
+ * {@code onSessionMessage}. That receive time is stamped once, becomes the stored message's {@code
+ * sentAt} and travels inside the fanout message, so every later stage, on any node, records the
+ * time elapsed since it:
+ *
+ * <ul>
+ *   <li>{@code persisted}: the message and its outbox row are committed
+ *   <li>{@code published}: the outbox relay hands it to the fanout bus
+ *   <li>{@code fanout}: a node receives it from the bus
+ *   <li>{@code delivered}: the write to the node's last local recipient has completed
+ * </ul>
+ *
+ * <p>Stages recorded on a node other than the sender's include the clock skew between the two.
+ * Each stage is a timer backed by Micrometer's HDR-style bucketed histogram, so recording is a few
+ * atomic increments and can stay on for every message; percentiles are published alongside the
+ * histogram buckets. With {@code spans-enabled}, each stage is also exported as an OpenTelemetry
+ * span starting at the receive time, tagged with the channel and message id. The spans of one
+ * message share a parent context derived from its id, so every stage, recorded on whichever node,
+ * lands in the same trace without a context having to travel with the message. That parent is
+ * never exported itself, so trace views show the stages under a placeholder root.
+ */
+@Singleton
+public class MessageLatencyTracker {
+
+  /** Pipeline stages, in the order a message passes through them. */
+  public enum Stage {
+    PERSISTED,
+    PUBLISHED,
+    FANOUT,
+    DELIVERED;
+
+    String tagValue() {
+      return name().toLowerCase();
+    }
+  }
+
+  private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+  private final boolean enabled;
+  @Nullable private final Tracer tracer;
+
+  public MessageLatencyTracker(
+      LatencyTracingConfiguration config,
+      MeterRegistry meterRegistry,
+      @Nullable Tracer tracer) {
+    this.enabled = config.isEnabled();
+    this.tracer = config.isSpansEnabled() ? tracer : null;
+    for (Stage stage : Stage.values()) {
+      timers.put(
+          stage,
+          Timer.builder("messaging.latency")
+              .description("Time since the message's frame was received, by pipeline stage")
+              .tag("stage", stage.tagValue())
+              .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+              .publishPercentileHistogram()
+              .register(meterRegistry));
+    }
+  }
+
+  /** Wall-clock time in epoch microseconds, comparable across nodes and with stored cursors. */
+  public static long nowMicros() {
+    return epochMicros(Instant.now());
+  }
+
+  public static long epochMicros(Instant instant) {
+    return Math.addExact(
+        Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1_000);
+  }
+
+  /**
+   * Records that a message received at {@code receivedAtMicros} has reached {@code stage}. {@code
+   * messageId} is null for messages that were never stored, whose spans are then left unparented.
+   */
+  public void record(
+      Stage stage, long receivedAtMicros, String channelId, @Nullable String messageId) {
+    if (!enabled || receivedAtMicros <= 0) return;
+    long endMicros = nowMicros();
+    // A sender node's clock running ahead of ours would otherwise read as negative latency
+    timers.get(stage).record(Math.max(0, endMicros - receivedAtMicros), TimeUnit.MICROSECONDS);
+    if (tracer != null) exportSpan(stage, receivedAtMicros, endMicros, channelId, messageId);
+  }
+
+  /**
+   * Starts tracking delivery of one message to this node's recipients, or returns null when
+   * tracing is off or the receive time is unknown.
+   */
+  @Nullable
+  public DeliveryTrace startDelivery(
+      long receivedAtMicros, String channelId, @Nullable String messageId) {
+    if (!enabled || receivedAtMicros <= 0) return null;
+    return new DeliveryTrace(this, receivedAtMicros, channelId, messageId);
+  }
+
+  private void exportSpan(
+      Stage stage, long startMicros, long endMicros, String channelId, @Nullable String messageId) {
+    SpanBuilder span =
+        tracer
+            .spanBuilder("message." + stage.tagValue())
+            .setStartTimestamp(startMicros, TimeUnit.MICROSECONDS)
+            .setAttribute("messaging.destination.name", channelId);
+    if (messageId != null) {
+      span.setParent(Context.root().with(Span.wrap(messageContext(messageId))))
+          .setAttribute("messaging.message.id", messageId);
+    } else {
+      span.setNoParent();
+    }
+    span.startSpan().end(endMicros, TimeUnit.MICROSECONDS);
+  }
+
+  /**
+   * The parent shared by every stage span of a message: the trace id is the message id's 128 bits
+   * and the span id folds them into 64, so any node derives the same context.
+   */
+  static SpanContext messageContext(String messageId) {
+    UUID id = UUID.fromString(messageId);
+    long high = id.getMostSignificantBits();
+    long low = id.getLeastSignificantBits();
+    long spanId = high ^ low;
+    return SpanContext.createFromRemoteParent(
+        TraceId.fromLongs(high, low),
+        SpanId.fromLong(spanId != 0 ? spanId : 1),
+        TraceFlags.getSampled(),
+        TraceState.getDefault());
+  }
+}
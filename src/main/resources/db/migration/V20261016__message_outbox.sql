@@ -0,0 +1,21 @@
+/**
+  Transactional outbox for chat messages. An outbox row is inserted in the same transaction as its
+  message and deleted once a relay has published it for fanout. node_id records the node that
+  wrote it; see V20261020 for which relay claims a row.
+
+  The table is co-located with messages (same distribution column), so the message insert and the
+  outbox insert for one channel are a single-shard transaction.
+ */
+
+CREATE TABLE message_outbox (
+    channel_id      uuid NOT NULL,
+    message_id      uuid NOT NULL,
+    node_id         text NOT NULL,
+    created_at      timestamptz NOT NULL DEFAULT now(),
+
+    PRIMARY KEY (channel_id, message_id)
+);
+SELECT create_distributed_table('message_outbox', 'channel_id', colocate_with => 'messages');
+
+-- Rows written by a node, in insertion order (replaced by a partial index in V20261020)
+CREATE INDEX idx_message_outbox_node_created_at ON message_outbox(node_id, created_at);
@@ -0,0 +1,19 @@
+/**
+  Channel membership. Co-located with messages so a channel's members and its messages live on the
+  same shard; member lookups by channel_id are single-shard.
+ */
+
+-- Sequential mode for distributed DDL with FKs to reference tables, as in the initial migration
+SET LOCAL citus.multi_shard_modify_mode TO 'sequential';
+
+CREATE TABLE channel_members (
+    channel_id      uuid NOT NULL REFERENCES channels(channel_id) ON DELETE CASCADE,
+    user_id         uuid NOT NULL REFERENCES users(user_id) ON DELETE CASCADE,
+    joined_at       timestamptz NOT NULL DEFAULT now(),
+
+    PRIMARY KEY (channel_id, user_id)
+);
+SELECT create_distributed_table('channel_members', 'channel_id', colocate_with => 'messages');
+
+-- Reverse lookup used once per session open to index the user's channels on the node
+CREATE INDEX idx_channel_members_user ON channel_members(user_id);
@@ -0,0 +1,19 @@
+/**
+  Per-channel message sequence numbers. channel_sequences holds the last seq handed out in each
+  channel; a writer bumps it by the number of messages it is inserting, in the same single-shard
+  transaction as the inserts. The row lock serializes writers of a channel, so sequences are
+  gapless and commit in seq order. Co-located with messages.
+
+  Rows written before this migration keep a NULL seq.
+ */
+
+CREATE TABLE channel_sequences (
+    channel_id      uuid PRIMARY KEY,
+    last_seq        bigint NOT NULL
+);
+SELECT create_distributed_table('channel_sequences', 'channel_id', colocate_with => 'messages');
+
+ALTER TABLE messages ADD COLUMN seq bigint;
+
+-- Also serves gap catch-up reads by seq range
+CREATE UNIQUE INDEX idx_messages_channel_seq ON messages(channel_id, seq);
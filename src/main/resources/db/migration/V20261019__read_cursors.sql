@@ -0,0 +1,22 @@
+/**
+  Per-user read cursors: the highest seq each member has acknowledged in a channel. Written in
+  batches from the nodes' in-memory ack aggregation, never once per ack. Co-located with messages
+  and channel_sequences, so a channel's unread count for a user is last_seq - last_read_seq from
+  two rows on the same shard, with no scan of messages.
+ */
+
+-- Sequential mode for distributed DDL with FKs to reference tables, as in the initial migration
+SET LOCAL citus.multi_shard_modify_mode TO 'sequential';
+
+CREATE TABLE read_cursors (
+    channel_id      uuid NOT NULL REFERENCES channels(channel_id) ON DELETE CASCADE,
+    user_id         uuid NOT NULL REFERENCES users(user_id) ON DELETE CASCADE,
+    last_read_seq   bigint NOT NULL,
+    updated_at      timestamptz NOT NULL DEFAULT now(),
+
+    PRIMARY KEY (channel_id, user_id)
+);
+SELECT create_distributed_table('read_cursors', 'channel_id', colocate_with => 'messages');
+
+-- Unread counts are listed per user across their channels
+CREATE INDEX idx_read_cursors_user ON read_cursors(user_id);
@@ -0,0 +1,20 @@
+/**
+  Outbox rows are relayed by whichever node claims them, not only by the node that wrote them, so
+  the rows of a node that crashed or came back under a new hostname are still published. A node
+  claims its own rows as they appear, and anyone's rows once they are older than the lease with no
+  live claim, by setting claimed_by/claimed_at; it then publishes and deletes them. A relay that
+  dies after claiming leaves a lease that expires and is claimed again, so delivery stays
+  at-least-once.
+
+  node_id is still written; it records which node stored the message.
+ */
+
+ALTER TABLE message_outbox ADD COLUMN claimed_by text;
+ALTER TABLE message_outbox ADD COLUMN claimed_at timestamptz;
+
+-- A relay finds its own unclaimed rows by (node_id, created_at), and rows orphaned by other nodes
+-- or left behind by an expired lease by age. Claims and deletes go by primary key.
+DROP INDEX idx_message_outbox_node_created_at;
+CREATE INDEX idx_message_outbox_unclaimed_node_created_at ON message_outbox(node_id, created_at)
+    WHERE claimed_at IS NULL;
+CREATE INDEX idx_message_outbox_created_at ON message_outbox(created_at);
@@ -0,0 +1,7 @@
+/**
+  The session a message was sent from, so fanout can skip that one session while still reaching
+  the sender's other devices. Only the outbox needs it: it is read when the row is relayed and goes
+  away with the row.
+ */
+
+ALTER TABLE message_outbox ADD COLUMN origin_session_id text;
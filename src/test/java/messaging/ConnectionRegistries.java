@@ -0,0 +1,38 @@
+package messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import messaging.compression.CompressionConfiguration;
+import messaging.compression.SharedFrameCompressor;
+
+/** {@link ConnectionRegistry} instances built outside the bean context, with default settings. */
+public final class ConnectionRegistries {
+
+  private ConnectionRegistries() {}
+
+  public static ConnectionRegistry create() {
+    return create(new UserSessionConfiguration(), new SimpleMeterRegistry());
+  }
+
+  public static ConnectionRegistry create(
+      UserSessionConfiguration sessionConfig, MeterRegistry meterRegistry) {
+    return create(sessionConfig, new InboundRateLimitConfiguration(), meterRegistry);
+  }
+
+  public static ConnectionRegistry create(
+      InboundRateLimitConfiguration rateLimitConfig, MeterRegistry meterRegistry) {
+    return create(new UserSessionConfiguration(), rateLimitConfig, meterRegistry);
+  }
+
+  private static ConnectionRegistry create(
+      UserSessionConfiguration sessionConfig,
+      InboundRateLimitConfiguration rateLimitConfig,
+      MeterRegistry meterRegistry) {
+    return new ConnectionRegistry(
+        new OutboundQueueConfiguration(),
+        sessionConfig,
+        rateLimitConfig,
+        new SharedFrameCompressor(new CompressionConfiguration(), meterRegistry),
+        meterRegistry);
+  }
+}
@@ -1,6 +1,9 @@
 package messaging;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -10,12 +13,18 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import io.micronaut.websocket.CloseReason;
 import io.micronaut.websocket.WebSocketSession;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import messaging.UserSessionConfiguration.EvictionPolicy;
+import messaging.compression.DeflateMode;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
@@ -28,9 +37,23 @@ class ConnectionRegistryTest {
 
   @Captor ArgumentCaptor<CloseReason> closeReasonCaptor;
 
+  private static ConnectionRegistry registryWithMaxSessions(int max, EvictionPolicy policy) {
+    UserSessionConfiguration config = new UserSessionConfiguration();
+    config.setMaxPerUser(max);
+    config.setEvictionPolicy(policy);
+    return ConnectionRegistries.create(config, new SimpleMeterRegistry());
+  }
+
+  private static WebSocketSession openSession() {
+    WebSocketSession session = mock(WebSocketSession.class);
+    when(session.isOpen()).thenReturn(true);
+    when(session.sendAsync(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+    return session;
+  }
+
   @Test
-  void registerNewSession_newSessionForSameUserClosesPreviousOpenSession() {
-    ConnectionRegistry registry = new ConnectionRegistry();
+  void registerNewSession_atSingleSessionLimitClosesPreviousOpenSession() {
+    ConnectionRegistry registry = registryWithMaxSessions(1, EvictionPolicy.EVICT_OLDEST);
     WebSocketSession prev = mock(WebSocketSession.class);
     when(prev.getId()).thenReturn("prev-sess");
     when(prev.isOpen()).thenReturn(true);
@@ -47,8 +70,8 @@ class ConnectionRegistryTest {
   }
 
   @Test
-  void registerNewSession_newSessionForSameUserIgnoresPreviousClosedSession() {
-    ConnectionRegistry registry = new ConnectionRegistry();
+  void registerNewSession_atSingleSessionLimitIgnoresPreviousClosedSession() {
+    ConnectionRegistry registry = registryWithMaxSessions(1, EvictionPolicy.EVICT_OLDEST);
     WebSocketSession prev = mock(WebSocketSession.class);
     when(prev.getId()).thenReturn("prev-sess");
     when(prev.isOpen()).thenReturn(false);
@@ -61,10 +84,101 @@ class ConnectionRegistryTest {
     verify(prev, never()).close(any());
   }
 
+  @Test
+  void registerNewSession_keepsEveryDeviceAndFansOutToAll() {
+    WebSocketSession phone = openSession();
+    WebSocketSession laptop = openSession();
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.registerUserSession("alice", phone, Set.of("general"));
+    registry.registerUserSession("alice", laptop, Set.of("general"));
+
+    registry.broadcastToChannel("general", "payload", null);
+
+    verify(phone, never()).close(any());
+    verify(phone).sendAsync("payload");
+    verify(laptop).sendAsync("payload");
+    assertEquals(2, registry.sessionCount("alice"));
+  }
+
+  @Test
+  void registerNewSession_evictsOldestSessionBeyondLimit() {
+    WebSocketSession first = mock(WebSocketSession.class);
+    when(first.isOpen()).thenReturn(true);
+    WebSocketSession second = openSession();
+    WebSocketSession third = openSession();
+    ConnectionRegistry registry = registryWithMaxSessions(2, EvictionPolicy.EVICT_OLDEST);
+    registry.registerUserSession("alice", first);
+    registry.registerUserSession("alice", second);
+
+    assertTrue(registry.registerUserSession("alice", third));
+    registry.broadcastPayloadToTargets("payload", Set.of("alice"));
+
+    verify(first).close(any(CloseReason.class));
+    verify(first, never()).sendAsync(anyString());
+    verify(second).sendAsync("payload");
+    verify(third).sendAsync("payload");
+  }
+
+  @Test
+  void sessionMetrics_trackOpensEvictionsRemovalsAndFanoutSize() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    UserSessionConfiguration config = new UserSessionConfiguration();
+    config.setMaxPerUser(1);
+    ConnectionRegistry registry = ConnectionRegistries.create(config, meterRegistry);
+    WebSocketSession first = mock(WebSocketSession.class);
+    when(first.isOpen()).thenReturn(false);
+    WebSocketSession second = openSession();
+    WebSocketSession bob = openSession();
+    registry.registerUserSession("alice", first, Set.of("general"));
+    registry.registerUserSession("alice", second, Set.of("general"));
+    registry.registerUserSession("bob", bob, Set.of("general"));
+
+    registry.broadcastToChannel("general", "payload", null);
+    registry.removeUserSession("bob", bob);
+
+    assertEquals(3.0, meterRegistry.counter("messaging.sessions.opened").count());
+    assertEquals(1.0, meterRegistry.counter("messaging.sessions.evicted").count());
+    assertEquals(2.0, meterRegistry.counter("messaging.sessions.closed").count());
+    assertEquals(1.0, meterRegistry.get("messaging.sessions.active").gauge().value());
+    assertEquals(1, meterRegistry.summary("messaging.fanout.recipients").count());
+    assertEquals(2.0, meterRegistry.summary("messaging.fanout.recipients").totalAmount());
+  }
+
+  @Test
+  void registerNewSession_rejectNewPolicyClosesTheNewSession() {
+    WebSocketSession first = openSession();
+    WebSocketSession second = mock(WebSocketSession.class);
+    ConnectionRegistry registry = registryWithMaxSessions(1, EvictionPolicy.REJECT_NEW);
+    registry.registerUserSession("alice", first);
+
+    assertFalse(registry.registerUserSession("alice", second));
+    registry.broadcastPayloadToTargets("payload", Set.of("alice"));
+
+    verify(second).close(closeReasonCaptor.capture());
+    assertEquals(CloseReason.POLICY_VIOLATION.getCode(), closeReasonCaptor.getValue().getCode());
+    verify(first, never()).close(any());
+    verify(first).sendAsync("payload");
+  }
+
+  @Test
+  void removeUserSession_keepsOtherDevicesInChannelIndex() {
+    WebSocketSession phone = mock(WebSocketSession.class);
+    WebSocketSession laptop = openSession();
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.registerUserSession("alice", phone, Set.of("general"));
+    registry.registerUserSession("alice", laptop, Set.of("general"));
+
+    registry.removeUserSession("alice", phone);
+    registry.broadcastToChannel("general", "payload", null);
+
+    verify(phone, never()).sendAsync(anyString());
+    verify(laptop).sendAsync("payload");
+  }
+
   @Test
   void removeUserSession_removeOnlyWorksOnSessionMatch() {
     // Register s1 to alice
-    ConnectionRegistry registry = new ConnectionRegistry();
+    ConnectionRegistry registry = ConnectionRegistries.create();
     WebSocketSession s1 = mock(WebSocketSession.class);
     WebSocketSession s2 = mock(WebSocketSession.class);
     when(s1.isOpen()).thenReturn(true);
@@ -99,7 +213,7 @@ class ConnectionRegistryTest {
     WebSocketSession dave = mock(WebSocketSession.class);
     when(dave.isOpen()).thenReturn(false);
 
-    ConnectionRegistry registry = new ConnectionRegistry();
+    ConnectionRegistry registry = ConnectionRegistries.create();
     registry.registerUserSession("alice", alice);
     registry.registerUserSession("bob", bob);
     registry.registerUserSession("carol", carol);
@@ -127,7 +241,7 @@ class ConnectionRegistryTest {
     WebSocketSession dave = mock(WebSocketSession.class);
     when(dave.isOpen()).thenReturn(false);
 
-    ConnectionRegistry registry = new ConnectionRegistry();
+    ConnectionRegistry registry = ConnectionRegistries.create();
     registry.registerUserSession("alice", alice);
     registry.registerUserSession("bob", bob);
     registry.registerUserSession("carol", carol);
@@ -142,7 +256,7 @@ class ConnectionRegistryTest {
 
   @Test
   void broadcastPayload_exclusionWinsOverTargeting() {
-    ConnectionRegistry registry = new ConnectionRegistry();
+    ConnectionRegistry registry = ConnectionRegistries.create();
 
     WebSocketSession alice = mock(WebSocketSession.class);
     registry.registerUserSession("alice", alice);
@@ -153,7 +267,7 @@ class ConnectionRegistryTest {
 
   @Test
   void broadcastPayload_ignoresUnregisteredUsers() {
-    ConnectionRegistry registry = new ConnectionRegistry();
+    ConnectionRegistry registry = ConnectionRegistries.create();
 
     WebSocketSession alice = mock(WebSocketSession.class);
     when(alice.isOpen()).thenReturn(true);
@@ -164,4 +278,240 @@ class ConnectionRegistryTest {
 
     verify(alice, times(1)).sendAsync("p");
   }
+
+  @Test
+  void broadcastToChannel_sendsOnlyToLocalChannelMembers() {
+    WebSocketSession alice = mock(WebSocketSession.class);
+    WebSocketSession bob = mock(WebSocketSession.class);
+    when(bob.isOpen()).thenReturn(true);
+    when(bob.sendAsync(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+    WebSocketSession carol = mock(WebSocketSession.class);
+
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.registerUserSession("alice", alice, Set.of("general"));
+    registry.registerUserSession("bob", bob, Set.of("general", "random"));
+    registry.registerUserSession("carol", carol, Set.of("random"));
+    registry.broadcastToChannel("general", "payload", null);
+
+    verify(alice, never()).sendAsync(anyString());
+    verify(bob, times(1)).sendAsync("payload");
+    verify(carol, never()).sendAsync(anyString());
+  }
+
+  @Test
+  void broadcastToChannel_skipsOnlyTheOriginSessionOfTheSender() {
+    WebSocketSession phone = mock(WebSocketSession.class);
+    when(phone.getId()).thenReturn("alice-phone");
+    WebSocketSession laptop = openSession();
+    when(laptop.getId()).thenReturn("alice-laptop");
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.registerUserSession("alice", phone, Set.of("general"));
+    registry.registerUserSession("alice", laptop, Set.of("general"));
+
+    registry.broadcastToChannel("general", "payload", "alice-phone");
+
+    verify(phone, never()).sendAsync(anyString());
+    verify(laptop).sendAsync("payload");
+  }
+
+  @Test
+  void broadcastToChannel_removedSessionLeavesChannelIndex() {
+    WebSocketSession alice = mock(WebSocketSession.class);
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.registerUserSession("alice", alice, Set.of("general"));
+    registry.removeUserSession("alice", alice);
+
+    WebSocketSession aliceAgain = mock(WebSocketSession.class);
+    registry.registerUserSession("alice", aliceAgain);
+    registry.broadcastToChannel("general", "payload", null);
+
+    verify(aliceAgain, never()).isOpen();
+    verify(aliceAgain, never()).sendAsync(anyString());
+  }
+
+  @Test
+  void joinAndLeaveChannel_updateChannelIndex() {
+    WebSocketSession alice = mock(WebSocketSession.class);
+    when(alice.isOpen()).thenReturn(true);
+    when(alice.sendAsync(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.registerUserSession("alice", alice);
+
+    registry.joinChannel("alice", "general");
+    registry.broadcastToChannel("general", "p1", null);
+    registry.leaveChannel("alice", "general");
+    registry.broadcastToChannel("general", "p2", null);
+
+    verify(alice, times(1)).sendAsync("p1");
+    verify(alice, never()).sendAsync("p2");
+  }
+
+  @Test
+  void reconcileChannel_dropsRemovedMembersAndAddsConnectedNewOnes() {
+    WebSocketSession alice = mock(WebSocketSession.class);
+    WebSocketSession bob = openSession();
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.registerUserSession("alice", alice, Set.of("general"));
+    registry.registerUserSession("bob", bob);
+
+    registry.reconcileChannel("general", Set.of("bob", "carol"));
+    registry.broadcastToChannel("general", "payload", null);
+
+    verify(alice, never()).sendAsync(anyString());
+    verify(bob).sendAsync("payload");
+    assertFalse(registry.isInChannel("general", "carol"));
+  }
+
+  @Test
+  void joinChannel_ignoresUsersWithoutLocalSession() {
+    WebSocketSession alice = mock(WebSocketSession.class);
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.joinChannel("alice", "general");
+    registry.registerUserSession("alice", alice);
+    registry.broadcastToChannel("general", "payload", null);
+
+    verify(alice, never()).isOpen();
+    verify(alice, never()).sendAsync(anyString());
+  }
+
+  @Test
+  void broadcastFrameToChannel_sharesOneEncodedFrameAcrossRecipients() {
+    WebSocketSession bob = mock(WebSocketSession.class);
+    when(bob.isOpen()).thenReturn(true);
+    when(bob.sendAsync(any(TextWebSocketFrame.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    WebSocketSession carol = mock(WebSocketSession.class);
+    when(carol.isOpen()).thenReturn(true);
+    when(carol.sendAsync(any(TextWebSocketFrame.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.registerUserSession("bob", bob, Set.of("general"));
+    registry.registerUserSession("carol", carol, Set.of("general"));
+    registry.broadcastFrameToChannel("general", "héllo", null);
+
+    ArgumentCaptor<TextWebSocketFrame> bobFrame = ArgumentCaptor.forClass(TextWebSocketFrame.class);
+    ArgumentCaptor<TextWebSocketFrame> carolFrame =
+        ArgumentCaptor.forClass(TextWebSocketFrame.class);
+    verify(bob).sendAsync(bobFrame.capture());
+    verify(carol).sendAsync(carolFrame.capture());
+    assertEquals("héllo", bobFrame.getValue().text());
+    assertSame(bobFrame.getValue().content().unwrap(), carolFrame.getValue().content().unwrap());
+
+    // Only the two duplicates handed to the sessions still hold references
+    for (TextWebSocketFrame frame : List.of(bobFrame.getValue(), carolFrame.getValue())) {
+      frame.release();
+    }
+    assertEquals(0, bobFrame.getValue().refCnt());
+  }
+
+  @Test
+  void broadcastFrameToChannel_compressesOnceForSharedDeflateRecipients() {
+    WebSocketSession bob = mock(WebSocketSession.class);
+    when(bob.isOpen()).thenReturn(true);
+    when(bob.sendAsync(any(TextWebSocketFrame.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    WebSocketSession carol = mock(WebSocketSession.class);
+    when(carol.isOpen()).thenReturn(true);
+    when(carol.sendAsync(any(TextWebSocketFrame.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    WebSocketSession dave = mock(WebSocketSession.class);
+    when(dave.isOpen()).thenReturn(true);
+    when(dave.sendAsync(any(TextWebSocketFrame.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    ConnectionRegistry registry = ConnectionRegistries.create();
+    registry.registerUserSession("bob", bob, Set.of("general"), DeflateMode.SHARED);
+    registry.registerUserSession("carol", carol, Set.of("general"), DeflateMode.SHARED);
+    registry.registerUserSession("dave", dave, Set.of("general"), DeflateMode.SESSION);
+    String payload = "{\"type\":\"message\",\"text\":\"" + "hello ".repeat(100) + "\"}";
+    registry.broadcastFrameToChannel("general", payload, null);
+
+    ArgumentCaptor<TextWebSocketFrame> bobFrame = ArgumentCaptor.forClass(TextWebSocketFrame.class);
+    ArgumentCaptor<TextWebSocketFrame> carolFrame =
+        ArgumentCaptor.forClass(TextWebSocketFrame.class);
+    ArgumentCaptor<TextWebSocketFrame> daveFrame =
+        ArgumentCaptor.forClass(TextWebSocketFrame.class);
+    verify(bob).sendAsync(bobFrame.capture());
+    verify(carol).sendAsync(carolFrame.capture());
+    verify(dave).sendAsync(daveFrame.capture());
+    assertEquals(WebSocketExtension.RSV1, bobFrame.getValue().rsv());
+    assertTrue(bobFrame.getValue().content().readableBytes() < payload.length());
+    assertSame(bobFrame.getValue().content().unwrap(), carolFrame.getValue().content().unwrap());
+    // Sessions with their own deflater get the plain frame and compress it themselves
+    assertEquals(0, daveFrame.getValue().rsv());
+    assertEquals(payload, daveFrame.getValue().text());
+
+    for (ArgumentCaptor<TextWebSocketFrame> frame : List.of(bobFrame, carolFrame, daveFrame)) {
+      frame.getValue().release();
+    }
+    assertEquals(0, bobFrame.getValue().refCnt());
+    assertEquals(0, daveFrame.getValue().refCnt());
+  }
+
+  private static ConnectionRegistry registryWithInboundLimit(
+      int burst, SimpleMeterRegistry meterRegistry) {
+    InboundRateLimitConfiguration config = new InboundRateLimitConfiguration();
+    // Slow enough that nothing refills while the test runs
+    config.setMessagesPerSecond(0.001);
+    config.setBurst(burst);
+    return ConnectionRegistries.create(config, meterRegistry);
+  }
+
+  @Test
+  void tryAcquireInbound_sharesOneBucketAcrossTheUsersDevices() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ConnectionRegistry registry = registryWithInboundLimit(3, meterRegistry);
+    registry.registerUserSession("alice", mock(WebSocketSession.class));
+    registry.registerUserSession("bob", mock(WebSocketSession.class));
+
+    assertTrue(registry.tryAcquireInbound("alice"));
+    assertTrue(registry.tryAcquireInbound("alice"));
+    // A second device neither resets nor adds to the user's allowance
+    registry.registerUserSession("alice", mock(WebSocketSession.class));
+    assertTrue(registry.tryAcquireInbound("alice"));
+    assertFalse(registry.tryAcquireInbound("alice"));
+
+    assertTrue(registry.tryAcquireInbound("bob"));
+    assertEquals(1.0, meterRegistry.counter("messaging.inbound.rate-limited").count());
+  }
+
+  @Test
+  void tryAcquireInbound_keepsTheUsersBucketAcrossAReconnect() {
+    ConnectionRegistry registry = registryWithInboundLimit(2, new SimpleMeterRegistry());
+    WebSocketSession first = mock(WebSocketSession.class);
+    registry.registerUserSession("alice", first);
+    assertTrue(registry.tryAcquireInbound("alice"));
+    assertTrue(registry.tryAcquireInbound("alice"));
+
+    registry.removeUserSession("alice", first);
+    registry.registerUserSession("alice", mock(WebSocketSession.class));
+
+    assertFalse(registry.tryAcquireInbound("alice"), "reconnecting does not refill the burst");
+  }
+
+  @Test
+  void constructor_rejectsANonPositiveInboundRate() {
+    InboundRateLimitConfiguration config = new InboundRateLimitConfiguration();
+    config.setMessagesPerSecond(0);
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ConnectionRegistries.create(config, new SimpleMeterRegistry()));
+  }
+
+  @Test
+  void tryAcquireInbound_allowsUnregisteredUsersAndUnlimitedRegistries() {
+    ConnectionRegistry limited = registryWithInboundLimit(1, new SimpleMeterRegistry());
+    InboundRateLimitConfiguration off = new InboundRateLimitConfiguration();
+    off.setEnabled(false);
+    ConnectionRegistry unlimited = ConnectionRegistries.create(off, new SimpleMeterRegistry());
+    unlimited.registerUserSession("alice", mock(WebSocketSession.class));
+
+    assertTrue(limited.tryAcquireInbound("nobody"));
+    assertTrue(limited.tryAcquireInbound(null));
+    for (int i = 0; i < 100; i++) {
+      assertTrue(unlimited.tryAcquireInbound("alice"));
+    }
+  }
 }
@@ -0,0 +1,27 @@
+package messaging;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest
+class MetricsEndpointTest {
+
+  @Inject
+  @Client("/")
+  HttpClient client;
+
+  @Test
+  void prometheusEndpoint_exposesMessagingMeters() {
+    String scrape = client.toBlocking().retrieve("/prometheus");
+
+    assertTrue(scrape.contains("messaging_sessions_active"));
+    assertTrue(scrape.contains("messaging_fanout_recipients"));
+    assertTrue(scrape.contains("messaging_outbound_send_latency_seconds"));
+    assertTrue(scrape.contains("messaging_inbound_messages_total"));
+  }
+}
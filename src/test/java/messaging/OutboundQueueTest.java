@@ -0,0 +1,239 @@
+package messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import messaging.OutboundQueueConfiguration.OverflowPolicy;
+import messaging.compression.DeflateMode;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class OutboundQueueTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final WebSocketSession session = mock(WebSocketSession.class);
+  private final List<CompletableFuture<Object>> writes = new ArrayList<>();
+
+  /** One write in flight, two queued; writes complete only when the test completes them. */
+  private OutboundQueue newQueue(OverflowPolicy policy) {
+    OutboundQueueConfiguration config = new OutboundQueueConfiguration();
+    config.setMaxInFlight(1);
+    config.setHighWaterMark(2);
+    config.setOverflowPolicy(policy);
+    return newQueue(config);
+  }
+
+  private OutboundQueue newQueue(OutboundQueueConfiguration config) {
+    when(session.sendAsync(any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<Object> write = new CompletableFuture<>();
+              writes.add(write);
+              return write;
+            });
+    return new OutboundQueue(
+        "alice",
+        session,
+        config,
+        OutboundQueue.Metrics.register(meterRegistry),
+        DeflateMode.OFF,
+        null);
+  }
+
+  private List<Object> drainWrites() {
+    ArgumentCaptor<Object> sent = ArgumentCaptor.forClass(Object.class);
+    for (int i = 0; i < writes.size(); i++) {
+      writes.get(i).complete(null);
+    }
+    verify(session, times(writes.size())).sendAsync(sent.capture());
+    return sent.getAllValues();
+  }
+
+  @Test
+  void send_queuesBehindInFlightWriteAndDrainsInOrder() {
+    OutboundQueue queue = newQueue(OverflowPolicy.DROP_OLDEST);
+    queue.send("m1");
+    queue.send("m2");
+    queue.send("m3");
+    assertEquals(2, queue.depth());
+
+    assertEquals(List.of("m1", "m2", "m3"), drainWrites());
+    assertEquals(0, queue.depth());
+  }
+
+  @Test
+  void send_drainsALongBacklogOfSynchronousWritesWithoutRecursing() {
+    OutboundQueueConfiguration config = new OutboundQueueConfiguration();
+    config.setMaxInFlight(1);
+    config.setHighWaterMark(100_000);
+    CompletableFuture<Object> first = new CompletableFuture<>();
+    when(session.sendAsync(any()))
+        .thenReturn(first)
+        .thenReturn(CompletableFuture.completedFuture(null));
+    OutboundQueue queue =
+        new OutboundQueue(
+            "alice",
+            session,
+            config,
+            OutboundQueue.Metrics.register(meterRegistry),
+            DeflateMode.OFF,
+            null);
+    for (int i = 0; i < 100_000; i++) {
+      queue.send("m" + i);
+    }
+
+    // Every later write completes inline; one stack frame per message would overflow
+    first.complete(null);
+
+    assertEquals(0, queue.depth());
+    verify(session, times(100_000)).sendAsync(any());
+  }
+
+  @Test
+  void send_dropOldestKeepsNewestMessages() {
+    OutboundQueue queue = newQueue(OverflowPolicy.DROP_OLDEST);
+    for (int i = 1; i <= 5; i++) {
+      queue.send("m" + i);
+    }
+
+    assertEquals(List.of("m1", "m4", "m5"), drainWrites());
+    assertEquals(2.0, meterRegistry.counter("messaging.outbound.dropped").count());
+  }
+
+  @Test
+  void send_coalesceReplacesBacklogWithOverflowNotice() {
+    OutboundQueue queue = newQueue(OverflowPolicy.COALESCE);
+    for (int i = 1; i <= 4; i++) {
+      queue.send("m" + i);
+    }
+    queue.send("m5");
+
+    assertEquals(List.of("m1", "{\"type\":\"overflow\",\"dropped\":3}", "m5"), drainWrites());
+  }
+
+  @Test
+  void send_closePolicyEvictsSlowConsumer() {
+    OutboundQueue queue = newQueue(OverflowPolicy.CLOSE);
+    for (int i = 1; i <= 4; i++) {
+      queue.send("m" + i);
+    }
+    queue.send("m5");
+
+    ArgumentCaptor<CloseReason> reason = ArgumentCaptor.forClass(CloseReason.class);
+    verify(session).close(reason.capture());
+    assertEquals(OutboundQueue.SLOW_CONSUMER_CLOSE_CODE, reason.getValue().getCode());
+    assertEquals(0, queue.depth());
+    assertEquals(1.0, meterRegistry.counter("messaging.outbound.evicted").count());
+
+    writes.get(0).complete(null);
+    verify(session, times(1)).sendAsync(any());
+  }
+
+  @Test
+  void send_recordsWriteLatencyAndFailures() {
+    OutboundQueue queue = newQueue(OverflowPolicy.DROP_OLDEST);
+    queue.send("m1");
+    queue.send("m2");
+    writes.get(0).complete(null);
+    writes.get(1).completeExceptionally(new IllegalStateException("closed"));
+
+    assertEquals(1, meterRegistry.timer("messaging.outbound.send.latency").count());
+    assertEquals(1.0, meterRegistry.counter("messaging.outbound.send.failures").count());
+  }
+
+  @Test
+  void send_settlesTrackedMessagesWhetherWrittenOrDropped() {
+    OutboundQueue queue = newQueue(OverflowPolicy.DROP_OLDEST);
+    List<String> settled = new ArrayList<>();
+    for (int i = 1; i <= 4; i++) {
+      String message = "m" + i;
+      queue.send(message, () -> settled.add(message));
+    }
+    // m2 was dropped for m4 as soon as the queue overflowed
+    assertEquals(List.of("m2"), settled);
+
+    drainWrites();
+    assertEquals(List.of("m2", "m1", "m3", "m4"), settled);
+  }
+
+  @Test
+  void discard_dropsBacklogWithoutSending() {
+    OutboundQueue queue = newQueue(OverflowPolicy.DROP_OLDEST);
+    queue.send("m1");
+    queue.send("m2");
+    queue.discard();
+    writes.get(0).complete(null);
+
+    verify(session, times(1)).sendAsync(any());
+    verify(session, never()).close(any());
+  }
+
+  @Test
+  void send_coalescingMergesQueuedBurstIntoArrayFrame() {
+    OutboundQueueConfiguration config = new OutboundQueueConfiguration();
+    config.setMaxInFlight(1);
+    config.setCoalesceWrites(true);
+    config.setMaxCoalescedMessages(3);
+    OutboundQueue queue = newQueue(config);
+    for (int i = 1; i <= 5; i++) {
+      queue.send("{\"n\":" + i + "}");
+    }
+
+    assertEquals(
+        List.of("{\"n\":1}", "[{\"n\":2},{\"n\":3},{\"n\":4}]", "{\"n\":5}"), drainWrites());
+  }
+
+  @Test
+  void send_coalescingCutsWritesPerMessageForBursts() {
+    OutboundQueueConfiguration config = new OutboundQueueConfiguration();
+    config.setMaxInFlight(1);
+    config.setHighWaterMark(10_000);
+    config.setCoalesceWrites(true);
+    OutboundQueue queue = newQueue(config);
+    int messages = 1_000;
+    for (int i = 0; i < messages; i++) {
+      queue.send("{\"n\":" + i + "}");
+    }
+
+    // One immediate write, then the backlog drains in array frames of up to 64 messages
+    List<Object> sent = drainWrites();
+    assertEquals(1 + (int) Math.ceil((messages - 1) / 64.0), sent.size());
+  }
+
+  @Test
+  void closeAfterFlush_writesTheBacklogThenCloses() {
+    OutboundQueue queue = newQueue(OverflowPolicy.DROP_OLDEST);
+    CloseReason reason = new CloseReason(CloseReason.SERVICE_RESTART.getCode(), "draining");
+    queue.send("m1");
+    queue.send("m2");
+
+    queue.closeAfterFlush(reason);
+    queue.send("m3");
+    verify(session, never()).close(any());
+
+    assertEquals(List.of("m1", "m2"), drainWrites());
+    verify(session).close(reason);
+  }
+
+  @Test
+  void closeAfterFlush_closesAnIdleSessionAtOnce() {
+    OutboundQueue queue = newQueue(OverflowPolicy.DROP_OLDEST);
+    CloseReason reason = new CloseReason(CloseReason.SERVICE_RESTART.getCode(), "draining");
+
+    queue.closeAfterFlush(reason);
+    queue.closeAfterFlush(reason);
+
+    verify(session, times(1)).close(reason);
+  }
+}
@@ -0,0 +1,97 @@
+package messaging.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.websocket.CloseReason;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class AdmissionControllerTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final AtomicLong now = new AtomicLong();
+
+  private AdmissionController controller(double opensPerSecond, int burst, int maxPending) {
+    AdmissionConfiguration config = new AdmissionConfiguration();
+    config.setOpensPerSecond(opensPerSecond);
+    config.setBurst(burst);
+    config.setMaxPendingOpens(maxPending);
+    config.setRetryAfterMin(Duration.ofSeconds(1));
+    config.setRetryAfterMax(Duration.ofSeconds(10));
+    return new AdmissionController(config, meterRegistry, now::get);
+  }
+
+  private static long retryAfterMillis(CloseReason reason) {
+    assertEquals(CloseReason.TRY_AGAIN_LATER.getCode(), reason.getCode());
+    assertTrue(reason.getReason().startsWith(AdmissionController.OVER_CAPACITY_REASON));
+    return Long.parseLong(
+        reason.getReason().substring(AdmissionController.OVER_CAPACITY_REASON.length()));
+  }
+
+  @Test
+  void tryAdmit_refusesOpensBeyondTheBurstWithARetryHint() {
+    AdmissionController admission = controller(100, 2, 100);
+
+    assertTrue(admission.tryAdmit().isEmpty());
+    assertTrue(admission.tryAdmit().isEmpty());
+    Optional<CloseReason> refused = admission.tryAdmit();
+
+    assertTrue(refused.isPresent());
+    long hint = retryAfterMillis(refused.get());
+    // At least retry-after-min, plus up to retry-after-min of jitter
+    assertTrue(hint >= 1_000 && hint <= 2_000, "hint " + hint);
+    assertEquals(2.0, meterRegistry.counter("messaging.admission.admitted").count());
+    assertEquals(
+        1.0, meterRegistry.counter("messaging.admission.rejected", "cause", "rate").count());
+    assertEquals(2, admission.pending());
+  }
+
+  @Test
+  void tryAdmit_refusesWhileTooManyOpensArePendingUntilOneIsReleased() {
+    AdmissionController admission = controller(1_000, 1_000, 2);
+
+    assertTrue(admission.tryAdmit().isEmpty());
+    assertTrue(admission.tryAdmit().isEmpty());
+    assertTrue(admission.tryAdmit().isPresent());
+    admission.release();
+
+    assertTrue(admission.tryAdmit().isEmpty());
+    assertEquals(
+        1.0, meterRegistry.counter("messaging.admission.rejected", "cause", "pending").count());
+    assertEquals(2, admission.pending());
+  }
+
+  @Test
+  void tryAdmit_spreadsRetryHintsOfAStormUpToTheMaximum() {
+    // One open per 100ms, so 100 refused clients need about ten seconds to all get back in
+    AdmissionController admission = controller(10, 1, 1_000);
+    admission.tryAdmit();
+
+    long first = retryAfterMillis(admission.tryAdmit().orElseThrow());
+    long last = 0;
+    for (int i = 0; i < 99; i++) {
+      last = retryAfterMillis(admission.tryAdmit().orElseThrow());
+    }
+
+    assertTrue(first <= 2_000, "first " + first);
+    assertTrue(last >= 10_000 && last <= 11_000, "last " + last);
+  }
+
+  @Test
+  void tryAdmit_admitsEverythingWhenDisabled() {
+    AdmissionConfiguration config = new AdmissionConfiguration();
+    config.setEnabled(false);
+    config.setBurst(1);
+    config.setMaxPendingOpens(1);
+    AdmissionController admission = new AdmissionController(config, meterRegistry, now::get);
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(admission.tryAdmit().isEmpty());
+    }
+    assertEquals(10, admission.pending());
+  }
+}
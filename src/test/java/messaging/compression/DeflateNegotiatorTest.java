@@ -0,0 +1,79 @@
+package messaging.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.micronaut.http.HttpRequest;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class DeflateNegotiatorTest {
+
+  private final DeflateNegotiator negotiator =
+      new DeflateNegotiator(new CompressionConfiguration());
+
+  private static HttpRequest<?> offering(String extensions) {
+    return HttpRequest.GET("/chat").header("Sec-WebSocket-Extensions", extensions);
+  }
+
+  @Test
+  void negotiate_sharesFramesOnlyWithoutServerContextTakeover() {
+    assertEquals(
+        DeflateMode.SHARED,
+        negotiator.negotiate(
+            offering("permessage-deflate; server_no_context_takeover; client_max_window_bits")));
+    // What browsers offer by default: the server keeps its context, so frames are per session
+    assertEquals(
+        DeflateMode.SESSION,
+        negotiator.negotiate(offering("permessage-deflate; client_max_window_bits")));
+  }
+
+  @Test
+  void negotiate_neverSharesFramesWithAReducedServerWindow() {
+    assertNotEquals(
+        DeflateMode.SHARED,
+        negotiator.negotiate(
+            offering("permessage-deflate; server_no_context_takeover; server_max_window_bits=10")));
+  }
+
+  @Test
+  void negotiate_isOffWithoutAnOfferOrWhenDisabled() {
+    assertEquals(DeflateMode.OFF, negotiator.negotiate(HttpRequest.GET("/chat")));
+    assertEquals(DeflateMode.OFF, negotiator.negotiate(offering("x-webkit-deflate-frame")));
+
+    CompressionConfiguration disabled = new CompressionConfiguration();
+    disabled.setEnabled(false);
+    assertEquals(
+        DeflateMode.OFF,
+        new DeflateNegotiator(disabled).negotiate(offering("permessage-deflate")));
+  }
+
+  @Test
+  void negotiate_withSharingDisabledKeepsEverySessionOnItsOwnDeflater() {
+    CompressionConfiguration config = new CompressionConfiguration();
+    config.setSharedFrames(false);
+
+    assertEquals(
+        DeflateMode.SESSION,
+        new DeflateNegotiator(config)
+            .negotiate(offering("permessage-deflate; server_no_context_takeover")));
+  }
+
+  @Test
+  void parseOffers_readsEachOfferWithQuotedAndBareParameters() {
+    List<WebSocketExtensionData> offers =
+        DeflateNegotiator.parseOffers(
+            "permessage-deflate; client_max_window_bits=\"10\"; server_no_context_takeover,"
+                + " permessage-deflate");
+
+    assertEquals(2, offers.size());
+    assertEquals("10", offers.get(0).parameters().get("client_max_window_bits"));
+    assertNull(offers.get(0).parameters().get(DeflateNegotiator.SERVER_NO_CONTEXT));
+    assertEquals(
+        List.of("client_max_window_bits", DeflateNegotiator.SERVER_NO_CONTEXT),
+        List.copyOf(offers.get(0).parameters().keySet()));
+    assertEquals("permessage-deflate", offers.get(1).name());
+  }
+}
@@ -0,0 +1,101 @@
+package messaging.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class SharedFrameCompressorTest {
+
+  private static final String PAYLOAD =
+      "{\"type\":\"message\",\"from\":\"8d3c1a52-4b1e-4c59-9a77-2f0c4a1b9e10\",\"text\":\""
+          + "See you at the standup, bring the release notes. ".repeat(8)
+          + "\"}";
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final SharedFrameCompressor compressor =
+      new SharedFrameCompressor(new CompressionConfiguration(), meterRegistry);
+
+  /** The extension a client offering server_no_context_takeover ends up with. */
+  private static WebSocketServerExtension noContextExtension() {
+    return new PerMessageDeflateServerExtensionHandshaker(6, false, 15, true, false)
+        .handshakeExtension(
+            new WebSocketExtensionData(
+                "permessage-deflate", Map.of(DeflateNegotiator.SERVER_NO_CONTEXT, "")));
+  }
+
+  private static TextWebSocketFrame frame(String text) {
+    return new TextWebSocketFrame(ByteBufUtil.writeUtf8(ByteBufAllocator.DEFAULT, text));
+  }
+
+  @Test
+  void compress_producesAPermessageDeflateFrameNettyCanInflate() {
+    TextWebSocketFrame plain = frame(PAYLOAD);
+    TextWebSocketFrame deflated = compressor.compress(plain);
+    plain.release();
+
+    assertEquals(WebSocketExtension.RSV1, deflated.rsv());
+    assertTrue(deflated.content().readableBytes() < PAYLOAD.length() / 2);
+    EmbeddedChannel peer = new EmbeddedChannel(noContextExtension().newExtensionDecoder());
+    peer.writeInbound(deflated);
+    TextWebSocketFrame inflated = peer.readInbound();
+    assertEquals(PAYLOAD, inflated.text());
+    inflated.release();
+    assertFalse(peer.finish());
+  }
+
+  @Test
+  void compress_outputPassesThroughTheSessionEncoderUnchanged() {
+    TextWebSocketFrame plain = frame(PAYLOAD);
+    TextWebSocketFrame deflated = compressor.compress(plain);
+    plain.release();
+
+    EmbeddedChannel session = new EmbeddedChannel(noContextExtension().newExtensionEncoder());
+    session.writeOutbound(deflated.retainedDuplicate());
+    TextWebSocketFrame written = session.readOutbound();
+    assertSame(deflated.content().unwrap(), written.content().unwrap());
+    written.release();
+    deflated.release();
+    assertFalse(session.finish());
+  }
+
+  @Test
+  void compress_reusesPooledDeflatersAcrossCalls() {
+    for (int i = 0; i < 3; i++) {
+      TextWebSocketFrame plain = frame(PAYLOAD + i);
+      TextWebSocketFrame deflated = compressor.compress(plain);
+      EmbeddedChannel peer = new EmbeddedChannel(noContextExtension().newExtensionDecoder());
+      peer.writeInbound(deflated);
+      TextWebSocketFrame inflated = peer.readInbound();
+      assertEquals(PAYLOAD + i, inflated.text());
+      inflated.release();
+      plain.release();
+    }
+    assertEquals(
+        3.0 * (PAYLOAD.length() + 1),
+        meterRegistry.counter("messaging.compression.shared.input").count());
+  }
+
+  @Test
+  void accepts_skipsFramesBelowThreshold() {
+    TextWebSocketFrame small = frame("{\"type\":\"message\",\"text\":\"hi\"}");
+    TextWebSocketFrame large = frame(PAYLOAD);
+
+    assertFalse(compressor.accepts(small));
+    assertTrue(compressor.accepts(large));
+    small.release();
+    large.release();
+  }
+}
@@ -0,0 +1,127 @@
+package messaging.drain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.scheduling.TaskScheduler;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import messaging.ConnectionRegistries;
+import messaging.ConnectionRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class DrainControllerTest {
+
+  private final ConnectionRegistry registry = ConnectionRegistries.create();
+  private final TaskScheduler scheduler = mock(TaskScheduler.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final AtomicLong now = new AtomicLong();
+
+  /** 20 closes per second, so two per 100ms tick. */
+  private DrainController controller() {
+    DrainConfiguration config = new DrainConfiguration();
+    config.setClosesPerSecond(20);
+    config.setFlushTimeout(Duration.ofSeconds(1));
+    config.setReconnectDelayMax(Duration.ofMillis(500));
+    return new DrainController(registry, scheduler, config, meterRegistry, now::get);
+  }
+
+  /** A session that stays open until closed and completes writes as given. */
+  private static WebSocketSession session(CompletableFuture<Object> writes) {
+    WebSocketSession session = mock(WebSocketSession.class);
+    AtomicBoolean open = new AtomicBoolean(true);
+    when(session.isOpen()).thenAnswer(invocation -> open.get());
+    when(session.sendAsync(any())).thenReturn(writes);
+    doAnswer(invocation -> open.getAndSet(false)).when(session).close(any(CloseReason.class));
+    return session;
+  }
+
+  private static WebSocketSession idleSession() {
+    return session(CompletableFuture.completedFuture(null));
+  }
+
+  @Test
+  void drain_closesSessionsAtTheConfiguredRateWithAReconnectHint() {
+    List<WebSocketSession> sessions = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      WebSocketSession session = idleSession();
+      sessions.add(session);
+      registry.registerUserSession("user-" + i, session);
+    }
+    DrainController drain = controller();
+
+    assertTrue(drain.drain());
+    assertFalse(drain.drain());
+    assertTrue(drain.isDraining());
+    verify(scheduler).scheduleAtFixedRate(any(), any(), any());
+    assertEquals(5, drain.remaining());
+
+    drain.tick();
+    assertEquals(2, sessions.stream().filter(s -> !s.isOpen()).count());
+    drain.tick();
+    drain.tick();
+    assertEquals(0, drain.remaining());
+    assertEquals(5.0, meterRegistry.counter("messaging.drain.closed").count());
+
+    ArgumentCaptor<CloseReason> reason = ArgumentCaptor.forClass(CloseReason.class);
+    verify(sessions.get(0)).close(reason.capture());
+    assertEquals(CloseReason.SERVICE_RESTART.getCode(), reason.getValue().getCode());
+    long hint =
+        Long.parseLong(
+            reason.getValue().getReason().substring(DrainController.DRAINING_REASON.length()));
+    assertTrue(hint >= 0 && hint <= 500, "hint " + hint);
+  }
+
+  @Test
+  void tick_waitsForTheOutboundBacklogBeforeClosing() {
+    CompletableFuture<Object> write = new CompletableFuture<>();
+    WebSocketSession busy = session(write);
+    registry.registerUserSession("alice", busy);
+    registry.sendToSession("alice", busy, "m1");
+    DrainController drain = controller();
+
+    drain.drain();
+    drain.tick();
+    verify(busy, never()).close(any(CloseReason.class));
+
+    write.complete(null);
+    verify(busy).close(any(CloseReason.class));
+    assertEquals(0.0, meterRegistry.counter("messaging.drain.flush.timeouts").count());
+  }
+
+  @Test
+  void tick_closesSessionsWhoseBacklogOutlivesTheFlushTimeout() {
+    WebSocketSession stuck = session(new CompletableFuture<>());
+    registry.registerUserSession("alice", stuck);
+    registry.sendToSession("alice", stuck, "m1");
+    DrainController drain = controller();
+
+    drain.drain();
+    drain.tick();
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+    drain.tick();
+    verify(stuck, never()).close(any(CloseReason.class));
+
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+    drain.tick();
+    verify(stuck, times(1)).close(any(CloseReason.class));
+    assertEquals(1.0, meterRegistry.counter("messaging.drain.flush.timeouts").count());
+  }
+}
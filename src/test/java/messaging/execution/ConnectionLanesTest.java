@@ -0,0 +1,131 @@
+package messaging.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConnectionLanesTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ConnectionLanes lanes = lanes(64);
+
+  private ConnectionLanes lanes(int maxQueued) {
+    BlockingExecutionConfiguration config = new BlockingExecutionConfiguration();
+    config.setMaxQueuedPerConnection(maxQueued);
+    return new ConnectionLanes(config, meterRegistry);
+  }
+
+  @AfterEach
+  void close() {
+    lanes.close();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  void submit_runsOneConnectionsTasksInOrderEvenWhenTheyBlock() throws Exception {
+    List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(50);
+    for (int i = 0; i < 50; i++) {
+      int task = i;
+      lanes.submit(
+          "alice-phone",
+          () -> {
+            // Earlier tasks sleep longer, so any reordering would show
+            sleep(task % 3 == 0 ? 2 : 0);
+            ran.add(task);
+            done.countDown();
+          });
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      expected.add(i);
+    }
+    assertEquals(expected, ran);
+  }
+
+  @Test
+  void submit_aBlockedConnectionDoesNotHoldUpOthers() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch otherRan = new CountDownLatch(1);
+    lanes.submit("slow", () -> awaitQuietly(release));
+
+    lanes.submit("fast", otherRan::countDown);
+
+    assertTrue(otherRan.await(5, TimeUnit.SECONDS));
+    release.countDown();
+  }
+
+  @Test
+  void submit_keepsDrainingAfterAFailedTaskAndDropsIdleLanes() throws Exception {
+    CountDownLatch done = new CountDownLatch(1);
+    lanes.submit(
+        "alice",
+        () -> {
+          throw new IllegalStateException("boom");
+        });
+    lanes.submit("alice", done::countDown);
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (meterRegistry.get("messaging.blocking.lanes").gauge().value() > 0
+        && System.nanoTime() < deadline) {
+      sleep(1);
+    }
+    assertEquals(0.0, meterRegistry.get("messaging.blocking.lanes").gauge().value());
+  }
+
+  @Test
+  void submit_refusesTasksOnceAConnectionsLaneIsFull() throws Exception {
+    ConnectionLanes bounded = lanes(2);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(3);
+    try {
+      bounded.submit(
+          "flooder",
+          () -> {
+            running.countDown();
+            awaitQuietly(release);
+            done.countDown();
+          });
+      assertTrue(running.await(5, TimeUnit.SECONDS));
+      assertTrue(bounded.submit("flooder", done::countDown));
+      assertTrue(bounded.submit("flooder", done::countDown));
+
+      assertFalse(bounded.submit("flooder", done::countDown));
+      assertTrue(bounded.submit("polite", () -> {}), "other connections are unaffected");
+      assertEquals(1.0, meterRegistry.counter("messaging.blocking.lane.rejected").count());
+      release.countDown();
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+      bounded.close();
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
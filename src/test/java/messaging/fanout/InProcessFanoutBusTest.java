@@ -0,0 +1,67 @@
+package messaging.fanout;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micronaut.websocket.WebSocketSession;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import messaging.ConnectionRegistries;
+import messaging.ConnectionRegistry;
+import org.junit.jupiter.api.Test;
+
+class InProcessFanoutBusTest {
+
+  @Test
+  void publish_reachesChannelMembersOnEveryNode() throws Exception {
+    InProcessFanoutBus bus = new InProcessFanoutBus();
+    List<WebSocketSession> sessions = new ArrayList<>();
+    List<AutoCloseable> subscriptions = new ArrayList<>();
+    for (int node = 0; node < 3; node++) {
+      ConnectionRegistry registry = ConnectionRegistries.create();
+      WebSocketSession session = mock(WebSocketSession.class);
+      when(session.getId()).thenReturn("session-" + node);
+      when(session.isOpen()).thenReturn(true);
+      when(session.sendAsync(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+      registry.registerUserSession("user-" + node, session, Set.of("general"));
+      sessions.add(session);
+      subscriptions.add(
+          bus.subscribe(
+              "node-" + node,
+              m -> registry.broadcastToChannel(m.channelId(), m.payload(), m.originSessionId())));
+    }
+
+    bus.publish(
+        new FanoutMessage(
+            FanoutMessage.Kind.MESSAGE, "user-0", "session-0", "general", "hello", null, 0, 0));
+
+    verify(sessions.get(1), timeout(1000)).sendAsync("hello");
+    verify(sessions.get(2), timeout(1000)).sendAsync("hello");
+    verify(sessions.get(0), never()).sendAsync(anyString());
+    for (AutoCloseable subscription : subscriptions) {
+      subscription.close();
+    }
+  }
+
+  @Test
+  void subscribe_closedSubscriptionStopsDelivery() throws Exception {
+    InProcessFanoutBus bus = new InProcessFanoutBus();
+    List<FanoutMessage> received = new ArrayList<>();
+    AutoCloseable subscription = bus.subscribe("node-0", received::add);
+    subscription.close();
+
+    bus.publish(
+        new FanoutMessage(
+            FanoutMessage.Kind.MESSAGE, "alice", null, "general", "hello", null, 0, 0));
+
+    Thread.sleep(50);
+    assertTrue(received.isEmpty());
+  }
+}
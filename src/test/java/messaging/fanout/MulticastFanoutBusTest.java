@@ -0,0 +1,74 @@
+package messaging.fanout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+class MulticastFanoutBusTest {
+
+  private static FanoutMessage message(String fromUserId, String channelId, String payload) {
+    return new FanoutMessage(
+        FanoutMessage.Kind.MESSAGE, fromUserId, null, channelId, payload, null, 0, 0);
+  }
+
+  @Test
+  void encode_roundTripsUnicodeFields() {
+    FanoutMessage message = message("älice", "général", "{\"text\":\"héllo ✓\"}");
+    assertEquals(message, MulticastFanoutBus.decode(MulticastFanoutBus.encode(message)));
+  }
+
+  @Test
+  void encode_roundTripsOriginMessageIdSequenceAndReceiveTime() {
+    FanoutMessage message =
+        new FanoutMessage(
+            FanoutMessage.Kind.MESSAGE,
+            "alice",
+            "session-1",
+            "general",
+            "hello",
+            "8c4f0b1e-6d2a-4e55-9a51-3f0c2b7d9e10",
+            42,
+            1792152000123456L);
+    assertEquals(message, MulticastFanoutBus.decode(MulticastFanoutBus.encode(message)));
+  }
+
+  @Test
+  void encode_roundTripsMembershipChanges() {
+    FanoutMessage message = FanoutMessage.membershipChanged("general", "alice", false);
+    assertEquals(message, MulticastFanoutBus.decode(MulticastFanoutBus.encode(message)));
+  }
+
+  @Test
+  void encode_roundTripsPresenceDiffsWithoutASender() {
+    FanoutMessage message = FanoutMessage.presence("general", "{\"type\":\"presence\"}");
+    assertEquals(message, MulticastFanoutBus.decode(MulticastFanoutBus.encode(message)));
+  }
+
+  @Test
+  void encode_rejectsMessagesLargerThanOneDatagram() {
+    String payload = "x".repeat(MulticastFanoutBus.MAX_DATAGRAM_BYTES);
+    assertNull(MulticastFanoutBus.encode(message("alice", "general", payload)));
+  }
+
+  // Needs a multicast-capable interface, which CI runners do not reliably provide
+  @Test
+  @EnabledIfSystemProperty(named = "fanout.multicast", matches = "true")
+  void publish_deliversToEverySubscriberOnTheHost() throws Exception {
+    MulticastFanoutBus bus = new MulticastFanoutBus(new FanoutConfiguration());
+    CompletableFuture<FanoutMessage> first = new CompletableFuture<>();
+    CompletableFuture<FanoutMessage> second = new CompletableFuture<>();
+    try (AutoCloseable a = bus.subscribe("node-a", first::complete);
+        AutoCloseable b = bus.subscribe("node-b", second::complete)) {
+      FanoutMessage message = message("alice", "general", "hello");
+      bus.publish(message);
+      assertEquals(message, first.get(2, TimeUnit.SECONDS));
+      assertEquals(message, second.get(2, TimeUnit.SECONDS));
+    } finally {
+      bus.close();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package messaging.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.scheduling.TaskScheduler;
+import io.micronaut.websocket.WebSocketSession;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import messaging.ConnectionRegistries;
+import messaging.ConnectionRegistry;
+import messaging.persistence.MessageRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class HistoryReplayerTest {
+
+  private final UUID channelId = UUID.randomUUID();
+  private final UUID senderId = UUID.randomUUID();
+  private final List<MessageRecord> stored = new ArrayList<>();
+  private final List<MessageCursor> pagesRequestedAfter = new ArrayList<>();
+  private final MessageHistory history =
+      new MessageHistory() {
+        @Override
+        public List<MessageRecord> page(
+            UUID channel, MessageCursor after, MessageCursor until, int limit) {
+          pagesRequestedAfter.add(after);
+          return stored.stream()
+              .filter(r -> MessageCursor.of(r).compareTo(after) > 0)
+              .filter(r -> MessageCursor.of(r).compareTo(until) <= 0)
+              .limit(limit)
+              .toList();
+        }
+
+        @Override
+        public MessageCursor head(UUID channel) {
+          return stored.isEmpty() ? MessageCursor.START : MessageCursor.of(stored.getLast());
+        }
+
+        @Override
+        public Map<UUID, Long> heads(Collection<UUID> channels) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<MessageRecord> range(
+            UUID channel, long afterSeq, long untilSeq, int limit) {
+          throw new UnsupportedOperationException();
+        }
+      };
+  private final RecentMessageBuffer recentMessages =
+      new RecentMessageBuffer(new RecentMessageBufferConfiguration(), new SimpleMeterRegistry());
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final ConnectionRegistry registry = ConnectionRegistries.create();
+  private final WebSocketSession session = mock(WebSocketSession.class);
+  private final BlockingQueue<Object> sent = new LinkedBlockingQueue<>();
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private HistoryReplayer replayer(int pageSize) {
+    HistoryReplayConfiguration config = new HistoryReplayConfiguration();
+    config.setPageSize(pageSize);
+    when(session.isOpen()).thenReturn(true);
+    when(session.getId()).thenReturn("s1");
+    when(session.sendAsync(any()))
+        .thenAnswer(
+            invocation -> {
+              sent.add(invocation.getArgument(0));
+              return CompletableFuture.completedFuture(null);
+            });
+    registry.registerUserSession("alice", session);
+    return new HistoryReplayer(
+        history, recentMessages, registry, executor, mock(TaskScheduler.class), config);
+  }
+
+  private void store(int count) {
+    Instant base = Instant.now().truncatedTo(ChronoUnit.MICROS).minusSeconds(60);
+    for (int i = 0; i < count; i++) {
+      stored.add(
+          new MessageRecord(
+              channelId,
+              UUID.randomUUID(),
+              senderId,
+              base.plusMillis(i),
+              "message " + i,
+              i + 1,
+              null));
+    }
+  }
+
+  @Test
+  void resume_pagesThroughMissedMessagesThenCompletes() throws Exception {
+    store(250);
+    HistoryReplayer replayer = replayer(100);
+
+    replayer.resume("alice", session, channelId, MessageCursor.of(stored.get(9)));
+
+    List<String> received = new ArrayList<>();
+    String payload;
+    do {
+      payload = (String) sent.poll(5, TimeUnit.SECONDS);
+      assertNotNull(payload, "Replay stalled after " + received.size() + " messages");
+      received.add(payload);
+    } while (!payload.contains(HistoryReplayer.RESUME_COMPLETE_TYPE));
+
+    assertEquals(241, received.size(), "240 missed messages plus the completion");
+    assertTrue(received.get(0).contains("\"text\":\"message 10\""));
+    assertTrue(received.get(239).contains("\"text\":\"message 249\""));
+    assertTrue(payload.contains(MessageCursor.of(stored.get(249)).encode()));
+    assertEquals(
+        List.of(
+            MessageCursor.of(stored.get(9)),
+            MessageCursor.of(stored.get(109)),
+            MessageCursor.of(stored.get(209))),
+        pagesRequestedAfter);
+  }
+
+  @Test
+  void resume_servesBufferedRangeWithoutQueryingHistory() throws Exception {
+    HistoryReplayer replayer = replayer(100);
+    MessageCursor seen = new MessageCursor(7);
+    recentMessages.record(channelId.toString(), seen, "seen");
+    recentMessages.record(channelId.toString(), new MessageCursor(8), "missed");
+
+    // The buffer holds every message from "seen" on, so nothing after it can be missing
+    replayer.resume("alice", session, channelId, seen);
+
+    assertEquals("missed", sent.poll(5, TimeUnit.SECONDS));
+    Object complete = sent.poll(5, TimeUnit.SECONDS);
+    assertTrue(((String) complete).contains(HistoryReplayer.RESUME_COMPLETE_TYPE));
+    assertTrue(pagesRequestedAfter.isEmpty());
+  }
+
+  @Test
+  void resume_stopsWhenSessionIsReplaced() throws Exception {
+    store(10);
+    HistoryReplayer replayer = replayer(100);
+    registry.removeUserSession("alice", session);
+
+    replayer.resume("alice", session, channelId, MessageCursor.START);
+
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(0, sent.size());
+  }
+}
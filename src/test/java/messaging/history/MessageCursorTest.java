@@ -0,0 +1,30 @@
+package messaging.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class MessageCursorTest {
+
+  @Test
+  void encode_roundTripsThroughParse() {
+    MessageCursor cursor = new MessageCursor(1_234_567_890_123L);
+
+    assertEquals(cursor, MessageCursor.parse(cursor.encode()));
+  }
+
+  @Test
+  void parse_rejectsMalformedCursors() {
+    assertThrows(IllegalArgumentException.class, () -> MessageCursor.parse("nope"));
+    assertThrows(IllegalArgumentException.class, () -> MessageCursor.parse("-3"));
+    assertThrows(IllegalArgumentException.class, () -> MessageCursor.parse("12_5"));
+  }
+
+  @Test
+  void compareTo_ordersBySeq() {
+    assertTrue(new MessageCursor(9).compareTo(new MessageCursor(10)) < 0);
+    assertTrue(MessageCursor.START.compareTo(new MessageCursor(1)) < 0);
+  }
+}
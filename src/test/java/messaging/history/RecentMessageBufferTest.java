@@ -0,0 +1,78 @@
+package messaging.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class RecentMessageBufferTest {
+
+  private static final MessageCursor UNBOUNDED = new MessageCursor(Long.MAX_VALUE);
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private RecentMessageBuffer buffer(int capacity) {
+    RecentMessageBufferConfiguration config = new RecentMessageBufferConfiguration();
+    config.setCapacity(capacity);
+    return new RecentMessageBuffer(config, meterRegistry);
+  }
+
+  private static MessageCursor seq(long seq) {
+    return new MessageCursor(seq);
+  }
+
+  private static List<String> payloads(Optional<List<RecentMessageBuffer.Entry>> page) {
+    return page.orElseThrow().stream().map(RecentMessageBuffer.Entry::payload).toList();
+  }
+
+  @Test
+  void page_returnsRangeInSeqOrder() {
+    RecentMessageBuffer buffer = buffer(8);
+    buffer.record("c1", seq(1), "first");
+    buffer.record("c1", seq(2), "second");
+    buffer.record("c1", seq(3), "third");
+
+    assertEquals(List.of("second", "third"), payloads(buffer.page("c1", seq(1), UNBOUNDED, 10)));
+    assertEquals(List.of("second"), payloads(buffer.page("c1", seq(1), UNBOUNDED, 1)));
+    assertEquals(List.of("first", "second"), payloads(buffer.page("c1", seq(0), seq(2), 10)));
+    assertEquals(seq(3), buffer.latest("c1").orElseThrow());
+  }
+
+  @Test
+  void page_fallsBackOnceTheRangeHasBeenEvicted() {
+    RecentMessageBuffer buffer = buffer(2);
+    buffer.record("c1", seq(1), "first");
+    buffer.record("c1", seq(2), "second");
+    buffer.record("c1", seq(3), "third");
+
+    assertTrue(buffer.page("c1", seq(0), UNBOUNDED, 10).isEmpty(), "first was evicted");
+    assertEquals(List.of("second", "third"), payloads(buffer.page("c1", seq(1), UNBOUNDED, 10)));
+    assertTrue(buffer.page("unknown", seq(1), UNBOUNDED, 10).isEmpty());
+    assertEquals(1.0, meterRegistry.counter("messaging.history.buffer.hits").count());
+    assertEquals(2.0, meterRegistry.counter("messaging.history.buffer.misses").count());
+  }
+
+  @Test
+  void page_refusesCursorsFromBeforeTheBufferExisted() {
+    RecentMessageBuffer buffer = buffer(8);
+    buffer.record("c1", seq(41), "first");
+
+    assertTrue(buffer.page("c1", seq(39), UNBOUNDED, 10).isEmpty());
+    assertEquals(List.of("first"), payloads(buffer.page("c1", seq(40), UNBOUNDED, 10)));
+  }
+
+  @Test
+  void page_refusesRangesAcrossAGapTheSequencerSkipped() {
+    RecentMessageBuffer buffer = buffer(8);
+    buffer.record("c1", seq(1), "first");
+    buffer.record("c1", seq(2), "second");
+    buffer.record("c1", seq(5), "fifth");
+    buffer.record("c1", seq(3), "late third");
+
+    assertTrue(buffer.page("c1", seq(1), UNBOUNDED, 10).isEmpty(), "3 and 4 are not held");
+    assertEquals(List.of("fifth"), payloads(buffer.page("c1", seq(4), UNBOUNDED, 10)));
+  }
+}
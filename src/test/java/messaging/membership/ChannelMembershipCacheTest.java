@@ -0,0 +1,141 @@
+package messaging.membership;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ChannelMembershipCacheTest {
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final AtomicInteger loads = new AtomicInteger();
+  private final InMemoryChannelMembershipSource members = new InMemoryChannelMembershipSource();
+  private final ChannelMembershipSource countingSource =
+      new ChannelMembershipSource() {
+        @Override
+        public Set<String> loadMembers(String channelId) {
+          loads.incrementAndGet();
+          return members.loadMembers(channelId);
+        }
+
+        @Override
+        public Set<String> loadChannels(String userId) {
+          return members.loadChannels(userId);
+        }
+      };
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private ChannelMembershipCache cache(Duration ttl, long maxMembers) {
+    ChannelMembershipConfiguration config = new ChannelMembershipConfiguration();
+    config.setTtl(ttl);
+    config.setMaxMembers(maxMembers);
+    return new ChannelMembershipCache(countingSource, config, executor, meterRegistry);
+  }
+
+  @Test
+  void members_loadsOnceThenServesFromCache() throws Exception {
+    members.addMember("c1", "alice");
+    ChannelMembershipCache cache = cache(Duration.ofMinutes(1), 100);
+
+    assertTrue(cache.isMember("c1", "alice").get());
+    assertFalse(cache.isMember("c1", "bob").get());
+
+    assertEquals(1, loads.get());
+    assertEquals(1.0, gets("miss"));
+    assertEquals(1.0, gets("hit"));
+  }
+
+  private double gets(String result) {
+    return meterRegistry.get("cache.gets").tag("result", result).functionCounter().count();
+  }
+
+  @Test
+  void invalidate_reloadsChangedMembership() throws Exception {
+    ChannelMembershipCache cache = cache(Duration.ofMinutes(1), 100);
+    assertFalse(cache.isMember("c1", "alice").get());
+
+    members.addMember("c1", "alice");
+    assertFalse(cache.isMember("c1", "alice").get(), "Stale until invalidated");
+    cache.invalidate("c1");
+
+    assertTrue(cache.isMember("c1", "alice").get());
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void members_expireAfterTtl() throws Exception {
+    ChannelMembershipCache cache = cache(Duration.ofMillis(20), 100);
+    cache.members("c1").get();
+
+    members.addMember("c1", "alice");
+    Thread.sleep(50);
+
+    assertTrue(cache.isMember("c1", "alice").get());
+  }
+
+  @Test
+  void loadListener_isToldAboutEveryLoadedMemberSet() throws Exception {
+    members.addMember("c1", "alice");
+    ChannelMembershipCache cache = cache(Duration.ofMinutes(1), 100);
+    Map<String, Set<String>> loaded = new ConcurrentHashMap<>();
+    cache.setLoadListener(loaded::put);
+
+    cache.members("c1").get();
+
+    assertEquals(Map.of("c1", Set.of("alice")), loaded);
+  }
+
+  @Test
+  void loadListener_skipsLoadsThatOverlappedAnInvalidation() throws Exception {
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch proceed = new CountDownLatch(1);
+    ChannelMembershipSource slowSource =
+        new ChannelMembershipSource() {
+          @Override
+          public Set<String> loadMembers(String channelId) {
+            loading.countDown();
+            try {
+              proceed.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return Set.of("alice");
+          }
+
+          @Override
+          public Set<String> loadChannels(String userId) {
+            return Set.of();
+          }
+        };
+    ChannelMembershipCache cache =
+        new ChannelMembershipCache(
+            slowSource, new ChannelMembershipConfiguration(), executor, meterRegistry);
+    AtomicInteger reported = new AtomicInteger();
+    cache.setLoadListener((channelId, loaded) -> reported.incrementAndGet());
+
+    CompletableFuture<Set<String>> stale = cache.members("c1");
+    loading.await();
+    cache.invalidate("c1");
+    proceed.countDown();
+    stale.get();
+
+    assertEquals(0, reported.get());
+  }
+}
@@ -0,0 +1,243 @@
+package messaging.ordering;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.scheduling.TaskScheduler;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import messaging.fanout.FanoutMessage;
+import messaging.history.MessageCursor;
+import messaging.history.MessageHistory;
+import messaging.persistence.MessageRecord;
+import org.junit.jupiter.api.Test;
+
+class ChannelSequencerTest {
+
+  private final UUID channelId = UUID.randomUUID();
+  private final UUID senderId = UUID.randomUUID();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final TaskScheduler scheduler = mock(TaskScheduler.class);
+  private final List<Runnable> timers = new ArrayList<>();
+  private final List<long[]> rangesRead = new ArrayList<>();
+  private final List<Long> delivered = new ArrayList<>();
+  private boolean historyHasGap = true;
+
+  private final MessageHistory history =
+      new MessageHistory() {
+        @Override
+        public List<MessageRecord> page(
+            UUID channel, MessageCursor after, MessageCursor until, int limit) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MessageCursor head(UUID channel) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<UUID, Long> heads(Collection<UUID> channels) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<MessageRecord> range(
+            UUID channel, long afterSeq, long untilSeq, int limit) {
+          rangesRead.add(new long[] {afterSeq, untilSeq});
+          if (!historyHasGap) return List.of();
+          return LongStream.rangeClosed(afterSeq + 1, untilSeq)
+              .mapToObj(
+                  seq ->
+                      new MessageRecord(
+                          channel,
+                          UUID.randomUUID(),
+                          senderId,
+                          Instant.now(),
+                          "m" + seq,
+                          seq,
+                          null))
+              .limit(limit)
+              .toList();
+        }
+      };
+
+  /** Max wait is zero so a fired timer always finds the gap expired; executor runs inline. */
+  private Consumer<FanoutMessage> sequencer(MessageHistory history, int maxHeld) {
+    when(scheduler.schedule(any(Duration.class), any(Runnable.class)))
+        .thenAnswer(
+            invocation -> {
+              timers.add(invocation.getArgument(1));
+              return null;
+            });
+    OrderingConfiguration config = new OrderingConfiguration();
+    config.setMaxWait(Duration.ZERO);
+    config.setMaxHeld(maxHeld);
+    return new ChannelSequencer(config, history, Runnable::run, scheduler, meterRegistry)
+        .inOrder(message -> delivered.add(message.seq()));
+  }
+
+  private FanoutMessage message(long seq) {
+    return new FanoutMessage(
+        FanoutMessage.Kind.MESSAGE, "alice", null, channelId.toString(), "m" + seq, null, seq, 0);
+  }
+
+  private void fireTimers() {
+    List<Runnable> due = new ArrayList<>(timers);
+    timers.clear();
+    due.forEach(Runnable::run);
+  }
+
+  private double count(String name) {
+    return meterRegistry.counter("messaging.ordering." + name).count();
+  }
+
+  @Test
+  void inOrder_deliversEarlyArrivalsOnceTheGapFills() {
+    Consumer<FanoutMessage> sequencer = sequencer(history, 100);
+
+    sequencer.accept(message(1));
+    sequencer.accept(message(3));
+    sequencer.accept(message(4));
+    assertEquals(List.of(1L), delivered);
+
+    sequencer.accept(message(2));
+    assertEquals(List.of(1L, 2L, 3L, 4L), delivered);
+
+    fireTimers();
+    assertEquals(0.0, count("gaps"));
+  }
+
+  @Test
+  void inOrder_deliversAnUnknownChannelsFirstMessageAtOnce() {
+    Consumer<FanoutMessage> sequencer = sequencer(history, 100);
+
+    sequencer.accept(message(8));
+    sequencer.accept(message(9));
+
+    assertEquals(List.of(8L, 9L), delivered);
+    assertEquals(List.of(), timers);
+    assertEquals(List.of(), rangesRead);
+  }
+
+  @Test
+  void inOrder_keepsOneTimerPerGapWhileDeliveryAdvances() {
+    Consumer<FanoutMessage> sequencer = sequencer(history, 100);
+    sequencer.accept(message(1));
+    sequencer.accept(message(3));
+    sequencer.accept(message(5));
+
+    sequencer.accept(message(2));
+
+    assertEquals(List.of(1L, 2L, 3L), delivered);
+    assertEquals(1, timers.size());
+  }
+
+  @Test
+  void inOrder_dropsRedeliveredAndAlreadyHeldMessages() {
+    Consumer<FanoutMessage> sequencer = sequencer(history, 100);
+
+    sequencer.accept(message(1));
+    sequencer.accept(message(3));
+    sequencer.accept(message(3));
+    sequencer.accept(message(1));
+    sequencer.accept(message(2));
+
+    assertEquals(List.of(1L, 2L, 3L), delivered);
+    assertEquals(2.0, count("duplicates"));
+  }
+
+  @Test
+  void inOrder_catchesUpAGapFromHistoryAfterTheWait() {
+    Consumer<FanoutMessage> sequencer = sequencer(history, 100);
+    sequencer.accept(message(1));
+    sequencer.accept(message(4));
+
+    fireTimers();
+
+    assertEquals(List.of(1L, 2L, 3L, 4L), delivered);
+    assertEquals(1, rangesRead.size());
+    assertEquals(1, rangesRead.get(0)[0]);
+    assertEquals(3, rangesRead.get(0)[1]);
+    assertEquals(1.0, count("gaps"));
+    assertEquals(2.0, count("recovered"));
+
+    // A late copy of a recovered message is a duplicate
+    sequencer.accept(message(2));
+    assertEquals(4, delivered.size());
+  }
+
+  @Test
+  void inOrder_movesPastAGapHistoryCannotFill() {
+    historyHasGap = false;
+    Consumer<FanoutMessage> sequencer = sequencer(history, 100);
+    sequencer.accept(message(1));
+    sequencer.accept(message(4));
+    sequencer.accept(message(5));
+
+    fireTimers();
+
+    assertEquals(List.of(1L, 4L, 5L), delivered);
+    assertEquals(2.0, count("skipped"));
+  }
+
+  @Test
+  void inOrder_catchesUpAtOnceWhenTooManyMessagesAreHeld() {
+    Consumer<FanoutMessage> sequencer = sequencer(history, 2);
+    sequencer.accept(message(1));
+    sequencer.accept(message(5));
+    sequencer.accept(message(6));
+    assertEquals(List.of(1L), delivered);
+
+    sequencer.accept(message(7));
+
+    assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L), delivered);
+  }
+
+  @Test
+  void inOrder_readsAWideGapAtMostMaxHeldAtATime() {
+    Consumer<FanoutMessage> sequencer = sequencer(history, 2);
+    sequencer.accept(message(1));
+    sequencer.accept(message(7));
+
+    fireTimers();
+
+    assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L), delivered);
+    assertEquals(List.of(1L, 3L, 5L), rangesRead.stream().map(range -> range[0]).toList());
+    assertEquals(List.of(3L, 5L, 6L), rangesRead.stream().map(range -> range[1]).toList());
+    assertEquals(1.0, count("gaps"));
+    assertEquals(5.0, count("recovered"));
+  }
+
+  @Test
+  void inOrder_withoutHistorySkipsGapsAfterTheWait() {
+    Consumer<FanoutMessage> sequencer = sequencer(null, 100);
+    sequencer.accept(message(1));
+    sequencer.accept(message(3));
+
+    fireTimers();
+
+    assertEquals(List.of(1L, 3L), delivered);
+    assertEquals(1.0, count("skipped"));
+  }
+
+  @Test
+  void inOrder_passesUnsequencedMessagesStraightThrough() {
+    Consumer<FanoutMessage> sequencer = sequencer(history, 100);
+
+    sequencer.accept(FanoutMessage.presence("general", "hello"));
+    sequencer.accept(FanoutMessage.presence("general", "again"));
+
+    assertEquals(List.of(0L, 0L), delivered);
+  }
+}
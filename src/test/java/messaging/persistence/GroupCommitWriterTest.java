@@ -0,0 +1,137 @@
+package messaging.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class GroupCommitWriterTest {
+
+  private final JdbcMessageStore jdbcMessageStore = mock(JdbcMessageStore.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ExecutorService databaseExecutor = Executors.newVirtualThreadPerTaskExecutor();
+  private GroupCommitWriter writer;
+
+  private GroupCommitWriter startWriter(Duration maxWait, int maxBatchSize) {
+    GroupCommitConfiguration config = new GroupCommitConfiguration();
+    config.setMaxWait(maxWait);
+    config.setMaxBatchSize(maxBatchSize);
+    writer = new GroupCommitWriter(jdbcMessageStore, config, databaseExecutor, meterRegistry);
+    writer.start();
+    return writer;
+  }
+
+  @AfterEach
+  void stopWriter() throws InterruptedException {
+    if (writer != null) writer.stop();
+    databaseExecutor.close();
+  }
+
+  @Test
+  void append_messagesWithinWindowShareOneCommitPerChannel() throws Exception {
+    startWriter(Duration.ofMillis(200), 100);
+    UUID channel = UUID.randomUUID();
+    UUID sender = UUID.randomUUID();
+
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      futures.add(writer.append(MessageRecord.newMessage(channel, sender, "m" + i)));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(2, TimeUnit.SECONDS);
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<MessageRecord>> batch = ArgumentCaptor.forClass(List.class);
+    verify(jdbcMessageStore, times(1)).writeChannel(batch.capture());
+    assertEquals(5, batch.getValue().size());
+    assertEquals(5.0, meterRegistry.summary("messaging.persistence.batch.size").totalAmount());
+  }
+
+  @Test
+  void append_fullBatchCommitsWithoutWaitingForWindow() throws Exception {
+    startWriter(Duration.ofMinutes(1), 2);
+    UUID channel = UUID.randomUUID();
+    UUID sender = UUID.randomUUID();
+
+    writer
+        .append(
+            List.of(
+                MessageRecord.newMessage(channel, sender, "a"),
+                MessageRecord.newMessage(channel, sender, "b")))
+        .get(2, TimeUnit.SECONDS);
+
+    verify(jdbcMessageStore, times(1)).writeChannel(anyList());
+  }
+
+  @Test
+  void append_failedCommitFailsEverySenderInThatChannel() {
+    doThrow(new MessagePersistenceException("boom")).when(jdbcMessageStore).writeChannel(anyList());
+    startWriter(Duration.ofMillis(50), 100);
+
+    CompletableFuture<Void> future =
+        writer.append(MessageRecord.newMessage(UUID.randomUUID(), UUID.randomUUID(), "x"));
+
+    ExecutionException ex =
+        assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+    assertInstanceOf(MessagePersistenceException.class, ex.getCause());
+  }
+
+  @Test
+  void commit_writesChannelsOfOneBatchInParallel() throws Exception {
+    // Each channel's commit waits until the other has started, so a serial writer would time out
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    doAnswer(
+            invocation -> {
+              bothStarted.countDown();
+              if (!bothStarted.await(2, TimeUnit.SECONDS)) throw new IllegalStateException();
+              return null;
+            })
+        .when(jdbcMessageStore)
+        .writeChannel(anyList());
+    startWriter(Duration.ofMillis(200), 2);
+    UUID sender = UUID.randomUUID();
+
+    writer
+        .append(
+            List.of(
+                MessageRecord.newMessage(UUID.randomUUID(), sender, "a"),
+                MessageRecord.newMessage(UUID.randomUUID(), sender, "b")))
+        .get(5, TimeUnit.SECONDS);
+
+    verify(jdbcMessageStore, times(2)).writeChannel(anyList());
+  }
+
+  @Test
+  void append_afterStopFailsRatherThanWaitingForever() throws Exception {
+    startWriter(Duration.ofMillis(50), 100);
+    writer.stop();
+
+    CompletableFuture<Void> future =
+        writer.append(MessageRecord.newMessage(UUID.randomUUID(), UUID.randomUUID(), "late"));
+
+    ExecutionException ex =
+        assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+    assertInstanceOf(MessagePersistenceException.class, ex.getCause());
+    verify(jdbcMessageStore, never()).writeChannel(anyList());
+  }
+}
@@ -0,0 +1,107 @@
+package messaging.presence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class LivenessMonitorTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  /** Pings every two ticks. */
+  private LivenessMonitor monitor() {
+    return monitor(true);
+  }
+
+  private LivenessMonitor monitor(boolean enabled) {
+    PresenceConfiguration config = new PresenceConfiguration();
+    config.setEnabled(enabled);
+    config.setPingInterval(Duration.ofSeconds(2));
+    config.setWheelTick(Duration.ofSeconds(1));
+    return new LivenessMonitor(config, meterRegistry);
+  }
+
+  /** A session that keeps its attributes and stays open until closed. */
+  private static WebSocketSession session() {
+    WebSocketSession session = mock(WebSocketSession.class);
+    Map<String, Object> attributes = new HashMap<>();
+    AtomicBoolean open = new AtomicBoolean(true);
+    when(session.put(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              attributes.put(invocation.getArgument(0), invocation.getArgument(1));
+              return session;
+            });
+    when(session.get(any(), any(Class.class), any()))
+        .thenAnswer(
+            invocation ->
+                attributes.getOrDefault(invocation.getArgument(0), invocation.getArgument(2)));
+    when(session.isOpen()).thenAnswer(invocation -> open.get());
+    doAnswer(invocation -> open.getAndSet(false)).when(session).close(any(CloseReason.class));
+    return session;
+  }
+
+  @Test
+  void tick_pingsEachSessionOncePerInterval() {
+    LivenessMonitor liveness = monitor();
+    WebSocketSession session = session();
+    liveness.track(session);
+
+    liveness.tick();
+    verify(session, never()).sendPingAsync(any());
+    liveness.tick();
+    verify(session, times(1)).sendPingAsync(any());
+
+    liveness.onPong(session);
+    liveness.tick();
+    liveness.tick();
+    verify(session, times(2)).sendPingAsync(any());
+    verify(session, never()).close(any(CloseReason.class));
+  }
+
+  @Test
+  void tick_closesSessionsThatMissedAPong() {
+    LivenessMonitor liveness = monitor();
+    WebSocketSession session = session();
+    liveness.track(session);
+
+    liveness.tick();
+    liveness.tick();
+    liveness.tick();
+    liveness.tick();
+
+    ArgumentCaptor<CloseReason> reason = ArgumentCaptor.forClass(CloseReason.class);
+    verify(session).close(reason.capture());
+    assertEquals(LivenessMonitor.PING_TIMEOUT_CLOSE_CODE, reason.getValue().getCode());
+    assertEquals(1.0, meterRegistry.counter("messaging.presence.ping.timeouts").count());
+  }
+
+  @Test
+  void track_ignoresSessionsWhilePresenceIsDisabled() {
+    LivenessMonitor liveness = monitor(false);
+    WebSocketSession session = session();
+    liveness.track(session);
+
+    for (int i = 0; i < 4; i++) {
+      liveness.tick();
+    }
+
+    verify(session, never()).sendPingAsync(any());
+    verify(session, never()).close(any(CloseReason.class));
+  }
+}
@@ -0,0 +1,99 @@
+package messaging.presence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.websocket.WebSocketSession;
+import java.util.List;
+import java.util.Set;
+import messaging.ConnectionRegistries;
+import messaging.ConnectionRegistry;
+import messaging.fanout.FanoutBus;
+import messaging.fanout.FanoutMessage;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class PresenceTrackerTest {
+
+  private final ConnectionRegistry registry = ConnectionRegistries.create();
+  private final FanoutBus fanoutBus = mock(FanoutBus.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private PresenceTracker tracker(int maxUsersPerDiff) {
+    PresenceConfiguration config = new PresenceConfiguration();
+    config.setMaxUsersPerDiff(maxUsersPerDiff);
+    PresenceTracker presence = new PresenceTracker(registry, fanoutBus, config, meterRegistry);
+    presence.listen();
+    return presence;
+  }
+
+  private List<FanoutMessage> published(int count) {
+    ArgumentCaptor<FanoutMessage> captor = ArgumentCaptor.forClass(FanoutMessage.class);
+    verify(fanoutBus, times(count)).publish(captor.capture());
+    return captor.getAllValues();
+  }
+
+  @Test
+  void flush_publishesOneDiffPerChannelForTheWindowsJoins() {
+    PresenceTracker presence = tracker(100);
+    registry.registerUserSession("alice", mock(WebSocketSession.class), Set.of("general"));
+    registry.registerUserSession("bob", mock(WebSocketSession.class), Set.of("general"));
+
+    presence.flush();
+
+    FanoutMessage diff = published(1).get(0);
+    assertEquals(FanoutMessage.Kind.PRESENCE, diff.kind());
+    assertEquals("general", diff.channelId());
+    assertEquals(
+        "{\"type\":\"presence\",\"channelId\":\"general\",\"online\":[\"alice\",\"bob\"],"
+            + "\"offline\":[]}",
+        diff.payload());
+  }
+
+  @Test
+  void flush_leavesOutUsersWhoseStatusEndedWhereItStarted() {
+    PresenceTracker presence = tracker(100);
+    WebSocketSession first = mock(WebSocketSession.class);
+    registry.registerUserSession("alice", first, Set.of("general"));
+    presence.flush();
+
+    // A reconnect within the window: offline, then online again
+    registry.removeUserSession("alice", first);
+    registry.registerUserSession("alice", mock(WebSocketSession.class), Set.of("general"));
+    presence.flush();
+
+    published(1);
+    assertEquals(1.0, meterRegistry.counter("messaging.presence.coalesced").count());
+  }
+
+  @Test
+  void flush_splitsLargeDiffs() {
+    PresenceTracker presence = tracker(2);
+    for (int i = 0; i < 5; i++) {
+      registry.registerUserSession("user-" + i, mock(WebSocketSession.class), Set.of("general"));
+    }
+
+    presence.flush();
+
+    assertEquals(3, published(3).size());
+    assertEquals(3.0, meterRegistry.counter("messaging.presence.diffs").count());
+  }
+
+  @Test
+  void disabled_publishesNothing() {
+    PresenceConfiguration config = new PresenceConfiguration();
+    config.setEnabled(false);
+    PresenceTracker presence = new PresenceTracker(registry, fanoutBus, config, meterRegistry);
+    presence.listen();
+    registry.registerUserSession("alice", mock(WebSocketSession.class), Set.of("general"));
+
+    presence.flush();
+
+    verify(fanoutBus, never()).publish(any());
+  }
+}
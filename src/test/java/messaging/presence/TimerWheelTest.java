@@ -0,0 +1,42 @@
+package messaging.presence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TimerWheelTest {
+
+  @Test
+  void advance_handsBackItemsOnTheirTick() {
+    TimerWheel<String> wheel = new TimerWheel<>(3);
+    wheel.schedule("a", 1);
+    wheel.schedule("b", 3);
+    wheel.schedule("c", 3);
+    assertEquals(3, wheel.size());
+
+    assertEquals(List.of("a"), wheel.advance());
+    assertEquals(List.of(), wheel.advance());
+    assertEquals(List.of("b", "c"), wheel.advance());
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  void schedule_wrapsAroundTheRing() {
+    TimerWheel<String> wheel = new TimerWheel<>(2);
+    wheel.advance();
+    wheel.advance();
+    wheel.schedule("a", 2);
+
+    assertEquals(List.of(), wheel.advance());
+    assertEquals(List.of("a"), wheel.advance());
+  }
+
+  @Test
+  void schedule_rejectsTicksBeyondTheWheel() {
+    TimerWheel<String> wheel = new TimerWheel<>(2);
+    assertThrows(IllegalArgumentException.class, () -> wheel.schedule("a", 0));
+    assertThrows(IllegalArgumentException.class, () -> wheel.schedule("a", 3));
+  }
+}
@@ -0,0 +1,109 @@
+package messaging.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class InboundEnvelopeParserTest {
+
+  private final InboundEnvelopeParser parser = new InboundEnvelopeParser(16);
+
+  @Test
+  void parse_readsAllFieldsAndSkipsUnknownOnes() {
+    InboundEnvelope envelope =
+        parser.parse(
+            "{\"type\":\"message\",\"extra\":{\"nested\":[1,2]},\"channelId\":\"c1\","
+                + "\"clientMsgId\":\"m-1\",\"body\":\"hi \\\"there\\\"\"}");
+
+    assertEquals(new InboundEnvelope("message", "c1", "m-1", "hi \"there\"", null, 0), envelope);
+  }
+
+  @Test
+  void parse_allowsMissingClientMsgId() {
+    InboundEnvelope envelope =
+        parser.parse("{\"type\":\"message\",\"channelId\":\"c1\",\"body\":\"hi\"}");
+
+    assertNull(envelope.clientMsgId());
+  }
+
+  @Test
+  void parse_rejectsMissingRequiredFields() {
+    InvalidEnvelopeException e =
+        assertThrows(
+            InvalidEnvelopeException.class,
+            () -> parser.parse("{\"type\":\"message\",\"body\":\"hi\"}"));
+
+    assertEquals(InboundEnvelopeParser.REASON_INVALID, e.reason());
+  }
+
+  @Test
+  void parse_readsResumeWithoutBody() {
+    InboundEnvelope envelope =
+        parser.parse("{\"type\":\"resume\",\"channelId\":\"c1\",\"cursor\":\"123_abc\"}");
+
+    assertEquals(new InboundEnvelope("resume", "c1", null, null, "123_abc", 0), envelope);
+  }
+
+  @Test
+  void parse_readsAckSeq() {
+    InboundEnvelope envelope = parser.parse("{\"type\":\"ack\",\"channelId\":\"c1\",\"seq\":42}");
+
+    assertEquals(new InboundEnvelope("ack", "c1", null, null, null, 42), envelope);
+  }
+
+  @Test
+  void parse_rejectsAckWithoutPositiveIntegerSeq() {
+    assertThrows(
+        InvalidEnvelopeException.class,
+        () -> parser.parse("{\"type\":\"ack\",\"channelId\":\"c1\"}"));
+    assertThrows(
+        InvalidEnvelopeException.class,
+        () -> parser.parse("{\"type\":\"ack\",\"channelId\":\"c1\",\"seq\":\"42\"}"));
+    assertThrows(
+        InvalidEnvelopeException.class,
+        () -> parser.parse("{\"type\":\"ack\",\"channelId\":\"c1\",\"seq\":1e3}"));
+    assertThrows(
+        InvalidEnvelopeException.class,
+        () -> parser.parse("{\"type\":\"ack\",\"channelId\":\"c1\",\"seq\":99999999999999999999}"));
+  }
+
+  @Test
+  void parse_rejectsNonStringBody() {
+    assertThrows(
+        InvalidEnvelopeException.class,
+        () -> parser.parse("{\"type\":\"message\",\"channelId\":\"c1\",\"body\":{\"a\":1}}"));
+  }
+
+  @Test
+  void parse_rejectsMalformedAndTrailingContent() {
+    assertThrows(InvalidEnvelopeException.class, () -> parser.parse("{\"type\":\"message\""));
+    assertThrows(
+        InvalidEnvelopeException.class,
+        () -> parser.parse("{\"type\":\"message\",\"channelId\":\"c1\",\"body\":\"hi\"} {}"));
+  }
+
+  @Test
+  void parse_rejectsOversizedBody() {
+    InvalidEnvelopeException e =
+        assertThrows(
+            InvalidEnvelopeException.class,
+            () ->
+                parser.parse(
+                    "{\"type\":\"message\",\"channelId\":\"c1\",\"body\":\""
+                        + "x".repeat(17)
+                        + "\"}"));
+
+    assertEquals(InboundEnvelopeParser.REASON_BODY_TOO_LARGE, e.reason());
+  }
+
+  @Test
+  void isEnvelope_distinguishesJsonObjectsFromPlainText() {
+    assertTrue(InboundEnvelopeParser.isEnvelope("  {\"type\":\"message\"}"));
+    assertFalse(InboundEnvelopeParser.isEnvelope("Hello, Bob!"));
+    assertFalse(InboundEnvelopeParser.isEnvelope(""));
+  }
+}
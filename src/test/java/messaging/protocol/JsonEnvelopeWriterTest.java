@@ -0,0 +1,73 @@
+package messaging.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class JsonEnvelopeWriterTest {
+
+  @Test
+  void toJson_writesFieldsInOrder() {
+    String json = JsonEnvelopeWriter.begin("ack").field("userId", "u1").field("seq", 42).toJson();
+
+    assertEquals("{\"type\":\"ack\",\"userId\":\"u1\",\"seq\":42}", json);
+  }
+
+  @Test
+  void field_escapesQuotesBackslashesAndControlCharacters() {
+    String json =
+        JsonEnvelopeWriter.begin("message")
+            .field("text", "say \"hi\"\\\n\r\t\b\f\u0001 \u2028end")
+            .toJson();
+
+    assertEquals(
+        "{\"type\":\"message\",\"text\":\"say \\\"hi\\\"\\\\\\n\\r\\t\\b\\f\\u0001 \\u2028end\"}",
+        json);
+  }
+
+  @Test
+  void arrayField_writesEscapedStrings() {
+    String json =
+        JsonEnvelopeWriter.begin("presence")
+            .arrayField("online", List.of("u1", "u\"2"))
+            .arrayField("offline", List.of())
+            .toJson();
+
+    assertEquals("{\"type\":\"presence\",\"online\":[\"u1\",\"u\\\"2\"],\"offline\":[]}", json);
+  }
+
+  @Test
+  void field_writesNullValueAsJsonNull() {
+    assertEquals(
+        "{\"type\":\"message\",\"from\":null}",
+        JsonEnvelopeWriter.begin("message").field("from", null).toJson());
+  }
+
+  @Test
+  void begin_resetsCallerBufferBetweenEnvelopes() {
+    StringBuilder buffer = new StringBuilder();
+    JsonEnvelopeWriter.begin("first", buffer).field("text", "x".repeat(100)).toJson();
+
+    assertEquals("{\"type\":\"second\"}", JsonEnvelopeWriter.begin("second", buffer).toJson());
+  }
+
+  @Test
+  void writeTo_encodesUtf8IntoBuffer() {
+    ByteBuf out = Unpooled.buffer();
+    try {
+      int written =
+          JsonEnvelopeWriter.begin("message").field("text", "h\u00e9llo \u2713").writeTo(out);
+
+      assertEquals(out.readableBytes(), written);
+      assertEquals(
+          "{\"type\":\"message\",\"text\":\"h\u00e9llo \u2713\"}",
+          out.toString(StandardCharsets.UTF_8));
+    } finally {
+      out.release();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package messaging.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  void tryAcquire_allowsTheBurstThenReportsTheWaitForTheNextPermit() {
+    // 10 per second: one permit every 100ms
+    TokenBucket bucket = new TokenBucket(10, 3, 0);
+
+    assertEquals(0, bucket.tryAcquire(0));
+    assertEquals(0, bucket.tryAcquire(0));
+    assertEquals(0, bucket.tryAcquire(0));
+    assertEquals(100 * MS, bucket.tryAcquire(0));
+    assertEquals(40 * MS, bucket.tryAcquire(60 * MS));
+    assertEquals(0, bucket.tryAcquire(100 * MS));
+    assertEquals(100 * MS, bucket.tryAcquire(100 * MS));
+  }
+
+  @Test
+  void tryAcquire_refillsNoMoreThanTheBurstWhileIdle() {
+    TokenBucket bucket = new TokenBucket(10, 2, 0);
+    bucket.tryAcquire(0);
+    bucket.tryAcquire(0);
+
+    long later = TimeUnit.HOURS.toNanos(1);
+    assertEquals(0, bucket.tryAcquire(later));
+    assertEquals(0, bucket.tryAcquire(later));
+    assertTrue(bucket.tryAcquire(later) > 0);
+  }
+
+  @Test
+  void nanosUntilFull_countsDownToZeroAsTheBucketRefills() {
+    TokenBucket bucket = new TokenBucket(10, 3, 0);
+    assertEquals(0, bucket.nanosUntilFull(0));
+
+    bucket.tryAcquire(0);
+    bucket.tryAcquire(0);
+
+    assertEquals(200 * MS, bucket.nanosUntilFull(0));
+    assertEquals(50 * MS, bucket.nanosUntilFull(150 * MS));
+    assertEquals(0, bucket.nanosUntilFull(TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  @Test
+  void tryAcquire_handsOutEachPermitOnceUnderContention() throws Exception {
+    TokenBucket bucket = new TokenBucket(1, 1_000, 0);
+    AtomicInteger granted = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      for (int t = 0; t < 8; t++) {
+        pool.execute(
+            () -> {
+              try {
+                start.await();
+              } catch (InterruptedException e) {
+                return;
+              }
+              for (int i = 0; i < 500; i++) {
+                if (bucket.tryAcquire(0) == 0) granted.incrementAndGet();
+              }
+            });
+      }
+      start.countDown();
+    } finally {
+      pool.shutdown();
+      assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    assertEquals(1_000, granted.get());
+  }
+
+  @Test
+  void constructor_rejectsNonPositiveLimits() {
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1, 0));
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0, 0));
+  }
+}
@@ -0,0 +1,169 @@
+package messaging.receipts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import messaging.history.MessageHistory;
+import messaging.persistence.MessagePersistenceException;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class ReadCursorTrackerTest {
+
+  private final ReadCursorStore store = mock(ReadCursorStore.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final MessageHistory history = mock(MessageHistory.class);
+  // Flushes run inline
+  private final ReadCursorTracker tracker =
+      new ReadCursorTracker(store, null, Runnable::run, meterRegistry, 2);
+
+  private final UUID user = UUID.randomUUID();
+  private final UUID channel = UUID.randomUUID();
+  private final UUID otherChannel = UUID.randomUUID();
+
+  @Test
+  void flush_writesOnlyTheHighestAckPerCursor() {
+    tracker.ack(user.toString(), channel.toString(), 3);
+    tracker.ack(user.toString(), channel.toString(), 7);
+    tracker.ack(user.toString(), channel.toString(), 5);
+    tracker.ack(user.toString(), otherChannel.toString(), 1);
+
+    tracker.flush();
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Collection<ReadCursor>> batch = ArgumentCaptor.forClass(Collection.class);
+    verify(store).save(batch.capture());
+    assertEquals(
+        Set.of(new ReadCursor(channel, user, 7), new ReadCursor(otherChannel, user, 1)),
+        Set.copyOf(batch.getValue()));
+    assertEquals(4.0, meterRegistry.counter("messaging.receipts.acks").count());
+  }
+
+  @Test
+  void flush_skipsTheStoreWhenNothingIsPending() {
+    tracker.flush();
+    tracker.ack(user.toString(), channel.toString(), 1);
+    tracker.flush();
+    tracker.flush();
+
+    verify(store, times(1)).save(anyCollection());
+  }
+
+  @Test
+  void flush_keepsCursorsForTheNextFlushWhenTheStoreFails() {
+    tracker.ack(user.toString(), channel.toString(), 4);
+    doThrow(new MessagePersistenceException("down")).doNothing().when(store).save(anyCollection());
+
+    tracker.flush();
+    tracker.flush();
+
+    verify(store, times(2)).save(List.of(new ReadCursor(channel, user, 4)));
+    assertEquals(1.0, meterRegistry.counter("messaging.receipts.flush.failures").count());
+  }
+
+  @Test
+  void flush_keepsACursorThatAdvancedWhileBeingWritten() {
+    tracker.ack(user.toString(), channel.toString(), 4);
+    doAnswer(
+            invocation -> {
+              tracker.ack(user.toString(), channel.toString(), 9);
+              return null;
+            })
+        .doNothing()
+        .when(store)
+        .save(anyCollection());
+
+    tracker.flush();
+    tracker.flush();
+
+    verify(store).save(List.of(new ReadCursor(channel, user, 9)));
+  }
+
+  @Test
+  void ack_dropsNewCursorsOverMaxPendingButStillAdvancesPendingOnes() {
+    UUID third = UUID.randomUUID();
+    tracker.ack(user.toString(), channel.toString(), 1);
+    tracker.ack(user.toString(), otherChannel.toString(), 1);
+    tracker.ack(user.toString(), third.toString(), 1);
+    tracker.ack(user.toString(), channel.toString(), 2);
+
+    tracker.flush();
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Collection<ReadCursor>> batch = ArgumentCaptor.forClass(Collection.class);
+    verify(store).save(batch.capture());
+    assertEquals(
+        Set.of(new ReadCursor(channel, user, 2), new ReadCursor(otherChannel, user, 1)),
+        Set.copyOf(batch.getValue()));
+    assertEquals(1.0, meterRegistry.counter("messaging.receipts.dropped").count());
+  }
+
+  @Test
+  void ack_rejectsNonUuidIds() {
+    assertThrows(IllegalArgumentException.class, () -> tracker.ack("alice", channel.toString(), 1));
+    verify(store, never()).save(anyCollection());
+  }
+
+  @Test
+  void unreadCounts_appliesPendingAcksOverStoredCursors() {
+    when(store.readStates(user))
+        .thenReturn(List.of(new ReadState(channel, 10, 2), new ReadState(otherChannel, 5, 0)));
+    tracker.ack(user.toString(), channel.toString(), 8);
+
+    assertEquals(Map.of(channel, 2L, otherChannel, 5L), tracker.unreadCounts(user).join());
+  }
+
+  @Test
+  void flush_capsCursorsAtTheChannelHead() {
+    ReadCursorTracker checked =
+        new ReadCursorTracker(store, history, Runnable::run, meterRegistry, 10);
+    UUID empty = UUID.randomUUID();
+    when(history.heads(Set.of(channel, otherChannel, empty)))
+        .thenReturn(Map.of(channel, 6L, otherChannel, 20L));
+    checked.ack(user.toString(), channel.toString(), 1_000_000);
+    checked.ack(user.toString(), otherChannel.toString(), 12);
+    checked.ack(user.toString(), empty.toString(), 3);
+
+    checked.flush();
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Collection<ReadCursor>> batch = ArgumentCaptor.forClass(Collection.class);
+    verify(store).save(batch.capture());
+    assertEquals(
+        Set.of(new ReadCursor(channel, user, 6), new ReadCursor(otherChannel, user, 12)),
+        Set.copyOf(batch.getValue()));
+    assertEquals(2.0, meterRegistry.counter("messaging.receipts.clamped").count());
+  }
+
+  @Test
+  void flush_skipsWhileAnEarlierFlushIsStillRunning() {
+    List<Runnable> queued = new ArrayList<>();
+    ReadCursorTracker deferred = new ReadCursorTracker(store, null, queued::add, meterRegistry, 2);
+    deferred.ack(user.toString(), channel.toString(), 1);
+
+    deferred.flush();
+    deferred.flush();
+    assertEquals(1, queued.size());
+    queued.get(0).run();
+    deferred.ack(user.toString(), channel.toString(), 2);
+    deferred.flush();
+
+    assertEquals(2, queued.size());
+    verify(store).save(List.of(new ReadCursor(channel, user, 1)));
+  }
+}
@@ -0,0 +1,143 @@
+package messaging.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import messaging.tracing.MessageLatencyTracker.Stage;
+import org.junit.jupiter.api.Test;
+
+class MessageLatencyTrackerTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private MessageLatencyTracker tracker(boolean enabled, Tracer tracer) {
+    LatencyTracingConfiguration config = new LatencyTracingConfiguration();
+    config.setEnabled(enabled);
+    config.setSpansEnabled(tracer != null);
+    return new MessageLatencyTracker(config, meterRegistry, tracer);
+  }
+
+  private Timer stageTimer(Stage stage) {
+    return meterRegistry.get("messaging.latency").tag("stage", stage.tagValue()).timer();
+  }
+
+  @Test
+  void record_measuresFromReceiveTime() {
+    MessageLatencyTracker tracker = tracker(true, null);
+    long receivedAt = MessageLatencyTracker.nowMicros() - 5_000;
+
+    tracker.record(Stage.PERSISTED, receivedAt, "general", null);
+
+    assertEquals(1, stageTimer(Stage.PERSISTED).count());
+    assertTrue(stageTimer(Stage.PERSISTED).totalTime(TimeUnit.MILLISECONDS) >= 5);
+    assertEquals(0, stageTimer(Stage.DELIVERED).count());
+  }
+
+  @Test
+  void record_clampsClockSkewToZero() {
+    MessageLatencyTracker tracker = tracker(true, null);
+
+    tracker.record(Stage.FANOUT, MessageLatencyTracker.nowMicros() + 60_000_000, "general", null);
+
+    assertEquals(1, stageTimer(Stage.FANOUT).count());
+    assertEquals(0.0, stageTimer(Stage.FANOUT).totalTime(TimeUnit.MICROSECONDS));
+  }
+
+  @Test
+  void record_skipsUnknownReceiveTimesAndDisabledTracking() {
+    tracker(true, null).record(Stage.PUBLISHED, 0, "general", null);
+    tracker(false, null)
+        .record(Stage.PUBLISHED, MessageLatencyTracker.nowMicros(), "general", null);
+
+    assertEquals(0, stageTimer(Stage.PUBLISHED).count());
+    assertNull(
+        tracker(false, null).startDelivery(MessageLatencyTracker.nowMicros(), "general", null));
+  }
+
+  @Test
+  void deliveryTrace_recordsOnceTheLastRecipientSettles() {
+    MessageLatencyTracker tracker = tracker(true, null);
+    DeliveryTrace trace = tracker.startDelivery(MessageLatencyTracker.nowMicros(), "general", null);
+    trace.addRecipient();
+    trace.addRecipient();
+
+    // A write completing before dispatch finishes must not end the trace early
+    trace.recipientSettled();
+    trace.dispatched();
+    assertEquals(0, stageTimer(Stage.DELIVERED).count());
+
+    trace.recipientSettled();
+    assertEquals(1, stageTimer(Stage.DELIVERED).count());
+  }
+
+  @Test
+  void deliveryTrace_withNoRecipientsRecordsOnDispatch() {
+    MessageLatencyTracker tracker = tracker(true, null);
+
+    tracker.startDelivery(MessageLatencyTracker.nowMicros(), "general", null).dispatched();
+
+    assertEquals(1, stageTimer(Stage.DELIVERED).count());
+  }
+
+  @Test
+  void record_exportsOneSpanPerStageWhenEnabled() {
+    InMemorySpanExporter exporter = InMemorySpanExporter.create();
+    SdkTracerProvider provider =
+        SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(exporter)).build();
+    MessageLatencyTracker tracker = tracker(true, provider.get("test"));
+    long receivedAt = MessageLatencyTracker.nowMicros() - 2_000;
+
+    String messageId = UUID.randomUUID().toString();
+
+    tracker.record(Stage.PERSISTED, receivedAt, "general", messageId);
+    tracker.record(Stage.PUBLISHED, receivedAt, "general", messageId);
+
+    List<SpanData> spans = exporter.getFinishedSpanItems();
+    assertEquals(
+        List.of("message.persisted", "message.published"),
+        spans.stream().map(SpanData::getName).toList());
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(receivedAt), spans.get(0).getStartEpochNanos());
+    provider.close();
+  }
+
+  @Test
+  void record_parentsEveryStageOfAMessageOnTheSameContext() {
+    InMemorySpanExporter exporter = InMemorySpanExporter.create();
+    SdkTracerProvider provider =
+        SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(exporter)).build();
+    // Two trackers stand in for the sender's node and a receiving node
+    MessageLatencyTracker sender = tracker(true, provider.get("sender"));
+    MessageLatencyTracker receiver = tracker(true, provider.get("receiver"));
+    long receivedAt = MessageLatencyTracker.nowMicros();
+    String messageId = UUID.randomUUID().toString();
+
+    sender.record(Stage.PERSISTED, receivedAt, "general", messageId);
+    receiver.startDelivery(receivedAt, "general", messageId).dispatched();
+    sender.record(Stage.PERSISTED, receivedAt, "general", UUID.randomUUID().toString());
+
+    List<SpanData> spans = exporter.getFinishedSpanItems();
+    SpanContext parent = MessageLatencyTracker.messageContext(messageId);
+    assertEquals(parent.getTraceId(), spans.get(0).getTraceId());
+    assertEquals(parent.getTraceId(), spans.get(1).getTraceId());
+    assertEquals(parent.getSpanId(), spans.get(1).getParentSpanId());
+    assertEquals(
+        messageId,
+        spans.get(1).getAttributes().get(AttributeKey.stringKey("messaging.message.id")));
+    assertNotEquals(parent.getTraceId(), spans.get(2).getTraceId());
+    provider.close();
+  }
+}